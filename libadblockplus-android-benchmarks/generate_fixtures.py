@@ -0,0 +1,111 @@
+#!/usr/bin/env python
+# coding: utf-8
+
+# This file is part of Adblock Plus <https://adblockplus.org/>,
+# Copyright (C) 2006-2016 Eyeo GmbH
+#
+# Adblock Plus is free software: you can redistribute it and/or modify
+# it under the terms of the GNU General Public License version 3 as
+# published by the Free Software Foundation.
+#
+# Adblock Plus is distributed in the hope that it will be useful,
+# but WITHOUT ANY WARRANTY; without even the implied warranty of
+# MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+# GNU General Public License for more details.
+#
+# You should have received a copy of the GNU General Public License
+# along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+
+"""
+Generates the benchmark fixtures: a filter list shaped like EasyList
+(blocking, exception, generic and domain specific element hiding filters)
+and a request log matching against it. The output is deterministic.
+"""
+
+import os
+import random
+
+FIXTURES_DIR = os.path.join(os.path.dirname(__file__), "resources", "fixtures")
+
+BLOCKING = 3000
+EXCEPTION = 300
+GENERIC_ELEMHIDE = 1500
+DOMAIN_ELEMHIDE = 800
+REQUESTS = 2000
+
+CONTENT_TYPES = ["SCRIPT", "IMAGE", "STYLESHEET", "SUBDOCUMENT", "XMLHTTPREQUEST", "OTHER"]
+WORDS = ["ad", "ads", "advert", "banner", "sponsor", "promo", "track", "pixel",
+         "beacon", "analytics", "popup", "affiliate", "widget", "counter"]
+
+
+def site(i):
+  return "site%d.%s" % (i, ["com", "org", "net", "de", "co.uk"][i % 5])
+
+
+def tracker(i):
+  return "%s%d.%s" % (WORDS[i % len(WORDS)], i, ["net", "com", "io"][i % 3])
+
+
+def blocking_filter(rnd, i):
+  word = WORDS[i % len(WORDS)]
+  shape = i % 6
+  if shape == 0:
+    return "||%s^$third-party" % tracker(i)
+  if shape == 1:
+    return "/%s/%s_%d." % (word, rnd.choice(WORDS), i)
+  if shape == 2:
+    return "&%s_type=%d" % (word, i)
+  if shape == 3:
+    return "-%s-%d." % (word, i)
+  if shape == 4:
+    return "||cdn.%s/%s.gif$image" % (tracker(i), word)
+  return "/%s/*$script,domain=%s" % (word + str(i), site(i))
+
+
+def exception_filter(i):
+  if i % 10 == 0:
+    return "@@||%s^$document" % site(i)
+  return "@@||static.%s/%s.js$script" % (site(i), WORDS[i % len(WORDS)])
+
+
+def generate_filters(rnd):
+  lines = ["[Adblock Plus 2.0]", "! Title: Benchmark fixture list", "! Expires: 4 days"]
+  lines += [blocking_filter(rnd, i) for i in range(BLOCKING)]
+  lines += [exception_filter(i) for i in range(EXCEPTION)]
+  lines += ["##.%s-%s-%d" % (rnd.choice(WORDS), rnd.choice(WORDS), i)
+            for i in range(GENERIC_ELEMHIDE)]
+  for i in range(DOMAIN_ELEMHIDE):
+    if i % 8 == 0:
+      lines.append("%s#@#.%s-banner-%d" % (site(i), WORDS[i % len(WORDS)], i))
+    else:
+      lines.append("%s##.%s-%d" % (site(i), rnd.choice(WORDS), i))
+  return lines
+
+
+def generate_requests(rnd):
+  lines = []
+  for i in range(REQUESTS):
+    document = "http://www.%s/article/%d.html" % (site(rnd.randrange(1000)), i)
+    n = rnd.randrange(BLOCKING)
+    kind = i % 4
+    if kind == 0:
+      url = "http://cdn.%s/%s.gif" % (tracker(n), WORDS[n % len(WORDS)])
+    elif kind == 1:
+      url = "http://%s/%s/%s_%d.js" % (tracker(n), WORDS[n % len(WORDS)], rnd.choice(WORDS), n)
+    elif kind == 2:
+      url = "http://static.%s/%s.js" % (site(rnd.randrange(EXCEPTION)), rnd.choice(WORDS))
+    else:
+      url = "http://img.%s/photos/%d.jpg" % (site(rnd.randrange(1000)), i)
+    lines.append("\t".join([url, rnd.choice(CONTENT_TYPES), document]))
+  return lines
+
+
+def write(name, lines):
+  with open(os.path.join(FIXTURES_DIR, name), "w") as f:
+    f.write("\n".join(lines) + "\n")
+
+
+if __name__ == "__main__":
+  rnd = random.Random(2016)
+  write("filters.txt", generate_filters(rnd))
+  write("requests.txt", generate_requests(rnd))
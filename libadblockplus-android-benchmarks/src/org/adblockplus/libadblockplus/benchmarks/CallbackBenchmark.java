@@ -0,0 +1,118 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.adblockplus.libadblockplus.EventCallback;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.JsValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one callback from native code into Java. Callbacks from a native
+ * thread, here a timer of the engine, need the thread attached to the VM,
+ * callbacks from the calling Java thread don't; the difference is what
+ * attaching costs per callback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CallbackBenchmark
+{
+  private final static int CALLBACKS = 1000;
+  private final static String TRIGGER_CALLBACKS =
+      "for (var i = 0; i < " + CALLBACKS + "; i++) _triggerEvent('callback');";
+
+  private File baseDir;
+  private JsEngine jsEngine;
+  private EventCallback callback;
+  private EventCallback doneCallback;
+  private volatile CountDownLatch done;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    this.baseDir = Fixtures.createTempDir();
+    this.jsEngine = Fixtures.createJsEngine(this.baseDir, "");
+    this.callback = new EventCallback()
+    {
+      @Override
+      public void eventCallback(final List<JsValue> params)
+      {
+        // nothing, only the call into Java is measured
+      }
+    };
+    this.doneCallback = new EventCallback()
+    {
+      @Override
+      public void eventCallback(final List<JsValue> params)
+      {
+        CallbackBenchmark.this.done.countDown();
+      }
+    };
+    this.jsEngine.setEventCallback("callback", this.callback);
+    this.jsEngine.setEventCallback("done", this.doneCallback);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    this.jsEngine.removeEventCallback("callback");
+    this.jsEngine.removeEventCallback("done");
+    this.callback.dispose();
+    this.doneCallback.dispose();
+    this.jsEngine.dispose();
+    Fixtures.deleteDir(this.baseDir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CALLBACKS)
+  public void fromJavaThread()
+  {
+    this.jsEngine.evaluate(TRIGGER_CALLBACKS).dispose();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(CALLBACKS)
+  public void fromNativeThread() throws InterruptedException
+  {
+    this.done = new CountDownLatch(1);
+    this.jsEngine.evaluate("setTimeout(function() {" + TRIGGER_CALLBACKS + " _triggerEvent('done');}, 0)")
+        .dispose();
+    this.done.await();
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.adblockplus.libadblockplus.Disposable;
+import org.adblockplus.libadblockplus.Disposer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Registering and disposing {@link Disposer}s from several threads, what
+ * every wrapper constructor and dispose() does. No native code involved, so
+ * this measures the registry alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Threads(8)
+@Fork(1)
+public class DisposerBenchmark
+{
+  private final static int BATCH_SIZE = 1000;
+
+  private final static Disposable NOOP = new Disposable()
+  {
+    @Override
+    public void dispose()
+    {
+    }
+  };
+
+  private final static class Wrapper implements Disposable
+  {
+    private final Disposer disposer = new Disposer(this, NOOP);
+
+    @Override
+    public void dispose()
+    {
+      this.disposer.dispose();
+    }
+  }
+
+  @Benchmark
+  public void createAndDispose()
+  {
+    new Wrapper().dispose();
+  }
+
+  // like disposing the result of getListedFilters()
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void createAndDisposeBatch()
+  {
+    final Wrapper[] wrappers = new Wrapper[BATCH_SIZE];
+    for (int i = 0; i < BATCH_SIZE; i++)
+    {
+      wrappers[i] = new Wrapper();
+    }
+    for (final Wrapper wrapper : wrappers)
+    {
+      wrapper.dispose();
+    }
+  }
+
+  // left to the reference queue, as callers that never dispose do
+  @Benchmark
+  public Wrapper createOnly()
+  {
+    return new Wrapper();
+  }
+}
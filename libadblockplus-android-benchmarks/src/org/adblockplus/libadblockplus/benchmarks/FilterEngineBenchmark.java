@@ -0,0 +1,189 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.adblockplus.libadblockplus.ElementHidingIndex;
+import org.adblockplus.libadblockplus.Filter;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JavaMatcher;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.MatchResult;
+import org.adblockplus.libadblockplus.benchmarks.Fixtures.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Queries against a FilterEngine loaded with the fixture filter list,
+ * cycling through the fixture requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FilterEngineBenchmark
+{
+  private File baseDir;
+  private JsEngine jsEngine;
+  private FilterEngine filterEngine;
+  private JavaMatcher javaMatcher;
+  private ElementHidingIndex elementHidingIndex;
+  private Request[] requests;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    this.requests = Fixtures.readRequests();
+    this.baseDir = Fixtures.createTempDir();
+    this.jsEngine = Fixtures.createJsEngine(this.baseDir, Fixtures.readResource("filters.txt"));
+    this.filterEngine = new FilterEngine(this.jsEngine);
+    Fixtures.loadFixtureSubscription(this.filterEngine);
+    this.javaMatcher = new JavaMatcher(this.filterEngine);
+    this.elementHidingIndex = new ElementHidingIndex(this.filterEngine);
+    this.elementHidingIndex.getGenericStyleSheet();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    this.elementHidingIndex.dispose();
+    this.javaMatcher.dispose();
+    this.filterEngine.dispose();
+    this.jsEngine.dispose();
+    Fixtures.deleteDir(this.baseDir);
+  }
+
+  private Request nextRequest()
+  {
+    final Request request = this.requests[this.next];
+    this.next = (this.next + 1) % this.requests.length;
+    return request;
+  }
+
+  @Benchmark
+  public Filter matches()
+  {
+    final Request request = nextRequest();
+    return this.filterEngine.matches(request.url, request.contentType, request.documentUrl);
+  }
+
+  @Benchmark
+  public Filter matchesDocumentChain()
+  {
+    final Request request = nextRequest();
+    return this.filterEngine.matches(request.url, request.contentType, request.documentUrls);
+  }
+
+  @Benchmark
+  public MatchResult javaMatcherMatches()
+  {
+    final Request request = nextRequest();
+    return this.javaMatcher.matches(request.url, request.contentType, request.documentUrl);
+  }
+
+  @Benchmark
+  public MatchResult javaMatcherMatchesDocumentChain()
+  {
+    final Request request = nextRequest();
+    return this.javaMatcher.matches(request.url, request.contentType, request.documentUrls);
+  }
+
+  @Benchmark
+  public boolean isDocumentWhitelisted()
+  {
+    final Request request = nextRequest();
+    return this.filterEngine.isDocumentWhitelisted(request.documentUrl, request.documentUrls);
+  }
+
+  @Benchmark
+  public List<String> getElementHidingSelectors()
+  {
+    return this.filterEngine.getElementHidingSelectors(nextRequest().domain);
+  }
+
+  // what injectors did before getElementHidingStyleSheet
+  @Benchmark
+  public String joinElementHidingSelectors()
+  {
+    final List<String> selectors = this.filterEngine.getElementHidingSelectors(nextRequest().domain);
+    final StringBuilder styleSheet = new StringBuilder();
+    for (int i = 0; i < selectors.size(); i++)
+    {
+      styleSheet.append(selectors.get(i));
+      if ((i + 1) % FilterEngine.DEFAULT_SELECTOR_GROUP_SIZE == 0 || i + 1 == selectors.size())
+      {
+        styleSheet.append(" {display: none !important;}\n");
+      }
+      else
+      {
+        styleSheet.append(", ");
+      }
+    }
+    return styleSheet.toString();
+  }
+
+  @Benchmark
+  public String getElementHidingStyleSheet()
+  {
+    return this.filterEngine.getElementHidingStyleSheet(nextRequest().domain);
+  }
+
+  @Benchmark
+  public ByteBuffer getElementHidingStyleSheetBuffer()
+  {
+    return this.filterEngine.getElementHidingStyleSheetBuffer(nextRequest().domain,
+        FilterEngine.DEFAULT_SELECTOR_GROUP_SIZE);
+  }
+
+  // generic style sheet is built once, only the domain part per page
+  @Benchmark
+  public String elementHidingIndexDomainStyleSheet()
+  {
+    return this.elementHidingIndex.getDomainStyleSheet(nextRequest().domain);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void getListedFilters(final Blackhole blackhole)
+  {
+    final List<Filter> filters = this.filterEngine.getListedFilters();
+    blackhole.consume(filters);
+    for (final Filter filter : filters)
+    {
+      filter.dispose();
+    }
+  }
+}
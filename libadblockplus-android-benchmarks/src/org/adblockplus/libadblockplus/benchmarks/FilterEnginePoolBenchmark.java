@@ -0,0 +1,105 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEnginePool;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.benchmarks.Fixtures.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching throughput of a {@link FilterEnginePool} with several threads
+ * calling it, for different pool sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Threads(4)
+@Fork(1)
+public class FilterEnginePoolBenchmark
+{
+  @Param({ "1", "2", "4" })
+  public int poolSize;
+
+  private File baseDir;
+  private FilterEnginePool pool;
+  private Request[] requests;
+
+  @State(Scope.Thread)
+  public static class Cursor
+  {
+    int next;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    this.requests = Fixtures.readRequests();
+    this.baseDir = Fixtures.createTempDir();
+    final String filters = Fixtures.readResource("filters.txt");
+    this.pool = new FilterEnginePool(this.poolSize, new FilterEnginePool.JsEngineFactory()
+    {
+      @Override
+      public JsEngine createJsEngine(final int index)
+      {
+        final File dir = new File(FilterEnginePoolBenchmark.this.baseDir, String.valueOf(index));
+        dir.mkdir();
+        return Fixtures.createJsEngine(dir, filters);
+      }
+    });
+    // the pool mirrors the subscription, wait until every engine has it
+    for (int i = 0; i < this.poolSize; i++)
+    {
+      Fixtures.loadFixtureSubscription(this.pool.getFilterEngine(i));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    this.pool.dispose();
+    Fixtures.deleteDir(this.baseDir);
+  }
+
+  @Benchmark
+  public FilterEngine.MatchDecision matchDecision(final Cursor cursor)
+  {
+    final Request request = this.requests[cursor.next];
+    cursor.next = (cursor.next + 1) % this.requests.length;
+    return this.pool.matchDecision(request.url, request.contentType, request.documentUrl);
+  }
+}
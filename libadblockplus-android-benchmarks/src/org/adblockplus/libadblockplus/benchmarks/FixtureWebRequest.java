@@ -0,0 +1,72 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.ServerResponse;
+import org.adblockplus.libadblockplus.ServerResponse.NsStatus;
+import org.adblockplus.libadblockplus.WebRequest;
+
+/**
+ * Serves fixture filter lists by URL, everything else fails to download.
+ */
+public class FixtureWebRequest extends WebRequest
+{
+  private final Map<String, byte[]> contents = new HashMap<String, byte[]>();
+
+  public FixtureWebRequest(final Map<String, String> contents)
+  {
+    final Charset utf8 = Charset.forName("UTF-8");
+    for (final Map.Entry<String, String> entry : contents.entrySet())
+    {
+      this.contents.put(entry.getKey(), entry.getValue().getBytes(utf8));
+    }
+  }
+
+  public FixtureWebRequest(final String url, final String content)
+  {
+    this(Collections.singletonMap(url, content));
+  }
+
+  @Override
+  public ServerResponse httpGET(final String url, final List<HeaderEntry> headers)
+  {
+    final ServerResponse response = new ServerResponse();
+    // the synchronizer appends query parameters to subscription URLs
+    final int query = url.indexOf('?');
+    final byte[] content = this.contents.get(query == -1 ? url : url.substring(0, query));
+    if (content != null)
+    {
+      response.setStatus(NsStatus.OK);
+      response.setResponseStatus(200);
+      response.setResponseBytes(ByteBuffer.wrap(content));
+    }
+    else
+    {
+      response.setStatus(NsStatus.ERROR_FAILURE);
+    }
+    return response;
+  }
+}
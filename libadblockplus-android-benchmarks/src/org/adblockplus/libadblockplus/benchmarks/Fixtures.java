@@ -0,0 +1,247 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.adblockplus.libadblockplus.AppInfo;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEngine.ContentType;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.JsValue;
+import org.adblockplus.libadblockplus.Subscription;
+import org.adblockplus.libadblockplus.WebRequest;
+
+/**
+ * Access to the fixtures generated by generate_fixtures.py and engines
+ * set up to use them.
+ */
+public final class Fixtures
+{
+  public static final String SUBSCRIPTION_URL = "https://fixtures.adblockplus.invalid/filters.txt";
+
+  private static final long DOWNLOAD_TIMEOUT_MILLIS = 60 * 1000;
+
+  public static final class Request
+  {
+    public final String url;
+    public final ContentType contentType;
+    public final String documentUrl;
+    public final String[] documentUrls;
+    public final String domain;
+
+    Request(final String url, final ContentType contentType, final String documentUrl)
+    {
+      this.url = url;
+      this.contentType = contentType;
+      this.documentUrl = documentUrl;
+      // a frame inside the document, as seen for subdocument requests
+      this.documentUrls = new String[] { url, documentUrl };
+      this.domain = documentUrl.replaceFirst("^[a-z]+://([^/:]+).*$", "$1");
+    }
+  }
+
+  private Fixtures()
+  {
+    //
+  }
+
+  public static String readResource(final String name) throws IOException
+  {
+    final InputStream is = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+    if (is == null)
+    {
+      throw new IOException("Fixture not found: " + name);
+    }
+    return read(is);
+  }
+
+  public static String read(final InputStream is) throws IOException
+  {
+    try
+    {
+      final BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+      final StringBuilder sb = new StringBuilder();
+      String line;
+      while ((line = reader.readLine()) != null)
+      {
+        sb.append(line).append('\n');
+      }
+      return sb.toString();
+    }
+    finally
+    {
+      is.close();
+    }
+  }
+
+  public static Request[] readRequests() throws IOException
+  {
+    final List<Request> requests = new ArrayList<Request>();
+    for (final String line : readResource("requests.txt").split("\n"))
+    {
+      if (line.length() == 0)
+      {
+        continue;
+      }
+      final String[] fields = line.split("\t");
+      requests.add(new Request(fields[0], ContentType.valueOf(fields[1]), fields[2]));
+    }
+    return requests.toArray(new Request[requests.size()]);
+  }
+
+  public static File createTempDir() throws IOException
+  {
+    final File dir = File.createTempFile("abp-benchmark", "");
+    if (!dir.delete() || !dir.mkdir())
+    {
+      throw new IOException("Can't create " + dir);
+    }
+    return dir;
+  }
+
+  public static void deleteDir(final File dir)
+  {
+    final File[] files = dir.listFiles();
+    if (files != null)
+    {
+      for (final File file : files)
+      {
+        if (file.isDirectory())
+        {
+          deleteDir(file);
+        }
+        else
+        {
+          file.delete();
+        }
+      }
+    }
+    dir.delete();
+  }
+
+  public static JsEngine createJsEngine(final File baseDir, final String filters)
+  {
+    return createJsEngine(baseDir, new FixtureWebRequest(SUBSCRIPTION_URL, filters));
+  }
+
+  public static JsEngine createJsEngine(final File baseDir, final WebRequest webRequest)
+  {
+    final JsEngine jsEngine = new JsEngine(AppInfo.builder().build());
+    jsEngine.setDefaultLogSystem();
+    jsEngine.setDefaultFileSystem(baseDir.getAbsolutePath());
+    jsEngine.setWebRequest(webRequest);
+    return jsEngine;
+  }
+
+  /**
+   * Replaces the listed subscriptions with the fixture subscription and
+   * waits until it has been downloaded.
+   */
+  public static void loadFixtureSubscription(final FilterEngine filterEngine)
+    throws InterruptedException
+  {
+    loadSubscriptions(filterEngine, Collections.singleton(SUBSCRIPTION_URL));
+  }
+
+  /**
+   * Replaces the listed subscriptions with the given ones and waits until
+   * all of them have been downloaded.
+   */
+  public static void loadSubscriptions(final FilterEngine filterEngine, final Collection<String> urls)
+    throws InterruptedException
+  {
+    for (final Subscription subscription : filterEngine.getListedSubscriptions())
+    {
+      subscription.removeFromList();
+      subscription.dispose();
+    }
+
+    for (final String url : urls)
+    {
+      loadSubscription(filterEngine, url);
+    }
+  }
+
+  private static void loadSubscription(final FilterEngine filterEngine, final String url)
+    throws InterruptedException
+  {
+    final Subscription subscription = filterEngine.getSubscription(url);
+    try
+    {
+      subscription.addToList();
+      final long deadline = System.currentTimeMillis() + DOWNLOAD_TIMEOUT_MILLIS;
+      while (true)
+      {
+        final JsValue status = subscription.getProperty("downloadStatus");
+        try
+        {
+          if (!subscription.isUpdating() && status.isString())
+          {
+            if (!"synchronize_ok".equals(status.asString()))
+            {
+              throw new IllegalStateException("Download of " + url + " failed: " + status.asString());
+            }
+            return;
+          }
+        }
+        finally
+        {
+          status.dispose();
+        }
+        if (System.currentTimeMillis() > deadline)
+        {
+          throw new IllegalStateException("Timed out downloading " + url);
+        }
+        Thread.sleep(10);
+      }
+    }
+    finally
+    {
+      subscription.dispose();
+    }
+  }
+
+  /**
+   * FilterStorage writes patterns.ini asynchronously, waits until it holds
+   * the fixture subscription.
+   */
+  public static void waitForPatternsFile(final File baseDir)
+    throws IOException, InterruptedException
+  {
+    final File patterns = new File(baseDir, "patterns.ini");
+    final long deadline = System.currentTimeMillis() + DOWNLOAD_TIMEOUT_MILLIS;
+    while (!patterns.exists() || !read(new FileInputStream(patterns)).contains(SUBSCRIPTION_URL))
+    {
+      if (System.currentTimeMillis() > deadline)
+      {
+        throw new IllegalStateException("Timed out waiting for " + patterns);
+      }
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cold start costs: creating a JsEngine alone, and a JsEngine plus a
+ * FilterEngine loading the fixture filter list from a populated data
+ * directory, the way an app does on every launch after the first one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark
+{
+  private String filters;
+  private File baseDir;
+  private JsEngine jsEngine;
+  private FilterEngine filterEngine;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception
+  {
+    this.filters = Fixtures.readResource("filters.txt");
+    this.baseDir = Fixtures.createTempDir();
+
+    // first run: download the fixture list and let the engine persist it
+    final JsEngine jsEngine = Fixtures.createJsEngine(this.baseDir, this.filters);
+    final FilterEngine filterEngine = new FilterEngine(jsEngine);
+    Fixtures.loadFixtureSubscription(filterEngine);
+    Fixtures.waitForPatternsFile(this.baseDir);
+    filterEngine.dispose();
+    jsEngine.dispose();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    Fixtures.deleteDir(this.baseDir);
+  }
+
+  @TearDown(Level.Iteration)
+  public void disposeEngines()
+  {
+    if (this.filterEngine != null)
+    {
+      this.filterEngine.dispose();
+      this.filterEngine = null;
+    }
+    if (this.jsEngine != null)
+    {
+      this.jsEngine.dispose();
+      this.jsEngine = null;
+    }
+  }
+
+  @Benchmark
+  public JsEngine createJsEngine()
+  {
+    this.jsEngine = Fixtures.createJsEngine(this.baseDir, this.filters);
+    return this.jsEngine;
+  }
+
+  @Benchmark
+  public FilterEngine createFilterEngine()
+  {
+    this.jsEngine = Fixtures.createJsEngine(this.baseDir, this.filters);
+    this.filterEngine = new FilterEngine(this.jsEngine);
+    return this.filterEngine;
+  }
+}
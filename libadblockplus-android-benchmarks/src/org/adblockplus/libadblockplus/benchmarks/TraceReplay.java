@@ -0,0 +1,273 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.adblockplus.libadblockplus.Filter;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.Trace;
+import org.adblockplus.libadblockplus.TraceReader;
+
+/**
+ * Replays a trace recorded with {@link org.adblockplus.libadblockplus.TraceRecorder}
+ * against a fresh engine with fixed filter lists, and reports throughput,
+ * latency percentiles next to the recorded ones and results that differ
+ * from the recording.
+ */
+public class TraceReplay
+{
+  private final static String USAGE =
+      "Usage: TraceReplay [-w warmup passes] <trace> <filter list>...";
+  private final static String LIST_URL_PREFIX = "https://fixtures.adblockplus.invalid/";
+  private final static double[] PERCENTILES = { 50, 90, 99, 99.9 };
+  private final static DecimalFormat PERCENTILE_FORMAT = new DecimalFormat("0.#");
+
+  private final FilterEngine filterEngine;
+  // time spent in the engine by the last execute() call
+  private long lastLatency;
+
+  public TraceReplay(final FilterEngine filterEngine)
+  {
+    this.filterEngine = filterEngine;
+  }
+
+  /**
+   * Replays all entries once, storing the latency of each one if
+   * <code>latencies</code> is not null. Latencies only cover the engine call,
+   * not reading the type of or disposing the returned filter.
+   *
+   * @return number of results differing from the recording
+   */
+  public int replay(final List<Trace.Entry> entries, final long[] latencies)
+  {
+    int mismatches = 0;
+    for (int i = 0; i < entries.size(); i++)
+    {
+      final Trace.Entry entry = entries.get(i);
+      final long result = execute(entry);
+      if (latencies != null)
+      {
+        latencies[i] = this.lastLatency;
+      }
+      if (result != entry.result)
+      {
+        mismatches++;
+      }
+    }
+    return mismatches;
+  }
+
+  private long execute(final Trace.Entry entry)
+  {
+    final long start = System.nanoTime();
+    final Filter filter;
+    final long result;
+    switch (entry.operation)
+    {
+      case MATCHES:
+        filter = this.filterEngine.matches(entry.url, entry.contentType, entry.documentUrls[0]);
+        this.lastLatency = System.nanoTime() - start;
+        return toResult(filter);
+      case MATCHES_DOCUMENT_CHAIN:
+        filter = this.filterEngine.matches(entry.url, entry.contentType, entry.documentUrls);
+        this.lastLatency = System.nanoTime() - start;
+        return toResult(filter);
+      case IS_DOCUMENT_WHITELISTED:
+        result = this.filterEngine.isDocumentWhitelisted(entry.url, entry.documentUrls) ? 1 : 0;
+        break;
+      case IS_ELEMHIDE_WHITELISTED:
+        result = this.filterEngine.isElemhideWhitelisted(entry.url, entry.documentUrls) ? 1 : 0;
+        break;
+      case GET_ELEMENT_HIDING_SELECTORS:
+        result = this.filterEngine.getElementHidingSelectors(entry.domain).size();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation " + entry.operation);
+    }
+    this.lastLatency = System.nanoTime() - start;
+    return result;
+  }
+
+  private static long toResult(final Filter filter)
+  {
+    if (filter == null)
+    {
+      return FilterEngine.MatchDecision.NO_MATCH.ordinal();
+    }
+    try
+    {
+      switch (filter.getType())
+      {
+        case BLOCKING:
+          return FilterEngine.MatchDecision.BLOCK.ordinal();
+        case EXCEPTION:
+          return FilterEngine.MatchDecision.ALLOW.ordinal();
+        default:
+          return FilterEngine.MatchDecision.NO_MATCH.ordinal();
+      }
+    }
+    finally
+    {
+      filter.dispose();
+    }
+  }
+
+  public static List<Trace.Entry> readTrace(final File file) throws IOException
+  {
+    final List<Trace.Entry> entries = new ArrayList<Trace.Entry>();
+    final TraceReader reader = new TraceReader(new FileInputStream(file));
+    try
+    {
+      Trace.Entry entry;
+      while ((entry = reader.next()) != null)
+      {
+        entries.add(entry);
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+    return entries;
+  }
+
+  private static long percentile(final long[] sorted, final double percentile)
+  {
+    if (sorted.length == 0)
+    {
+      return 0;
+    }
+    final int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+    return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+  }
+
+  private static void printLatencies(final String label, final long[] latencies)
+  {
+    final long[] sorted = latencies.clone();
+    Arrays.sort(sorted);
+    final StringBuilder sb = new StringBuilder(String.format("  %-9s", label));
+    for (final double p : PERCENTILES)
+    {
+      sb.append(String.format("  p%-4s %9.1f", PERCENTILE_FORMAT.format(p),
+          percentile(sorted, p) / 1000.0));
+    }
+    sb.append(String.format("  max %9.1f us", (sorted.length > 0 ? sorted[sorted.length - 1] : 0) / 1000.0));
+    System.out.println(sb);
+  }
+
+  private static void report(final List<Trace.Entry> entries, final long[] latencies)
+  {
+    for (final Trace.Operation operation : Trace.Operation.values())
+    {
+      int count = 0;
+      for (final Trace.Entry entry : entries)
+      {
+        if (entry.operation == operation)
+        {
+          count++;
+        }
+      }
+      if (count == 0)
+      {
+        continue;
+      }
+
+      final long[] replayed = new long[count];
+      final long[] recorded = new long[count];
+      for (int i = 0, j = 0; i < entries.size(); i++)
+      {
+        if (entries.get(i).operation == operation)
+        {
+          replayed[j] = latencies[i];
+          recorded[j] = entries.get(i).latencyNanos;
+          j++;
+        }
+      }
+
+      System.out.println(operation + " (" + count + " calls)");
+      printLatencies("replayed", replayed);
+      printLatencies("recorded", recorded);
+    }
+  }
+
+  public static void main(final String[] args) throws Exception
+  {
+    int warmupPasses = 1;
+    int argIndex = 0;
+    if (args.length > 1 && "-w".equals(args[0]))
+    {
+      warmupPasses = Integer.parseInt(args[1]);
+      argIndex = 2;
+    }
+    if (args.length - argIndex < 2)
+    {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    final List<Trace.Entry> entries = readTrace(new File(args[argIndex]));
+    final Map<String, String> filterLists = new LinkedHashMap<String, String>();
+    for (int i = argIndex + 1; i < args.length; i++)
+    {
+      final File file = new File(args[i]);
+      filterLists.put(LIST_URL_PREFIX + i + "/" + file.getName(), Fixtures.read(new FileInputStream(file)));
+    }
+
+    final File baseDir = Fixtures.createTempDir();
+    final JsEngine jsEngine = Fixtures.createJsEngine(baseDir, new FixtureWebRequest(filterLists));
+    final FilterEngine filterEngine = new FilterEngine(jsEngine);
+    try
+    {
+      Fixtures.loadSubscriptions(filterEngine, filterLists.keySet());
+
+      final TraceReplay replay = new TraceReplay(filterEngine);
+      for (int i = 0; i < warmupPasses; i++)
+      {
+        replay.replay(entries, null);
+      }
+
+      final long[] latencies = new long[entries.size()];
+      final int mismatches = replay.replay(entries, latencies);
+      long elapsed = 0;
+      for (final long latency : latencies)
+      {
+        elapsed += latency;
+      }
+
+      System.out.println(String.format("%d calls, %.1f ms in the engine, %.0f calls/s, %d results differ from the recording",
+          entries.size(), elapsed / 1e6, entries.size() * 1e9 / Math.max(1, elapsed), mismatches));
+      report(entries, latencies);
+    }
+    finally
+    {
+      filterEngine.dispose();
+      jsEngine.dispose();
+      Fixtures.deleteDir(baseDir);
+    }
+  }
+}
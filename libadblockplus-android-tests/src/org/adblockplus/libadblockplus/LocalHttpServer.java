@@ -0,0 +1,346 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the same body for every GET on the loopback interface, one thread
+ * per connection, keeping connections alive if the body has a length. Answers conditional requests matching the configured
+ * validators with 304, compresses the body if the client accepts the
+ * configured content encoding.
+ */
+public class LocalHttpServer
+{
+  private final ServerSocket serverSocket;
+  private final Thread acceptThread;
+  private final AtomicInteger requestCount = new AtomicInteger();
+  private final AtomicInteger notModifiedCount = new AtomicInteger();
+  private final AtomicInteger connectionCount = new AtomicInteger();
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private final AtomicInteger maxActiveRequests = new AtomicInteger();
+  private volatile long responseDelayMillis;
+  private volatile byte[] body;
+  private volatile boolean sendContentLength = true;
+  private volatile String eTag;
+  private volatile String lastModified;
+  private volatile String contentEncoding;
+  // last compressed body, so serving doesn't compress again
+  private byte[] compressedSource;
+  private String compressedEncoding;
+  private byte[] compressed;
+  private volatile Map<String, String> lastRequestHeaders = Collections.emptyMap();
+
+  public LocalHttpServer(byte[] body) throws IOException
+  {
+    this.body = body;
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    acceptThread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        accept();
+      }
+    }, "LocalHttpServer");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+  public String getUrl(String path)
+  {
+    return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+  }
+
+  public void setBody(byte[] body)
+  {
+    this.body = body;
+  }
+
+  public void setSendContentLength(boolean sendContentLength)
+  {
+    this.sendContentLength = sendContentLength;
+  }
+
+  public void setETag(String eTag)
+  {
+    this.eTag = eTag;
+  }
+
+  public void setLastModified(String lastModified)
+  {
+    this.lastModified = lastModified;
+  }
+
+  /**
+   * @param contentEncoding "gzip", "deflate" or null to send the body as is
+   */
+  public void setContentEncoding(String contentEncoding)
+  {
+    this.contentEncoding = contentEncoding;
+  }
+
+  /**
+   * Delays every response, to keep requests running at the same time
+   */
+  public void setResponseDelay(long responseDelayMillis)
+  {
+    this.responseDelayMillis = responseDelayMillis;
+  }
+
+  public int getRequestCount()
+  {
+    return requestCount.get();
+  }
+
+  public int getNotModifiedCount()
+  {
+    return notModifiedCount.get();
+  }
+
+  public int getConnectionCount()
+  {
+    return connectionCount.get();
+  }
+
+  /**
+   * @return the most requests served at the same time
+   */
+  public int getMaxActiveRequests()
+  {
+    return maxActiveRequests.get();
+  }
+
+  /**
+   * @return headers of the last request, names in lower case
+   */
+  public Map<String, String> getLastRequestHeaders()
+  {
+    return lastRequestHeaders;
+  }
+
+  public void close() throws IOException
+  {
+    serverSocket.close();
+    try
+    {
+      acceptThread.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void accept()
+  {
+    while (true)
+    {
+      final Socket socket;
+      try
+      {
+        socket = serverSocket.accept();
+      }
+      catch (IOException e)
+      {
+        // closed
+        return;
+      }
+      connectionCount.incrementAndGet();
+
+      new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            InputStream in = socket.getInputStream();
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            while (serve(in, out))
+            {
+              // kept alive
+            }
+          }
+          catch (IOException e)
+          {
+            // client went away
+          }
+          finally
+          {
+            try
+            {
+              socket.close();
+            }
+            catch (IOException e)
+            {
+              // ignored
+            }
+          }
+        }
+      }).start();
+    }
+  }
+
+  /**
+   * @return true if the connection is kept alive for another request
+   */
+  private boolean serve(InputStream in, OutputStream out) throws IOException
+  {
+    if (readLine(in) == null)
+    {
+      return false;
+    }
+    Map<String, String> headers = new HashMap<String, String>();
+    String line;
+    while ((line = readLine(in)) != null && line.length() > 0)
+    {
+      int colon = line.indexOf(':');
+      if (colon > 0)
+      {
+        headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+      }
+    }
+    lastRequestHeaders = headers;
+    requestCount.incrementAndGet();
+    int active = activeRequests.incrementAndGet();
+    try
+    {
+      while (true)
+      {
+        int max = maxActiveRequests.get();
+        if (active <= max || maxActiveRequests.compareAndSet(max, active))
+        {
+          break;
+        }
+      }
+      if (responseDelayMillis > 0)
+      {
+        Thread.sleep(responseDelayMillis);
+      }
+      return respond(headers, out);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    finally
+    {
+      activeRequests.decrementAndGet();
+    }
+  }
+
+  private boolean respond(Map<String, String> headers, OutputStream out) throws IOException
+  {
+
+    byte[] body = this.body;
+    String eTag = this.eTag;
+    String lastModified = this.lastModified;
+    boolean notModified = (eTag != null && eTag.equals(headers.get("if-none-match")))
+      || (lastModified != null && lastModified.equals(headers.get("if-modified-since")));
+
+    StringBuilder head = new StringBuilder();
+    head.append(notModified ? "HTTP/1.1 304 Not Modified\r\n" : "HTTP/1.1 200 OK\r\n");
+    head.append("Content-Type: text/plain; charset=utf-8\r\n");
+    if (eTag != null)
+    {
+      head.append("ETag: ").append(eTag).append("\r\n");
+    }
+    if (lastModified != null)
+    {
+      head.append("Last-Modified: ").append(lastModified).append("\r\n");
+    }
+    String contentEncoding = this.contentEncoding;
+    String acceptEncoding = headers.get("accept-encoding");
+    if (!notModified && contentEncoding != null && acceptEncoding != null
+      && acceptEncoding.contains(contentEncoding))
+    {
+      head.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+      body = getCompressedBody(body, contentEncoding);
+    }
+
+    // without a length the body ends when the connection is closed
+    boolean keepAlive = notModified || sendContentLength;
+    if (notModified)
+    {
+      notModifiedCount.incrementAndGet();
+    }
+    else if (sendContentLength)
+    {
+      head.append("Content-Length: ").append(body.length).append("\r\n");
+    }
+    head.append(keepAlive ? "\r\n" : "Connection: close\r\n\r\n");
+    out.write(head.toString().getBytes("US-ASCII"));
+    if (!notModified)
+    {
+      out.write(body);
+    }
+    out.flush();
+    return keepAlive;
+  }
+
+  private synchronized byte[] getCompressedBody(byte[] body, String contentEncoding) throws IOException
+  {
+    if (body != compressedSource || !contentEncoding.equals(compressedEncoding))
+    {
+      compressed = compress(body, contentEncoding);
+      compressedSource = body;
+      compressedEncoding = contentEncoding;
+    }
+    return compressed;
+  }
+
+  private static byte[] compress(byte[] body, String contentEncoding) throws IOException
+  {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    OutputStream out = contentEncoding.equals("gzip")
+      ? new GZIPOutputStream(compressed)
+      : new DeflaterOutputStream(compressed);
+    out.write(body);
+    out.close();
+    return compressed.toByteArray();
+  }
+
+  private static String readLine(InputStream in) throws IOException
+  {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != -1 && c != '\n')
+    {
+      if (c != '\r')
+      {
+        line.write(c);
+      }
+    }
+    return c == -1 && line.size() == 0 ? null : line.toString("US-ASCII");
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.android.AndroidWebRequest;
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.LocalHttpServer;
+import org.adblockplus.libadblockplus.ServerResponse;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Download throughput of AndroidWebRequest for a subscription-sized body
+ * served locally, plain and compressed, next to the former char by char
+ * reading.
+ */
+public class AndroidWebRequestBenchmarkTest extends AndroidTestCase
+{
+  private final static String TAG = "AndroidWebRequestBenchmark";
+  private final static int ITERATIONS = 5;
+
+  protected LocalHttpServer server;
+  protected String body;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    StringBuilder sb = new StringBuilder("[Adblock Plus 2.0]\n");
+    for (int i = 0; sb.length() < 2 * 1024 * 1024; i++)
+    {
+      sb.append("||ads").append(i).append(".example.com^$third-party\n");
+      sb.append("example").append(i).append(".com##.banner-\u00e4\u00f6\u00fc\n");
+    }
+    body = sb.toString();
+    server = new LocalHttpServer(body.getBytes("UTF-8"));
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    server.close();
+    super.tearDown();
+  }
+
+  private long timeAndroidWebRequest(AndroidWebRequest webRequest)
+  {
+    long start = System.nanoTime();
+    ServerResponse response = webRequest.httpGET(server.getUrl("/easylist.txt"),
+      Collections.<HeaderEntry>emptyList());
+    long elapsed = System.nanoTime() - start;
+
+    assertEquals(200, response.getResponseStatus());
+    assertEquals(body, response.getResponse());
+    return elapsed;
+  }
+
+  private long timeCharByChar() throws Exception
+  {
+    long start = System.nanoTime();
+    HttpURLConnection connection = (HttpURLConnection) new URL(server.getUrl("/easylist.txt")).openConnection();
+    Reader reader = new InputStreamReader(connection.getInputStream(), "UTF-8");
+    StringBuilder sb = new StringBuilder();
+    int character;
+    while ((character = reader.read()) != -1)
+    {
+      sb.append((char) character);
+    }
+    String response = sb.toString();
+    reader.close();
+    connection.disconnect();
+    long elapsed = System.nanoTime() - start;
+
+    assertEquals(body, response);
+    return elapsed;
+  }
+
+  private void report(String name, long[] times)
+  {
+    long min = Long.MAX_VALUE;
+    long total = 0;
+    for (long time : times)
+    {
+      min = Math.min(min, time);
+      total += time;
+    }
+    Log.i(TAG, String.format("%s: min %.1f ms, avg %.1f ms for %d bytes",
+      name, min / 1e6, total / 1e6 / times.length, body.length()));
+  }
+
+  @Test
+  public void testDownloadThroughput() throws Exception
+  {
+    AndroidWebRequest webRequest = new AndroidWebRequest(true);
+    long[] withContentLength = new long[ITERATIONS];
+    long[] withoutContentLength = new long[ITERATIONS];
+    long[] gzip = new long[ITERATIONS];
+    long[] charByChar = new long[ITERATIONS];
+
+    // warm up
+    timeAndroidWebRequest(webRequest);
+    timeCharByChar();
+
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      server.setSendContentLength(true);
+      withContentLength[i] = timeAndroidWebRequest(webRequest);
+      server.setSendContentLength(false);
+      withoutContentLength[i] = timeAndroidWebRequest(webRequest);
+      server.setContentEncoding("gzip");
+      gzip[i] = timeAndroidWebRequest(webRequest);
+      server.setContentEncoding(null);
+      charByChar[i] = timeCharByChar();
+    }
+
+    report("AndroidWebRequest with Content-Length", withContentLength);
+    report("AndroidWebRequest without Content-Length", withoutContentLength);
+    report("AndroidWebRequest gzip", gzip);
+    report("char by char", charByChar);
+  }
+}
@@ -18,12 +18,20 @@
 package org.adblockplus.libadblockplus.tests;
 
 import org.adblockplus.android.AndroidWebRequest;
+import org.adblockplus.android.HttpCache;
 import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.HeaderEntry;
 import org.adblockplus.libadblockplus.JsValue;
+import org.adblockplus.libadblockplus.LocalHttpServer;
 import org.adblockplus.libadblockplus.ServerResponse;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class AndroidWebRequestTest extends BaseJsTest
 {
   @Override
@@ -115,4 +123,164 @@ public class AndroidWebRequestTest extends BaseJsTest
       jsEngine.evaluate("request.getResponseHeader('Content-Type').substr(0, 10)").asString());
     assertTrue(jsEngine.evaluate("request.getResponseHeader('Location')").isNull());
   }
+
+  @Test
+  public void testRequestHeaders() throws Exception
+  {
+    LocalHttpServer server = new LocalHttpServer("foo".getBytes("UTF-8"));
+    try
+    {
+      ServerResponse response = new AndroidWebRequest().httpGET(server.getUrl("/foo"),
+        Arrays.asList(new HeaderEntry("X-Foo", "bar")));
+      assertEquals(200, response.getResponseStatus());
+      assertEquals("foo", response.getResponse());
+      assertEquals("bar", server.getLastRequestHeaders().get("x-foo"));
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception
+  {
+    LocalHttpServer server = new LocalHttpServer("foo".getBytes("UTF-8"));
+    try
+    {
+      AndroidWebRequest webRequest = new AndroidWebRequest();
+      for (int i = 0; i < 3; i++)
+      {
+        ServerResponse response = webRequest.httpGET(server.getUrl("/foo"),
+          Collections.<HeaderEntry>emptyList());
+        assertEquals("foo", response.getResponse());
+      }
+      assertEquals(3, server.getRequestCount());
+      assertEquals(1, server.getConnectionCount());
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  private void deleteRecursively(File file)
+  {
+    File[] children = file.listFiles();
+    if (children != null)
+    {
+      for (File child : children)
+      {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Test
+  public void testConditionalRequests() throws Exception
+  {
+    File cacheDir = new File(getContext().getCacheDir(), "http-cache-test");
+    deleteRecursively(cacheDir);
+    LocalHttpServer server = new LocalHttpServer("[Adblock Plus 2.0]\nfoo\n".getBytes("UTF-8"));
+    server.setETag("\"1\"");
+    server.setLastModified("Thu, 01 Jan 2015 00:00:00 GMT");
+    try
+    {
+      AndroidWebRequest webRequest = new AndroidWebRequest(true, new HttpCache(cacheDir));
+      List<HeaderEntry> noHeaders = Collections.emptyList();
+
+      ServerResponse response = webRequest.httpGET(server.getUrl("/list.txt?downloadCount=0"), noHeaders);
+      assertEquals(200, response.getResponseStatus());
+      assertEquals("[Adblock Plus 2.0]\nfoo\n", response.getResponse());
+      assertNull(server.getLastRequestHeaders().get("if-none-match"));
+
+      // query strings don't matter, the cached body comes back on 304
+      response = webRequest.httpGET(server.getUrl("/list.txt?downloadCount=1"), noHeaders);
+      assertEquals(1, server.getNotModifiedCount());
+      assertEquals("\"1\"", server.getLastRequestHeaders().get("if-none-match"));
+      assertEquals("Thu, 01 Jan 2015 00:00:00 GMT", server.getLastRequestHeaders().get("if-modified-since"));
+      assertEquals(ServerResponse.NsStatus.OK, response.getStatus());
+      assertEquals(200, response.getResponseStatus());
+      assertEquals("[Adblock Plus 2.0]\nfoo\n", response.getResponse());
+      assertFalse(response.getResponseHeaders().isEmpty());
+
+      // a changed list replaces the cached one
+      server.setETag("\"2\"");
+      server.setBody("[Adblock Plus 2.0]\nbar\n".getBytes("UTF-8"));
+      server.setLastModified(null);
+      response = webRequest.httpGET(server.getUrl("/list.txt"), noHeaders);
+      assertEquals(1, server.getNotModifiedCount());
+      assertEquals("[Adblock Plus 2.0]\nbar\n", response.getResponse());
+      response = webRequest.httpGET(server.getUrl("/list.txt"), noHeaders);
+      assertEquals(2, server.getNotModifiedCount());
+      assertEquals("[Adblock Plus 2.0]\nbar\n", response.getResponse());
+    }
+    finally
+    {
+      server.close();
+      deleteRecursively(cacheDir);
+    }
+  }
+
+  @Test
+  public void testCallerConditionalRequests() throws Exception
+  {
+    File cacheDir = new File(getContext().getCacheDir(), "http-cache-test");
+    deleteRecursively(cacheDir);
+    LocalHttpServer server = new LocalHttpServer("[Adblock Plus 2.0]\nfoo\n".getBytes("UTF-8"));
+    server.setETag("\"1\"");
+    try
+    {
+      // validators sent by the caller bypass the cache, the 304 is passed through
+      AndroidWebRequest webRequest = new AndroidWebRequest(true, new HttpCache(cacheDir));
+      ServerResponse response = webRequest.httpGET(server.getUrl("/list.txt"),
+        Arrays.asList(new HeaderEntry("If-None-Match", "\"1\"")));
+      assertEquals(1, server.getNotModifiedCount());
+      assertEquals(ServerResponse.NsStatus.OK, response.getStatus());
+      assertEquals(304, response.getResponseStatus());
+    }
+    finally
+    {
+      server.close();
+      deleteRecursively(cacheDir);
+    }
+  }
+
+  @Test
+  public void testCompressedResponses() throws Exception
+  {
+    StringBuilder sb = new StringBuilder("[Adblock Plus 2.0]\n");
+    for (int i = 0; i < 10000; i++)
+    {
+      sb.append("||ads").append(i).append(".example.com^\n");
+    }
+    String body = sb.toString();
+
+    LocalHttpServer server = new LocalHttpServer(body.getBytes("UTF-8"));
+    try
+    {
+      for (String contentEncoding : new String[] { "gzip", "deflate" })
+      {
+        server.setContentEncoding(contentEncoding);
+        for (boolean sendContentLength : new boolean[] { true, false })
+        {
+          server.setSendContentLength(sendContentLength);
+          ServerResponse response = new AndroidWebRequest(true).httpGET(server.getUrl("/list.txt"),
+            Collections.<HeaderEntry>emptyList());
+          assertEquals(200, response.getResponseStatus());
+          assertEquals(body, response.getResponse());
+          assertTrue(server.getLastRequestHeaders().get("accept-encoding").contains(contentEncoding));
+          for (HeaderEntry header : response.getResponseHeaders())
+          {
+            assertFalse("content-encoding".equals(header.getKey()));
+          }
+        }
+      }
+    }
+    finally
+    {
+      server.close();
+    }
+  }
 }
@@ -0,0 +1,179 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import android.test.AndroidTestCase;
+
+import org.adblockplus.android.ConcurrentWebRequest;
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.LocalHttpServer;
+import org.adblockplus.libadblockplus.ServerResponse;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentWebRequestTest extends AndroidTestCase
+{
+  private static final List<HeaderEntry> NO_HEADERS = Collections.emptyList();
+
+  private ConcurrentWebRequest webRequest;
+  // stands in for the download threads of the native engine
+  private ExecutorService callers;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+    webRequest = new ConcurrentWebRequest(true, null, 4, 2);
+    callers = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    callers.shutdownNow();
+    webRequest.dispose();
+    super.tearDown();
+  }
+
+  private List<Future<ServerResponse>> httpGET(final String url, int count)
+  {
+    List<Future<ServerResponse>> responses = new ArrayList<Future<ServerResponse>>();
+    for (int i = 0; i < count; i++)
+    {
+      responses.add(callers.submit(new Callable<ServerResponse>()
+      {
+        @Override
+        public ServerResponse call()
+        {
+          return webRequest.httpGET(url, NO_HEADERS);
+        }
+      }));
+    }
+    return responses;
+  }
+
+  private void assertResponses(String expected, List<Future<ServerResponse>> responses) throws Exception
+  {
+    for (Future<ServerResponse> response : responses)
+    {
+      assertEquals(expected, response.get(10, TimeUnit.SECONDS).getResponse());
+    }
+  }
+
+  @Test
+  public void testPerHostLimit() throws Exception
+  {
+    LocalHttpServer server = new LocalHttpServer("foo".getBytes("UTF-8"));
+    server.setResponseDelay(100);
+    try
+    {
+      assertResponses("foo", httpGET(server.getUrl("/foo"), 6));
+      assertEquals(6, server.getRequestCount());
+      assertEquals(2, server.getMaxActiveRequests());
+      // connections are reused by the next queued request
+      assertTrue(server.getConnectionCount() <= 2);
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testHostsInParallel() throws Exception
+  {
+    LocalHttpServer server1 = new LocalHttpServer("foo".getBytes("UTF-8"));
+    LocalHttpServer server2 = new LocalHttpServer("bar".getBytes("UTF-8"));
+    server1.setResponseDelay(300);
+    server2.setResponseDelay(300);
+    try
+    {
+      // requests waiting for a busy host don't hold up another one
+      List<Future<ServerResponse>> responses1 = httpGET(server1.getUrl("/foo"), 4);
+      List<Future<ServerResponse>> responses2 = httpGET(server2.getUrl("/bar"), 2);
+      assertResponses("foo", responses1);
+      assertResponses("bar", responses2);
+      assertEquals(2, server1.getMaxActiveRequests());
+      assertEquals(2, server2.getMaxActiveRequests());
+    }
+    finally
+    {
+      server1.close();
+      server2.close();
+    }
+  }
+
+  @Test
+  public void testCancelledDownloadKeepsSlot() throws Exception
+  {
+    LocalHttpServer server = new LocalHttpServer("foo".getBytes("UTF-8"));
+    server.setResponseDelay(300);
+    try
+    {
+      // the connection ignores the interrupt, its slot is passed on once it finished
+      Future<ServerResponse> cancelled = webRequest.submit(server.getUrl("/foo"), NO_HEADERS);
+      Thread.sleep(100);
+      cancelled.cancel(true);
+      assertResponses("foo", httpGET(server.getUrl("/foo"), 2));
+      assertEquals(2, server.getMaxActiveRequests());
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testSubmit() throws Exception
+  {
+    LocalHttpServer server = new LocalHttpServer("foo".getBytes("UTF-8"));
+    try
+    {
+      Future<ServerResponse> response = webRequest.submit(server.getUrl("/foo"), NO_HEADERS);
+      assertEquals(200, response.get(10, TimeUnit.SECONDS).getResponseStatus());
+      assertEquals("foo", response.get().getResponse());
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testInvalidLimits()
+  {
+    try
+    {
+      new ConcurrentWebRequest(false, null, 0, 1);
+      fail();
+    }
+    catch (IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.ElementHidingCache;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.MatchCache;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class ElementHidingCacheTest extends FilterEngineGenericTest
+{
+  protected ElementHidingCache elementHidingCache;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    elementHidingCache = new ElementHidingCache(filterEngine, 1024 * 1024);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    elementHidingCache.dispose();
+    super.tearDown();
+  }
+
+  @Test
+  public void testHitsAndMisses()
+  {
+    filterEngine.getFilter("example.org##.ad").addToList();
+
+    List<String> selectors1 = elementHidingCache.getElementHidingSelectors("example.org");
+    assertEquals(1, selectors1.size());
+    assertEquals(".ad", selectors1.get(0));
+    assertEquals(0, elementHidingCache.getHitCount());
+    assertEquals(1, elementHidingCache.getMissCount());
+    assertTrue(elementHidingCache.getMemory() > 0);
+
+    // entries are shared between callers
+    List<String> selectors2 = elementHidingCache.getElementHidingSelectors("example.org");
+    assertSame(selectors1, selectors2);
+    assertEquals(1, elementHidingCache.getHitCount());
+    assertEquals(1, elementHidingCache.getMissCount());
+
+    try
+    {
+      selectors2.add(".foo");
+      fail("Cached selectors should be immutable");
+    }
+    catch (UnsupportedOperationException e)
+    {
+      // expected
+    }
+  }
+
+  @Test
+  public void testEviction()
+  {
+    filterEngine.getFilter("example.org##.ad").addToList();
+    filterEngine.getFilter("example.com##.ad").addToList();
+    filterEngine.getFilter("example.net##.ad").addToList();
+
+    elementHidingCache.getElementHidingSelectors("example.org");
+    long entryMemory = elementHidingCache.getMemory();
+    elementHidingCache.dispose();
+
+    // room for two entries of the same size
+    elementHidingCache = new ElementHidingCache(filterEngine, 2 * entryMemory);
+    elementHidingCache.getElementHidingSelectors("example.org");
+    elementHidingCache.getElementHidingSelectors("example.com");
+    elementHidingCache.getElementHidingSelectors("example.org");
+    elementHidingCache.getElementHidingSelectors("example.net");
+    assertEquals(2, elementHidingCache.size());
+    assertTrue(elementHidingCache.getMemory() <= elementHidingCache.getMaxMemory());
+    assertEquals(1, elementHidingCache.getHitCount());
+
+    // example.com was least recently used
+    elementHidingCache.getElementHidingSelectors("example.org");
+    assertEquals(2, elementHidingCache.getHitCount());
+    elementHidingCache.getElementHidingSelectors("example.com");
+    assertEquals(2, elementHidingCache.getHitCount());
+  }
+
+  @Test
+  public void testInvalidationOnFilterChange()
+  {
+    assertEquals(0, elementHidingCache.getElementHidingSelectors("example.org").size());
+    assertEquals(1, elementHidingCache.size());
+
+    filterEngine.getFilter("example.org##.ad").addToList();
+    assertEquals(0, elementHidingCache.size());
+    assertEquals(0, elementHidingCache.getMemory());
+    assertEquals(1, elementHidingCache.getElementHidingSelectors("example.org").size());
+
+    filterEngine.getFilter("example.org##.ad").removeFromList();
+    assertEquals(0, elementHidingCache.getElementHidingSelectors("example.org").size());
+  }
+
+  @Test
+  public void testCoexistsWithMatchCache()
+  {
+    MatchCache matchCache = new MatchCache(filterEngine, 16);
+    try
+    {
+      elementHidingCache.getElementHidingSelectors("example.org");
+      matchCache.matches("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, "");
+
+      filterEngine.getFilter("example.org##.ad").addToList();
+      assertEquals(0, elementHidingCache.size());
+      assertEquals(0, matchCache.size());
+
+      // disposing one cache leaves the other attached
+      matchCache.dispose();
+      assertEquals(1, elementHidingCache.getElementHidingSelectors("example.org").size());
+      filterEngine.getFilter("example.org##.ad").removeFromList();
+      assertEquals(0, elementHidingCache.size());
+    }
+    finally
+    {
+      matchCache.dispose();
+    }
+  }
+}
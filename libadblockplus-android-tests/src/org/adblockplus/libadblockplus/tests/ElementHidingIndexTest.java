@@ -0,0 +1,139 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.ElementHidingIndex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ElementHidingIndexTest extends FilterEngineGenericTest
+{
+  protected ElementHidingIndex elementHidingIndex;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    elementHidingIndex = new ElementHidingIndex(filterEngine);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    elementHidingIndex.dispose();
+    super.tearDown();
+  }
+
+  private void assertSameSelectors(String domain)
+  {
+    List<String> expected = new ArrayList<String>(filterEngine.getElementHidingSelectors(domain));
+    List<String> actual = new ArrayList<String>(elementHidingIndex.getGenericSelectors());
+    actual.addAll(elementHidingIndex.getDomainSelectors(domain));
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testGenericAndDomainSelectors()
+  {
+    filterEngine.getFilter("##.generic").addToList();
+    filterEngine.getFilter("##.conditional").addToList();
+    filterEngine.getFilter("example.com#@#.conditional").addToList();
+    filterEngine.getFilter("example.org##.specific").addToList();
+    filterEngine.getFilter("~www.example.org##.excluded").addToList();
+
+    assertEquals(Collections.singletonList(".generic"), elementHidingIndex.getGenericSelectors());
+    assertEquals(".generic {display: none !important;}\n", elementHidingIndex.getGenericStyleSheet());
+    assertEquals(5, elementHidingIndex.getFilterCount());
+
+    List<String> selectors = elementHidingIndex.getDomainSelectors("example.org");
+    assertEquals(3, selectors.size());
+    assertTrue(selectors.contains(".specific"));
+    assertTrue(selectors.contains(".conditional"));
+    assertTrue(selectors.contains(".excluded"));
+
+    assertEquals(Collections.singletonList(".excluded"), elementHidingIndex.getDomainSelectors("example.com"));
+
+    for (String domain : new String[] { "", "example.org", "www.example.org", "example.com", "example.net" })
+    {
+      assertSameSelectors(domain);
+    }
+  }
+
+  @Test
+  public void testRebuildInBackground() throws InterruptedException
+  {
+    String styleSheet = elementHidingIndex.getGenericStyleSheet();
+    filterEngine.getFilter("##.generic").addToList();
+
+    // the previous version is served until the rebuild has finished
+    String current = elementHidingIndex.getGenericStyleSheet();
+    assertTrue(current == styleSheet || current.equals(".generic {display: none !important;}\n"));
+    for (int i = 0; i < 100 && elementHidingIndex.getGenericSelectors().isEmpty(); i++)
+    {
+      Thread.sleep(20);
+    }
+    assertEquals(Collections.singletonList(".generic"), elementHidingIndex.getGenericSelectors());
+  }
+
+  @Test
+  public void testRebuildOnFilterChange()
+  {
+    String styleSheet = elementHidingIndex.getGenericStyleSheet();
+    assertEquals("", styleSheet);
+    assertSame(styleSheet, elementHidingIndex.getGenericStyleSheet());
+
+    filterEngine.getFilter("##.generic").addToList();
+    elementHidingIndex.update();
+    assertEquals(Collections.singletonList(".generic"), elementHidingIndex.getGenericSelectors());
+
+    filterEngine.getFilter("example.com#@#.generic").addToList();
+    elementHidingIndex.update();
+    assertTrue(elementHidingIndex.getGenericSelectors().isEmpty());
+    assertEquals(Collections.singletonList(".generic"), elementHidingIndex.getDomainSelectors("example.org"));
+    assertTrue(elementHidingIndex.getDomainSelectors("example.com").isEmpty());
+
+    filterEngine.getFilter("example.com#@#.generic").removeFromList();
+    filterEngine.getFilter("##.generic").removeFromList();
+    elementHidingIndex.update();
+    assertTrue(elementHidingIndex.getGenericSelectors().isEmpty());
+    assertTrue(elementHidingIndex.getDomainSelectors("example.org").isEmpty());
+  }
+
+  @Test
+  public void testDisposedBeforeFirstBuild()
+  {
+    ElementHidingIndex index = new ElementHidingIndex(filterEngine);
+    index.dispose();
+    try
+    {
+      index.getGenericSelectors();
+      fail("IllegalStateException expected");
+    }
+    catch (IllegalStateException e)
+    {
+      // expected
+    }
+  }
+}
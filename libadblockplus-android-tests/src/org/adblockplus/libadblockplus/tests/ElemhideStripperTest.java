@@ -0,0 +1,130 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import android.test.AndroidTestCase;
+
+import org.adblockplus.android.ElemhideStripper;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class ElemhideStripperTest extends AndroidTestCase
+{
+  private static final String LIST =
+      "[Adblock Plus 2.0]\n" +
+      "! Title: Test\n" +
+      "adbanner.gif\n" +
+      "||example.com/#ad\n" +
+      "|http://example.com/page#section|\n" +
+      "/ads/#/$domain=example.com\n" +
+      "@@||example.com/#anchor^\n" +
+      "##.ad\n" +
+      "example.com##.ad\n" +
+      "example.com,~foo.example.com#@#.ad\n" +
+      "example.com#?#div:-abp-properties(width: 400px)\n" +
+      "example.com#div(id=ad)\n" +
+      "#div(ad)\n" +
+      "  ##.trimmed  \n" +
+      "example.com#.not-a-rule\n";
+
+  private static final String STRIPPED =
+      "[Adblock Plus 2.0]\n" +
+      "! Title: Test\n" +
+      "adbanner.gif\n" +
+      "||example.com/#ad\n" +
+      "|http://example.com/page#section|\n" +
+      "/ads/#/$domain=example.com\n" +
+      "@@||example.com/#anchor^\n" +
+      "example.com#.not-a-rule\n";
+
+  private static String strip(InputStream in, int expectedLength) throws IOException
+  {
+    ByteBuffer buffer = ElemhideStripper.strip(in, expectedLength);
+    return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), "UTF-8");
+  }
+
+  // returns at most chunkSize bytes per read, like a slow connection
+  private static InputStream chunked(String text, final int chunkSize) throws IOException
+  {
+    return new FilterInputStream(new ByteArrayInputStream(text.getBytes("UTF-8")))
+    {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+        return super.read(b, off, Math.min(len, chunkSize));
+      }
+    };
+  }
+
+  @Test
+  public void testKeepsUrlFiltersWithHash() throws IOException
+  {
+    assertEquals(STRIPPED, strip(chunked(LIST, LIST.length()), LIST.length()));
+  }
+
+  @Test
+  public void testChunkedInput() throws IOException
+  {
+    for (int chunkSize : new int[] { 1, 3, 7, 64 })
+    {
+      assertEquals(STRIPPED, strip(chunked(LIST, chunkSize), -1));
+      // too small and too large expected lengths only affect buffer sizing
+      assertEquals(STRIPPED, strip(chunked(LIST, chunkSize), 4));
+      assertEquals(STRIPPED, strip(chunked(LIST, chunkSize), LIST.length() * 2));
+    }
+  }
+
+  @Test
+  public void testLineEndings() throws IOException
+  {
+    assertEquals("adbanner.gif\r\n||example.com/#ad",
+        strip(chunked("adbanner.gif\r\nexample.com##.ad\r\n||example.com/#ad", 5), -1));
+    assertEquals("adbanner.gif\n", strip(chunked("adbanner.gif\n##.ad", 5), -1));
+    assertEquals("", strip(chunked("", 5), -1));
+  }
+
+  @Test
+  public void testKeepsSelectorsWithBraces() throws IOException
+  {
+    // core parses these as blocking filters
+    assertEquals("example.com##a{b}\n##}\n",
+        strip(chunked("example.com##a{b}\n##.ad\n##}\n", 3), -1));
+  }
+
+  @Test
+  public void testNonAscii() throws IOException
+  {
+    assertEquals("||b\u00fccher.example/#x\n",
+        strip(chunked("||b\u00fccher.example/#x\nb\u00fccher.example##.ad\n", 2), -1));
+  }
+
+  @Test
+  public void testHugeExpectedLength() throws IOException
+  {
+    // a bogus Content-Length neither allocates its size nor stays in the result
+    ByteBuffer buffer = ElemhideStripper.strip(chunked(LIST, 64), Integer.MAX_VALUE);
+    assertEquals(STRIPPED.length(), buffer.remaining());
+    assertEquals(STRIPPED.length(), buffer.array().length);
+  }
+}
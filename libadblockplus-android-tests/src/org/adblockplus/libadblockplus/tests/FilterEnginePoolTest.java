@@ -0,0 +1,240 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.adblockplus.libadblockplus.AppInfo;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEnginePool;
+import org.adblockplus.libadblockplus.JsEngine;
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.JsValue;
+import org.adblockplus.libadblockplus.LazyWebRequest;
+import org.adblockplus.libadblockplus.MockWebRequest;
+import org.adblockplus.libadblockplus.ServerResponse;
+import org.adblockplus.libadblockplus.Subscription;
+
+import android.test.AndroidTestCase;
+
+import org.junit.Test;
+
+public class FilterEnginePoolTest extends AndroidTestCase
+{
+  private final static int SIZE = 3;
+
+  protected FilterEnginePool pool;
+  protected volatile Throwable workerFailure;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    pool = new FilterEnginePool(SIZE, new FilterEnginePool.JsEngineFactory()
+    {
+      @Override
+      public JsEngine createJsEngine(final int index)
+      {
+        final File dir = new File(getContext().getFilesDir(), "pool" + index);
+        dir.mkdirs();
+
+        final JsEngine jsEngine = new JsEngine(AppInfo.builder().build());
+        jsEngine.setDefaultLogSystem();
+        jsEngine.setDefaultFileSystem(dir.getAbsolutePath());
+        jsEngine.setWebRequest(new LazyWebRequest());
+        return jsEngine;
+      }
+    });
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    pool.dispose();
+
+    super.tearDown();
+  }
+
+  @Test
+  public void testFilterChangesAreMirrored()
+  {
+    assertEquals(SIZE, pool.getSize());
+
+    pool.getPrimary().getFilter("adbanner.gif").addToList();
+    pool.getPrimary().getFilter("@@notbanner.gif").addToList();
+
+    for (int i = 0; i < SIZE; i++)
+    {
+      assertEquals(FilterEngine.MatchDecision.BLOCK, pool.getFilterEngine(i).matchDecision(
+        "http://example.org/adbanner.gif",
+        FilterEngine.ContentType.IMAGE,
+        ""));
+      assertEquals(FilterEngine.MatchDecision.ALLOW, pool.getFilterEngine(i).matchDecision(
+        "http://example.org/notbanner.gif",
+        FilterEngine.ContentType.IMAGE,
+        ""));
+    }
+    assertEquals(FilterEngine.MatchDecision.BLOCK, pool.matchDecision(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+
+    pool.getPrimary().getFilter("adbanner.gif").removeFromList();
+    for (int i = 0; i < SIZE; i++)
+    {
+      assertNull(pool.getFilterEngine(i).matches(
+        "http://example.org/adbanner.gif",
+        FilterEngine.ContentType.IMAGE,
+        ""));
+    }
+  }
+
+  @Test
+  public void testQueueDepths() throws InterruptedException
+  {
+    pool.getPrimary().getFilter("adbanner.gif").addToList();
+
+    final Thread[] threads = new Thread[SIZE * 2];
+    for (int i = 0; i < threads.length; i++)
+    {
+      threads[i] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            for (int j = 0; j < 100; j++)
+            {
+              assertNotNull(pool.matches(
+                "http://example.org/adbanner.gif",
+                FilterEngine.ContentType.IMAGE,
+                ""));
+            }
+          }
+          catch (Throwable t)
+          {
+            workerFailure = t;
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (final Thread thread : threads)
+    {
+      thread.join();
+    }
+    if (workerFailure != null)
+    {
+      throw new AssertionError(workerFailure);
+    }
+
+    final int[] depths = pool.getQueueDepths();
+    assertEquals(SIZE, depths.length);
+    for (int i = 0; i < SIZE; i++)
+    {
+      assertEquals(0, depths[i]);
+      assertEquals(0, pool.getQueueDepth(i));
+    }
+  }
+
+  private static class CountingWebRequest extends MockWebRequest
+  {
+    public final Map<String, Integer> requests = new HashMap<String, Integer>();
+
+    @Override
+    public synchronized ServerResponse httpGET(String url, List<HeaderEntry> headers)
+    {
+      Integer count = requests.get(url);
+      requests.put(url, count == null ? 1 : count + 1);
+      return super.httpGET(url, headers);
+    }
+  }
+
+  @Test
+  public void testSubscriptionIsDownloadedOnce() throws InterruptedException
+  {
+    final CountingWebRequest webRequest = new CountingWebRequest();
+    webRequest.response.setStatus(ServerResponse.NsStatus.OK);
+    webRequest.response.setResponseStatus(200);
+    webRequest.response.setResponse("[Adblock Plus 2.0]\nadbanner.gif");
+
+    final FilterEnginePool downloadingPool = new FilterEnginePool(2, new FilterEnginePool.JsEngineFactory()
+    {
+      @Override
+      public JsEngine createJsEngine(final int index)
+      {
+        final File dir = new File(getContext().getFilesDir(), "downloadingPool" + index);
+        dir.mkdirs();
+
+        final JsEngine jsEngine = new JsEngine(AppInfo.builder().build());
+        jsEngine.setDefaultLogSystem();
+        jsEngine.setDefaultFileSystem(dir.getAbsolutePath());
+        jsEngine.setWebRequest(webRequest);
+        return jsEngine;
+      }
+    });
+    try
+    {
+      final String url = "https://example.org/pooled.txt";
+      final Subscription subscription = downloadingPool.getPrimary().getSubscription(url);
+      subscription.addToList();
+      for (int i = 0; i < 50 && !isDownloaded(subscription); i++)
+      {
+        Thread.sleep(100);
+      }
+      assertTrue(isDownloaded(subscription));
+      subscription.dispose();
+
+      synchronized (webRequest)
+      {
+        assertEquals(Integer.valueOf(1), webRequest.requests.get(url));
+        for (final Integer count : webRequest.requests.values())
+        {
+          assertEquals(1, count.intValue());
+        }
+      }
+      assertEquals(FilterEngine.MatchDecision.BLOCK, downloadingPool.getFilterEngine(1).matchDecision(
+        "http://example.org/adbanner.gif",
+        FilterEngine.ContentType.IMAGE,
+        ""));
+    }
+    finally
+    {
+      downloadingPool.dispose();
+      webRequest.dispose();
+    }
+  }
+
+  private static boolean isDownloaded(Subscription subscription)
+  {
+    JsValue lastDownload = subscription.getProperty("lastDownload");
+    try
+    {
+      return lastDownload.isNumber() && lastDownload.asLong() > 0;
+    }
+    finally
+    {
+      lastDownload.dispose();
+    }
+  }
+}
@@ -20,11 +20,20 @@ package org.adblockplus.libadblockplus.tests;
 import android.util.Log;
 import org.adblockplus.libadblockplus.Filter;
 import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEngineThread;
+import org.adblockplus.libadblockplus.MatchResult;
 import org.adblockplus.libadblockplus.MockFilterChangeCallback;
 import org.adblockplus.libadblockplus.Subscription;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class FilterEngineTest extends FilterEngineGenericTest
 {
   @Test
@@ -199,6 +208,213 @@ public class FilterEngineTest extends FilterEngineGenericTest
     assertEquals(Filter.Type.BLOCKING, match12.getType());
   }
 
+  @Test
+  public void testMatchDecision()
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+    filterEngine.getFilter("@@notbanner.gif").addToList();
+    filterEngine.getFilter("@@adbanner.gif$domain=example.org").addToList();
+
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, filterEngine.matchDecision(
+      "http://example.org/foobar.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+    assertEquals(FilterEngine.MatchDecision.BLOCK, filterEngine.matchDecision(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+    assertEquals(FilterEngine.MatchDecision.ALLOW, filterEngine.matchDecision(
+      "http://example.org/notbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+    assertEquals(FilterEngine.MatchDecision.ALLOW, filterEngine.matchDecision(
+      "http://ads.com/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      new String[]
+        {
+          "http://ads.com/frame/",
+          "http://example.org/"
+        }));
+  }
+
+  @Test
+  public void testMatchResult()
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+    filterEngine.getFilter("@@notbanner.gif").addToList();
+
+    assertNull(filterEngine.matchResult(
+      "http://example.org/foobar.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+
+    MatchResult result1 = filterEngine.matchResult(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      "");
+    assertNotNull(result1);
+    assertEquals(Filter.Type.BLOCKING, result1.getType());
+    assertEquals("adbanner.gif", result1.getText());
+    assertEquals(FilterEngine.MatchDecision.BLOCK, result1.getDecision());
+
+    MatchResult result2 = filterEngine.matchResult(
+      "http://example.org/notbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      new String[] { "http://example.com/" });
+    assertNotNull(result2);
+    assertEquals(Filter.Type.EXCEPTION, result2.getType());
+    assertEquals("@@notbanner.gif", result2.getText());
+    assertEquals(FilterEngine.MatchDecision.ALLOW, result2.getDecision());
+  }
+
+  @Test
+  public void testMatchesBatch()
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+    filterEngine.getFilter("@@notbanner.gif").addToList();
+    filterEngine.getFilter("@@adbanner.gif$domain=example.org").addToList();
+
+    Filter[] matches = filterEngine.matchesBatch(
+      new String[]
+        {
+          "http://example.org/foobar.gif",
+          "http://ads.com/adbanner.gif",
+          "http://example.org/notbanner.gif",
+          "http://ads.com/adbanner.gif"
+        },
+      new FilterEngine.ContentType[]
+        {
+          FilterEngine.ContentType.IMAGE,
+          FilterEngine.ContentType.IMAGE,
+          FilterEngine.ContentType.IMAGE,
+          FilterEngine.ContentType.IMAGE
+        },
+      new String[][]
+        {
+          null,
+          { "http://example.com/" },
+          { },
+          { "http://ads.com/frame/", "http://example.org/" }
+        });
+    assertEquals(4, matches.length);
+    assertNull(matches[0]);
+    assertNotNull(matches[1]);
+    assertEquals(Filter.Type.BLOCKING, matches[1].getType());
+    assertNotNull(matches[2]);
+    assertEquals(Filter.Type.EXCEPTION, matches[2].getType());
+    assertNotNull(matches[3]);
+    assertEquals(Filter.Type.EXCEPTION, matches[3].getType());
+
+    Filter[] noDocumentUrls = filterEngine.matchesBatch(
+      new String[] { "http://ads.com/adbanner.gif" },
+      new FilterEngine.ContentType[] { FilterEngine.ContentType.IMAGE },
+      null);
+    assertEquals(1, noDocumentUrls.length);
+    assertEquals(Filter.Type.BLOCKING, noDocumentUrls[0].getType());
+  }
+
+  @Test
+  public void testMatchesAsync() throws Exception
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+    filterEngine.getFilter("example.org##.ad").addToList();
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<FilterEngine.MatchDecision> decision = new AtomicReference<FilterEngine.MatchDecision>();
+    Future<FilterEngine.MatchDecision> match = filterEngine.matchesAsync(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      "",
+      10000,
+      FilterEngine.MatchDecision.NO_MATCH,
+      new FilterEngineThread.Callback<FilterEngine.MatchDecision>()
+      {
+        @Override
+        public void onResult(FilterEngine.MatchDecision result)
+        {
+          decision.set(result);
+          latch.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t)
+        {
+          latch.countDown();
+        }
+      });
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(FilterEngine.MatchDecision.BLOCK, decision.get());
+    assertEquals(FilterEngine.MatchDecision.BLOCK, match.get());
+
+    Future<List<String>> selectors = filterEngine.getElementHidingSelectorsAsync("example.org", 10000, null);
+    assertEquals(1, selectors.get().size());
+    assertEquals(".ad", selectors.get().get(0));
+  }
+
+  @Test
+  public void testMatchesAsyncDeadline() throws Exception
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    Future<FilterEngine.MatchDecision> failClosed = filterEngine.matchesAsync(
+      "http://example.org/foobar.gif",
+      FilterEngine.ContentType.IMAGE,
+      "",
+      0,
+      FilterEngine.MatchDecision.BLOCK,
+      null);
+    assertTrue(failClosed.isDone());
+    assertEquals(FilterEngine.MatchDecision.BLOCK, failClosed.get());
+
+    Future<FilterEngine.MatchDecision> failOpen = filterEngine.matchesAsync(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      new String[0],
+      0,
+      FilterEngine.MatchDecision.NO_MATCH,
+      null);
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, failOpen.get());
+
+    Future<List<String>> selectors = filterEngine.getElementHidingSelectorsAsync("example.org", 0, null);
+    assertTrue(selectors.get().isEmpty());
+  }
+
+  @Test
+  public void testElementHidingStyleSheet() throws Exception
+  {
+    assertEquals("", filterEngine.getElementHidingStyleSheet("example.org"));
+
+    filterEngine.getFilter("example.org##.foo").addToList();
+    assertEquals(".foo {display: none !important;}\n",
+      filterEngine.getElementHidingStyleSheet("example.org"));
+
+    filterEngine.getFilter("example.org##.bar").addToList();
+    filterEngine.getFilter("##.baz").addToList();
+    // one rule per line, two selectors per rule
+    String styleSheet = filterEngine.getElementHidingStyleSheet("example.org", 2);
+    assertEquals(2, styleSheet.split("\n").length);
+    assertTrue(styleSheet.contains(".foo"));
+    assertTrue(styleSheet.contains(".bar"));
+    assertTrue(styleSheet.contains(".baz"));
+    assertFalse(filterEngine.getElementHidingStyleSheet("example.com").contains(".foo"));
+
+    ByteBuffer buffer = filterEngine.getElementHidingStyleSheetBuffer("example.org", 2);
+    assertTrue(buffer.isDirect());
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertEquals(styleSheet, new String(bytes, "UTF-8"));
+
+    try
+    {
+      filterEngine.getElementHidingStyleSheet("example.org", 0);
+      fail("Selector group size should be positive");
+    }
+    catch (IllegalArgumentException e)
+    {
+      // expected
+    }
+  }
+
   @Test
   public void testMatchesOnWhitelistedDomain()
   {
@@ -0,0 +1,135 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.adblockplus.libadblockplus.Filter;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.FilterEngineThread;
+
+import org.junit.Test;
+
+public class FilterEngineThreadTest extends FilterEngineGenericTest
+{
+  protected FilterEngineThread engineThread;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    engineThread = new FilterEngineThread(filterEngine);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    engineThread.dispose();
+
+    super.tearDown();
+  }
+
+  @Test
+  public void testMatches() throws Exception
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    final Future<Filter> match = engineThread.matches(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      "");
+    assertNotNull(match.get());
+    assertEquals(Filter.Type.BLOCKING, match.get().getType());
+
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, engineThread.matchDecision(
+      "http://example.org/foobar.gif",
+      FilterEngine.ContentType.IMAGE,
+      "").get());
+  }
+
+  @Test
+  public void testCallback() throws Exception
+  {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<Boolean> onEngineThread = new AtomicReference<Boolean>();
+
+    engineThread.submit(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return engineThread.isEngineThread();
+      }
+    }, new FilterEngineThread.Callback<Boolean>()
+    {
+      @Override
+      public void onResult(final Boolean result)
+      {
+        onEngineThread.set(result);
+        latch.countDown();
+      }
+
+      @Override
+      public void onError(final Throwable t)
+      {
+        latch.countDown();
+      }
+    });
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    assertEquals(Boolean.TRUE, onEngineThread.get());
+    assertFalse(engineThread.isEngineThread());
+  }
+
+  @Test
+  public void testInvokeOnEngineThread()
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    // a blocking call from the engine thread must not wait for itself
+    final FilterEngine.MatchDecision decision = engineThread.invoke(new Callable<FilterEngine.MatchDecision>()
+    {
+      @Override
+      public FilterEngine.MatchDecision call() throws Exception
+      {
+        return engineThread.matchDecision(
+          "http://example.org/adbanner.gif",
+          FilterEngine.ContentType.IMAGE,
+          "").get();
+      }
+    });
+    assertEquals(FilterEngine.MatchDecision.BLOCK, decision);
+  }
+
+  @Test
+  public void testDispose() throws Exception
+  {
+    engineThread.dispose();
+
+    final Future<Filter> match = engineThread.matches(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      "");
+    assertTrue(match.isCancelled());
+  }
+}
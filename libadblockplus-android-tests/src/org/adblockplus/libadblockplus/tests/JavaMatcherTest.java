@@ -0,0 +1,183 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.Filter;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.JavaMatcher;
+import org.adblockplus.libadblockplus.MockFilterChangeCallback;
+
+import org.junit.Test;
+
+public class JavaMatcherTest extends FilterEngineGenericTest
+{
+  private final static String[] FILTERS =
+  {
+    "adbanner.gif",
+    "@@notbanner.gif",
+    "tpbanner.gif$third-party",
+    "fpbanner.gif$~third-party",
+    "combanner.gif$domain=example.com",
+    "orgbanner.gif$domain=~example.com",
+    "||ads.example.com^$script",
+    "|http://start.",
+    "end.js|",
+    "/\\/re[0-9]+\\//",
+    "@@||example.net^$document",
+    "example.com##.ad"
+  };
+
+  private final static String[] URLS =
+  {
+    "http://example.org/foobar.gif",
+    "http://example.org/adbanner.gif",
+    "http://example.org/notbanner.gif",
+    "http://example.org/tpbanner.gif",
+    "http://example.org/fpbanner.gif",
+    "http://example.org/combanner.gif",
+    "http://example.org/orgbanner.gif",
+    "http://sub.ads.example.com/ad.js",
+    "http://start.example.org/",
+    "http://example.org/end.js",
+    "http://example.org/end.js?x",
+    "http://example.org/re42/",
+  };
+
+  private final static String[] DOCUMENT_URLS =
+  {
+    "",
+    "http://example.org/",
+    "http://example.com/",
+    "http://example.com./",
+    "http://example.net/"
+  };
+
+  @Test
+  public void testMatchesLikeFilterEngine()
+  {
+    for (final String filter : FILTERS)
+    {
+      filterEngine.getFilter(filter).addToList();
+    }
+
+    final JavaMatcher javaMatcher = new JavaMatcher(filterEngine);
+    try
+    {
+      for (final String url : URLS)
+      {
+        for (final FilterEngine.ContentType contentType : new FilterEngine.ContentType[]
+            { FilterEngine.ContentType.IMAGE, FilterEngine.ContentType.SCRIPT })
+        {
+          for (final String documentUrl : DOCUMENT_URLS)
+          {
+            assertEquals(url + " " + contentType + " " + documentUrl,
+                filterEngine.matchResult(url, contentType, documentUrl),
+                javaMatcher.matches(url, contentType, documentUrl));
+          }
+          final String[] documentUrls = new String[] { "http://example.org/frame", "http://example.net/" };
+          assertEquals(filterEngine.matchResult(url, contentType, documentUrls),
+              javaMatcher.matches(url, contentType, documentUrls));
+          assertEquals(javaMatcher.matches(url, contentType, new String[0]),
+              javaMatcher.matches(url, contentType, (String[]) null));
+        }
+      }
+    }
+    finally
+    {
+      javaMatcher.dispose();
+    }
+  }
+
+  @Test
+  public void testIncrementalUpdates()
+  {
+    final MockFilterChangeCallback callback = new MockFilterChangeCallback(0);
+    final JavaMatcher javaMatcher = new JavaMatcher(filterEngine, callback);
+    try
+    {
+      assertNull(javaMatcher.matches("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, ""));
+
+      final Filter filter = filterEngine.getFilter("adbanner.gif");
+      filter.addToList();
+      assertEquals(FilterEngine.MatchDecision.BLOCK,
+          javaMatcher.matchDecision("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, ""));
+      assertEquals(1, javaMatcher.getFilterCount());
+      assertTrue(callback.getTimesCalled() > 0);
+
+      filter.removeFromList();
+      assertEquals(FilterEngine.MatchDecision.NO_MATCH,
+          javaMatcher.matchDecision("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, ""));
+      assertEquals(0, javaMatcher.getFilterCount());
+    }
+    finally
+    {
+      javaMatcher.dispose();
+    }
+  }
+
+  @Test
+  public void testThirdPartyUnderCountryCodeDomains()
+  {
+    filterEngine.getFilter("tpbanner.gif$third-party").addToList();
+
+    final JavaMatcher javaMatcher = new JavaMatcher(filterEngine);
+    try
+    {
+      final String[][] requests =
+      {
+        { "http://cdn.abc.de/tpbanner.gif", "http://www.abc.de/" },
+        { "http://img.ibm.de/tpbanner.gif", "http://ibm.de/" },
+        { "http://static.bbc.co.uk/tpbanner.gif", "http://www.bbc.co.uk/" },
+        { "http://example.co.uk/tpbanner.gif", "http://www.bbc.co.uk/" },
+        { "http://example.de/tpbanner.gif", "http://www.abc.de/" }
+      };
+      for (final String[] request : requests)
+      {
+        assertEquals(request[0] + " " + request[1],
+            filterEngine.matchResult(request[0], FilterEngine.ContentType.IMAGE, request[1]),
+            javaMatcher.matches(request[0], FilterEngine.ContentType.IMAGE, request[1]));
+      }
+      assertNull(javaMatcher.matches(requests[0][0], FilterEngine.ContentType.IMAGE, requests[0][1]));
+      assertNull(javaMatcher.matches(requests[2][0], FilterEngine.ContentType.IMAGE, requests[2][1]));
+      assertNotNull(javaMatcher.matches(requests[3][0], FilterEngine.ContentType.IMAGE, requests[3][1]));
+    }
+    finally
+    {
+      javaMatcher.dispose();
+    }
+  }
+
+  @Test
+  public void testRegExpWithAlternativesIsNotAnchored()
+  {
+    filterEngine.getFilter("/^https:\\/\\/x\\.com|banner/").addToList();
+
+    final JavaMatcher javaMatcher = new JavaMatcher(filterEngine);
+    try
+    {
+      assertEquals(FilterEngine.MatchDecision.BLOCK, javaMatcher.matchDecision(
+          "http://example.com/banner.png", FilterEngine.ContentType.IMAGE, ""));
+      assertEquals(FilterEngine.MatchDecision.BLOCK, javaMatcher.matchDecision(
+          "https://x.com/", FilterEngine.ContentType.IMAGE, ""));
+    }
+    finally
+    {
+      javaMatcher.dispose();
+    }
+  }
+}
@@ -18,6 +18,7 @@
 package org.adblockplus.libadblockplus.tests;
 
 import org.adblockplus.libadblockplus.AdblockPlusException;
+import org.adblockplus.libadblockplus.Disposer;
 import org.adblockplus.libadblockplus.EventCallback;
 import org.adblockplus.libadblockplus.JsValue;
 
@@ -130,4 +131,25 @@ public class JsEngineTest extends BaseJsTest
     jsEngine.evaluate("_triggerEvent('foobar')");
     assertFalse(callbackCalled);
   }
+
+  @Test
+  public void testCleanerReleasesCollectedValues() throws InterruptedException
+  {
+    long cleaned = Disposer.getCleanedCount();
+    for (int i = 0; i < 10000; i++)
+    {
+      jsEngine.newValue(i);
+    }
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (Disposer.getCleanedCount() - cleaned < 10000 && System.currentTimeMillis() < deadline)
+    {
+      System.gc();
+      Thread.sleep(50);
+    }
+    assertTrue(Disposer.getCleanedCount() - cleaned >= 10000);
+    // collected values pile up and are drained together
+    assertTrue(Disposer.getMaxDrainDepth() > 1);
+    assertTrue(Disposer.getMaxDrainNanos() > 0);
+  }
 }
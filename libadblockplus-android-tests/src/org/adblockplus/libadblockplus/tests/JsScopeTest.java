@@ -0,0 +1,95 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.JsScope;
+import org.adblockplus.libadblockplus.JsValue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class JsScopeTest extends BaseJsTest
+{
+  @Test
+  public void testTracksValues()
+  {
+    JsValue outside = jsEngine.newValue(1);
+    JsScope scope = JsScope.open();
+    try
+    {
+      jsEngine.evaluate("var foo = {bar: 'baz', list: [1, 2]}");
+      JsValue foo = jsEngine.evaluate("foo");
+      assertEquals("baz", foo.getProperty("bar").asString());
+      List<JsValue> list = foo.getProperty("list").asList();
+      assertEquals(2, list.size());
+      // evaluate() twice, getProperty() twice and the list items
+      assertEquals(6, scope.size());
+
+      // disposed values are skipped on close
+      list.get(0).dispose();
+    }
+    finally
+    {
+      scope.close();
+    }
+    assertEquals(1, outside.asLong());
+    outside.dispose();
+
+    // closing twice does nothing
+    scope.close();
+  }
+
+  @Test
+  public void testNestedScopes()
+  {
+    JsScope outer = JsScope.open();
+    try
+    {
+      jsEngine.newValue("outer");
+      JsScope inner = JsScope.open();
+      try
+      {
+        jsEngine.newValue("inner");
+        jsEngine.newValue(true);
+        assertEquals(2, inner.size());
+
+        try
+        {
+          outer.close();
+          fail();
+        }
+        catch (IllegalStateException e)
+        {
+          // expected
+        }
+      }
+      finally
+      {
+        inner.close();
+      }
+      assertEquals(1, outer.size());
+      jsEngine.newValue(2);
+      assertEquals(2, outer.size());
+    }
+    finally
+    {
+      outer.close();
+    }
+  }
+}
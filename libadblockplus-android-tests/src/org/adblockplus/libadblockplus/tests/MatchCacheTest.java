@@ -0,0 +1,166 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.Filter;
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.MatchCache;
+import org.adblockplus.libadblockplus.MatchResult;
+import org.adblockplus.libadblockplus.MockFilterChangeCallback;
+
+import org.junit.Test;
+
+public class MatchCacheTest extends FilterEngineGenericTest
+{
+  protected MatchCache matchCache;
+
+  @Override
+  protected void setUp() throws Exception
+  {
+    super.setUp();
+
+    matchCache = new MatchCache(filterEngine, 2);
+  }
+
+  @Override
+  protected void tearDown() throws Exception
+  {
+    matchCache.dispose();
+    super.tearDown();
+  }
+
+  @Test
+  public void testHitsAndMisses()
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+
+    MatchResult match1 = matchCache.matches(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      "");
+    assertNotNull(match1);
+    assertEquals(Filter.Type.BLOCKING, match1.getType());
+    assertEquals(0, matchCache.getHitCount());
+    assertEquals(1, matchCache.getMissCount());
+
+    MatchResult match2 = matchCache.matches(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      "");
+    assertEquals(match1, match2);
+    assertEquals(1, matchCache.getHitCount());
+    assertEquals(1, matchCache.getMissCount());
+
+    assertNull(matchCache.matches(
+      "http://example.org/foobar.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, matchCache.matchDecision(
+      "http://example.org/foobar.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+    assertEquals(2, matchCache.getHitCount());
+    assertEquals(2, matchCache.getMissCount());
+  }
+
+  @Test
+  public void testEviction()
+  {
+    matchCache.matches("http://example.org/1.gif", FilterEngine.ContentType.IMAGE, "");
+    matchCache.matches("http://example.org/2.gif", FilterEngine.ContentType.IMAGE, "");
+    matchCache.matches("http://example.org/1.gif", FilterEngine.ContentType.IMAGE, "");
+    matchCache.matches("http://example.org/3.gif", FilterEngine.ContentType.IMAGE, "");
+    assertEquals(2, matchCache.size());
+    assertEquals(1, matchCache.getHitCount());
+
+    // 2.gif was least recently used
+    matchCache.matches("http://example.org/1.gif", FilterEngine.ContentType.IMAGE, "");
+    assertEquals(2, matchCache.getHitCount());
+    matchCache.matches("http://example.org/2.gif", FilterEngine.ContentType.IMAGE, "");
+    assertEquals(2, matchCache.getHitCount());
+  }
+
+  @Test
+  public void testInvalidationOnFilterChange()
+  {
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, matchCache.matchDecision(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+    assertEquals(1, matchCache.size());
+
+    Filter filter = filterEngine.getFilter("adbanner.gif");
+    filter.addToList();
+    assertEquals(0, matchCache.size());
+    assertEquals(FilterEngine.MatchDecision.BLOCK, matchCache.matchDecision(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+
+    filter.removeFromList();
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, matchCache.matchDecision(
+      "http://example.org/adbanner.gif",
+      FilterEngine.ContentType.IMAGE,
+      ""));
+  }
+
+  @Test
+  public void testForwardsFilterChanges()
+  {
+    matchCache.dispose();
+
+    MockFilterChangeCallback mockFilterChangeCallback = new MockFilterChangeCallback(0);
+    matchCache = new MatchCache(filterEngine, 2, mockFilterChangeCallback);
+
+    filterEngine.getFilter("foo").addToList();
+    assertEquals(1, mockFilterChangeCallback.getTimesCalled());
+
+    matchCache.dispose();
+    filterEngine.getFilter("foo").removeFromList();
+    assertEquals(1, mockFilterChangeCallback.getTimesCalled());
+  }
+
+  @Test
+  public void testSharesEngineWithOtherListeners()
+  {
+    MockFilterChangeCallback mockFilterChangeCallback = new MockFilterChangeCallback(0);
+    filterEngine.setFilterChangeCallback(mockFilterChangeCallback);
+    MatchCache otherCache = new MatchCache(filterEngine, 2);
+    try
+    {
+      matchCache.matches("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, "");
+      otherCache.matches("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, "");
+
+      filterEngine.getFilter("adbanner.gif").addToList();
+      assertEquals(0, matchCache.size());
+      assertEquals(0, otherCache.size());
+      assertEquals(1, mockFilterChangeCallback.getTimesCalled());
+
+      otherCache.dispose();
+      matchCache.matches("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE, "");
+      filterEngine.getFilter("adbanner.gif").removeFromList();
+      assertEquals(0, matchCache.size());
+      assertEquals(2, mockFilterChangeCallback.getTimesCalled());
+    }
+    finally
+    {
+      otherCache.dispose();
+      filterEngine.removeFilterChangeCallback();
+    }
+  }
+}
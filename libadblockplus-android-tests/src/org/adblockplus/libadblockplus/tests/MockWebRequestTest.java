@@ -24,6 +24,8 @@ import org.adblockplus.libadblockplus.WebRequest;
 
 import org.junit.Test;
 
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -49,10 +51,44 @@ public class MockWebRequestTest extends BaseJsTest
       result.setResponseStatus(123);
       result.setReponseHeaders(Arrays.asList(new HeaderEntry("Foo", "Bar")));
 
-      result.setResponse(
+      String response =
         url + "\n" + 
         headers.get(0).getKey() + "\n" +
-        headers.get(0).getValue());
+        headers.get(0).getValue();
+      if (url.endsWith("/bytes") || url.endsWith("/direct"))
+      {
+        byte[] bytes;
+        try
+        {
+          bytes = (response + "\n\u00fc\u20ac").getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+          throw new RuntimeException(e);
+        }
+
+        ByteBuffer buffer;
+        if (url.endsWith("/direct"))
+        {
+          buffer = ByteBuffer.allocateDirect(bytes.length + 2);
+          buffer.put((byte) 'x');
+          buffer.put(bytes);
+          buffer.flip();
+          buffer.position(1);
+        }
+        else
+        {
+          // an array-backed slice, skipping the first byte
+          byte[] padded = new byte[bytes.length + 1];
+          System.arraycopy(bytes, 0, padded, 1, bytes.length);
+          buffer = ByteBuffer.wrap(padded, 1, bytes.length).slice();
+        }
+        result.setResponseBytes(buffer);
+      }
+      else
+      {
+        result.setResponse(response);
+      }
       return result;
     }
   }
@@ -146,4 +182,35 @@ public class MockWebRequestTest extends BaseJsTest
       jsEngine.evaluate("JSON.stringify(foo.responseHeaders)").asString());
   }
 
+  @Test
+  public void testSuccessfulBytesRequest() throws InterruptedException
+  {
+    jsEngine.evaluate(
+      "_webRequest.GET('http://example.com/bytes', {X: 'Y'}, function(result) {foo = result;} )");
+    jsEngine.evaluate(
+      "_webRequest.GET('http://example.com/direct', {X: 'Y'}, function(result) {bar = result;} )");
+
+    Thread.sleep(200);
+
+    assertEquals("http://example.com/bytes\nX\nY\n\u00fc\u20ac",
+      jsEngine.evaluate("foo.responseText").asString());
+    assertEquals("http://example.com/direct\nX\nY\n\u00fc\u20ac",
+      jsEngine.evaluate("bar.responseText").asString());
+  }
+
+  @Test
+  public void testReadOnlyBytesRejected()
+  {
+    ServerResponse response = new ServerResponse();
+    try
+    {
+      response.setResponseBytes(ByteBuffer.wrap(new byte[] { 'x' }).asReadOnlyBuffer());
+      fail();
+    }
+    catch (IllegalArgumentException e)
+    {
+      // ignored
+    }
+    assertNull(response.getResponseBytes());
+  }
 }
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import org.adblockplus.libadblockplus.Disposer;
+import org.adblockplus.libadblockplus.JsValue;
+import org.adblockplus.libadblockplus.NativeHandles;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class NativeHandlesTest extends BaseJsTest
+{
+  @Override
+  protected void tearDown() throws Exception
+  {
+    Disposer.setLeakDetection(0);
+    super.tearDown();
+  }
+
+  private static int getLiveJsValues()
+  {
+    Integer count = Disposer.getLiveCounts().get(JsValue.class);
+    return count != null ? count : 0;
+  }
+
+  @Test
+  public void testLiveCounts()
+  {
+    int wrappers = getLiveJsValues();
+    long handles = NativeHandles.getLiveCount(NativeHandles.Kind.JS_VALUE);
+
+    JsValue value = jsEngine.newValue("foo");
+    assertEquals(wrappers + 1, getLiveJsValues());
+    assertEquals(handles + 1, NativeHandles.getLiveCount(NativeHandles.Kind.JS_VALUE));
+    assertTrue(NativeHandles.getLiveCounts().get(NativeHandles.Kind.JS_ENGINE) >= 1);
+
+    value.dispose();
+    assertEquals(wrappers, getLiveJsValues());
+    assertEquals(handles, NativeHandles.getLiveCount(NativeHandles.Kind.JS_VALUE));
+  }
+
+  private void leakValues()
+  {
+    for (int i = 0; i < 100; i++)
+    {
+      jsEngine.newValue(i);
+    }
+  }
+
+  @Test
+  public void testLeakDetection() throws InterruptedException
+  {
+    Disposer.setLeakDetection(1);
+    leakValues();
+
+    List<Disposer.LeakSite> sites = null;
+    long deadline = System.currentTimeMillis() + 10000;
+    while (System.currentTimeMillis() < deadline)
+    {
+      System.gc();
+      Thread.sleep(50);
+      sites = Disposer.getTopLeakSites(1);
+      if (!sites.isEmpty() && sites.get(0).getCount() == 100)
+      {
+        break;
+      }
+    }
+
+    assertEquals(1, sites.size());
+    assertEquals(100, sites.get(0).getCount());
+    boolean found = false;
+    for (StackTraceElement frame : sites.get(0).getFrames())
+    {
+      found |= frame.getMethodName().equals("leakValues");
+    }
+    assertTrue(found);
+  }
+}
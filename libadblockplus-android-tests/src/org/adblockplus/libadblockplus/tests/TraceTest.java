@@ -0,0 +1,95 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.adblockplus.libadblockplus.FilterEngine;
+import org.adblockplus.libadblockplus.Trace;
+import org.adblockplus.libadblockplus.TraceReader;
+import org.adblockplus.libadblockplus.TraceRecorder;
+
+import org.junit.Test;
+
+public class TraceTest extends FilterEngineGenericTest
+{
+  @Test
+  public void testRecordAndRead() throws IOException
+  {
+    filterEngine.getFilter("adbanner.gif").addToList();
+    filterEngine.getFilter("@@notbanner.gif").addToList();
+    filterEngine.getFilter("@@||example.com^$document").addToList();
+    filterEngine.getFilter("example.org##.ad").addToList();
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final TraceRecorder recorder = new TraceRecorder(filterEngine, out);
+    assertNotNull(recorder.matches("http://example.org/adbanner.gif", FilterEngine.ContentType.IMAGE,
+        "http://example.org/"));
+    assertNotNull(recorder.matches("http://example.org/notbanner.gif", FilterEngine.ContentType.IMAGE,
+        new String[] { "http://example.org/frame.html", "http://example.org/" }));
+    assertNull(recorder.matches("http://example.org/foobar.gif", FilterEngine.ContentType.IMAGE,
+        "http://example.org/"));
+    assertTrue(recorder.isDocumentWhitelisted("http://example.com/", new String[0]));
+    assertFalse(recorder.isElemhideWhitelisted("http://example.org/", new String[0]));
+    assertEquals(1, recorder.getElementHidingSelectors("example.org").size());
+    assertEquals(6, recorder.getEntryCount());
+    recorder.close();
+
+    final TraceReader reader = new TraceReader(new ByteArrayInputStream(out.toByteArray()));
+
+    Trace.Entry entry = reader.next();
+    assertEquals(Trace.Operation.MATCHES, entry.operation);
+    assertEquals("http://example.org/adbanner.gif", entry.url);
+    assertEquals(FilterEngine.ContentType.IMAGE, entry.contentType);
+    assertEquals(1, entry.documentUrls.length);
+    assertEquals("http://example.org/", entry.documentUrls[0]);
+    assertEquals(FilterEngine.MatchDecision.BLOCK, entry.getMatchDecision());
+
+    entry = reader.next();
+    assertEquals(Trace.Operation.MATCHES_DOCUMENT_CHAIN, entry.operation);
+    assertEquals(2, entry.documentUrls.length);
+    assertEquals("http://example.org/frame.html", entry.documentUrls[0]);
+    assertEquals("http://example.org/", entry.documentUrls[1]);
+    assertEquals(FilterEngine.MatchDecision.ALLOW, entry.getMatchDecision());
+
+    entry = reader.next();
+    assertEquals(Trace.Operation.MATCHES, entry.operation);
+    assertEquals("http://example.org/", entry.documentUrls[0]);
+    assertEquals(FilterEngine.MatchDecision.NO_MATCH, entry.getMatchDecision());
+
+    entry = reader.next();
+    assertEquals(Trace.Operation.IS_DOCUMENT_WHITELISTED, entry.operation);
+    assertEquals("http://example.com/", entry.url);
+    assertNull(entry.contentType);
+    assertEquals(1, entry.result);
+
+    entry = reader.next();
+    assertEquals(Trace.Operation.IS_ELEMHIDE_WHITELISTED, entry.operation);
+    assertEquals(0, entry.result);
+
+    entry = reader.next();
+    assertEquals(Trace.Operation.GET_ELEMENT_HIDING_SELECTORS, entry.operation);
+    assertEquals("example.org", entry.domain);
+    assertEquals(1, entry.result);
+
+    assertNull(reader.next());
+    reader.close();
+  }
+}
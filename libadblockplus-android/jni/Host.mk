@@ -0,0 +1,61 @@
+# Builds libadblockplus-jni and the library classes for a Linux x86_64 host
+# JVM, so the engine can be used and benchmarked without an Android device.
+#
+# Run from the 'libadblockplus-android' directory:
+#
+#   make -f jni/Host.mk [JAVA_HOME=/some/where/jdk] [ABP_LIB_DIR=/some/where/libs]
+#
+# ABP_LIB_DIR must contain host builds (-fPIC) of libadblockplus.a,
+# libv8_base.a and libv8_snapshot.a. Results are written to obj/host.
+
+JNI_DIR := $(patsubst %/,%,$(dir $(lastword $(MAKEFILE_LIST))))
+ROOT_DIR := $(JNI_DIR)/..
+OUT_DIR ?= $(ROOT_DIR)/obj/host
+
+ABP_BINARIES_DIR ?= $(JNI_DIR)/libadblockplus-binaries
+ABP_INCLUDE_DIR ?= $(ABP_BINARIES_DIR)/include
+ABP_LIB_DIR ?= $(ABP_BINARIES_DIR)/linux_x64
+
+JAVA_HOME ?= $(shell dirname $$(dirname $$(readlink -f $$(which javac))))
+JAVAC ?= $(JAVA_HOME)/bin/javac
+JAR ?= $(JAVA_HOME)/bin/jar
+
+CXXFLAGS += -std=c++11 -fPIC -fexceptions -O2
+CXXFLAGS += -I$(ABP_INCLUDE_DIR) -I$(JAVA_HOME)/include -I$(JAVA_HOME)/include/linux
+LDFLAGS += -shared -Wl,--no-undefined
+LDLIBS += $(ABP_LIB_DIR)/libadblockplus.a $(ABP_LIB_DIR)/libv8_base.a $(ABP_LIB_DIR)/libv8_snapshot.a
+LDLIBS += -lpthread -ldl -lrt
+
+NATIVE_SOURCES := $(wildcard $(JNI_DIR)/*.cpp)
+NATIVE_OBJECTS := $(patsubst $(JNI_DIR)/%.cpp,$(OUT_DIR)/jni/%.o,$(NATIVE_SOURCES))
+NATIVE_LIBRARY := $(OUT_DIR)/libadblockplus-jni.so
+
+# Android-only classes are left out, everything else runs on a plain JDK
+JAVA_EXCLUDES := %/org/adblockplus/android/Utils.java %/org/adblockplus/android/AndroidLogWriter.java
+JAVA_SOURCES := $(filter-out $(JAVA_EXCLUDES),$(shell find $(ROOT_DIR)/src -name '*.java'))
+CLASSES_DIR := $(OUT_DIR)/classes
+HOST_JAR := $(OUT_DIR)/libadblockplus-host.jar
+
+.PHONY: all native java clean
+
+all: native java
+
+native: $(NATIVE_LIBRARY)
+
+java: $(HOST_JAR)
+
+$(OUT_DIR)/jni/%.o: $(JNI_DIR)/%.cpp $(wildcard $(JNI_DIR)/*.h)
+	@mkdir -p $(dir $@)
+	$(CXX) $(CXXFLAGS) -c $< -o $@
+
+$(NATIVE_LIBRARY): $(NATIVE_OBJECTS)
+	$(CXX) $(LDFLAGS) -o $@ $^ $(LDLIBS)
+
+$(HOST_JAR): $(JAVA_SOURCES)
+	@rm -rf $(CLASSES_DIR)
+	@mkdir -p $(CLASSES_DIR)
+	$(JAVAC) -encoding UTF-8 -d $(CLASSES_DIR) $^
+	$(JAR) cf $@ -C $(CLASSES_DIR) .
+
+clean:
+	rm -rf $(OUT_DIR)
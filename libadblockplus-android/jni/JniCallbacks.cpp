@@ -22,6 +22,8 @@ JniCallbackBase::JniCallbackBase(JNIEnv* env, jobject callbackObject)
     exceptionLoggerClass(new JniGlobalReference<jclass>(env, env->FindClass(PKG("JniExceptionHandler"))))
 {
   env->GetJavaVM(&javaVM);
+  logExceptionMethod = env->GetStaticMethodID(exceptionLoggerClass->Get(),
+      "logException", "(Ljava/lang/Throwable;)V");
 }
 
 JniCallbackBase::~JniCallbackBase()
@@ -29,12 +31,21 @@ JniCallbackBase::~JniCallbackBase()
 
 }
 
+jmethodID JniCallbackBase::GetCallbackMethodID(JNIEnv* env, const char* name,
+    const char* signature) const
+{
+  // resolved once on the constructing (Java) thread, the callback object
+  // keeps its class loaded so the ID stays valid
+  return env->GetMethodID(
+      *JniLocalReference<jclass>(env, env->GetObjectClass(GetCallbackObject())),
+      name, signature);
+}
+
 void JniCallbackBase::LogException(JNIEnv* env, jthrowable throwable) const
 {
-  jmethodID logMethod = env->GetStaticMethodID(exceptionLoggerClass->Get(), "logException", "(Ljava/lang/Throwable;)V");
-  if (logMethod)
+  if (logExceptionMethod)
   {
-    env->CallStaticVoidMethod(exceptionLoggerClass->Get(), logMethod, throwable);
+    env->CallStaticVoidMethod(exceptionLoggerClass->Get(), logExceptionMethod, throwable);
   }
 }
 
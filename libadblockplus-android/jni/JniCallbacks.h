@@ -40,10 +40,15 @@ public:
     return callbackObject->Get();
   }
 
+protected:
+  jmethodID GetCallbackMethodID(JNIEnv* env, const char* name,
+      const char* signature) const;
+
 private:
   JavaVM* javaVM;
   const JniGlobalReference<jobject>::Ptr callbackObject;
   const JniGlobalReference<jclass>::Ptr exceptionLoggerClass;
+  jmethodID logExceptionMethod;
 };
 
 class JniEventCallback : public JniCallbackBase
@@ -51,6 +56,9 @@ class JniEventCallback : public JniCallbackBase
 public:
   JniEventCallback(JNIEnv* env, jobject callbackObject);
   void Callback(AdblockPlus::JsValueList& params);
+
+private:
+  jmethodID callbackMethod;
 };
 
 class JniUpdateAvailableCallback : public JniCallbackBase
@@ -58,6 +66,9 @@ class JniUpdateAvailableCallback : public JniCallbackBase
 public:
   JniUpdateAvailableCallback(JNIEnv* env, jobject callbackObject);
   void Callback(const std::string& arg);
+
+private:
+  jmethodID callbackMethod;
 };
 
 class JniUpdateCheckDoneCallback : public JniCallbackBase
@@ -65,6 +76,9 @@ class JniUpdateCheckDoneCallback : public JniCallbackBase
 public:
   JniUpdateCheckDoneCallback(JNIEnv* env, jobject callbackObject);
   void Callback(const std::string& arg);
+
+private:
+  jmethodID callbackMethod;
 };
 
 class JniFilterChangeCallback : public JniCallbackBase
@@ -75,6 +89,7 @@ public:
 
 private:
   const JniGlobalReference<jclass>::Ptr jsValueClass;
+  jmethodID callbackMethod;
 };
 
 class JniLogSystemCallback : public JniCallbackBase, public AdblockPlus::LogSystem
@@ -84,7 +99,11 @@ public:
   void operator()(AdblockPlus::LogSystem::LogLevel logLevel, const std::string& message, const std::string& source);
 
 private:
+  jobject GetLogLevel(AdblockPlus::LogSystem::LogLevel logLevel) const;
+
   const JniGlobalReference<jclass>::Ptr logLevelClass;
+  jmethodID callbackMethod;
+  JniGlobalReference<jobject>::Ptr logLevels[AdblockPlus::LogSystem::LOG_LEVEL_ERROR + 1];
 };
 
 class JniShowNotificationCallback : public JniCallbackBase
@@ -95,6 +114,7 @@ public:
 
 private:
   const JniGlobalReference<jclass>::Ptr notificationClass;
+  jmethodID callbackMethod;
 };
 
 class JniWebRequest : public JniCallbackBase, public AdblockPlus::WebRequest
@@ -108,6 +128,13 @@ private:
 
   const JniGlobalReference<jclass>::Ptr tupleClass;
   const JniGlobalReference<jclass>::Ptr serverResponseClass;
+  jmethodID callbackMethod;
+  jmethodID tupleCtor;
+  jfieldID statusField;
+  jfieldID responseStatusField;
+  jfieldID responseField;
+  jfieldID responseBytesField;
+  jfieldID headersField;
 };
 
 #endif /* JNICALLBACKS_H */
@@ -21,34 +21,31 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
 {
   try
   {
-    return JniPtrToLong(new JniEventCallback(env, callbackObject));
+    return JniNewHandle(JNI_HANDLE_CALLBACK, new JniEventCallback(env, callbackObject));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<JniEventCallback>(ptr);
+  JniDeleteHandle<JniEventCallback>(JNI_HANDLE_CALLBACK, ptr);
 }
 
 JniEventCallback::JniEventCallback(JNIEnv* env, jobject callbackObject)
   : JniCallbackBase(env, callbackObject)
 {
+  callbackMethod = GetCallbackMethodID(env, "eventCallback",
+      "(Ljava/util/List;)V");
 }
 
 void JniEventCallback::Callback(AdblockPlus::JsValueList& params)
 {
   JNIEnvAcquire env(GetJavaVM());
 
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "eventCallback", "(Ljava/util/List;)V");
-
-  if (method)
+  if (callbackMethod)
   {
     jobject jsList = JniJsValueListToArrayList(*env, params);
-    env->CallVoidMethod(GetCallbackObject(), method, jsList);
+    env->CallVoidMethod(GetCallbackObject(), callbackMethod, jsList);
   }
 }
 
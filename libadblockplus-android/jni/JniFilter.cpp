@@ -19,6 +19,22 @@
 #include "Utils.h"
 #include "JniJsValue.h"
 
+// Filter.Type values indexed by ordinal, precached in registerNatives and
+// released in JNI_OnUnload
+static jobject filterTypes[6];
+
+void JniFilter_OnUnload(JavaVM* vm, JNIEnv* env, void* reserved)
+{
+  for (size_t i = 0; i < sizeof(filterTypes) / sizeof(filterTypes[0]); i++)
+  {
+    if (filterTypes[i])
+    {
+      env->DeleteGlobalRef(filterTypes[i]);
+      filterTypes[i] = 0;
+    }
+  }
+}
+
 static AdblockPlus::Filter* GetFilterPtr(jlong ptr)
 {
   return JniLongToTypePtr<AdblockPlus::FilterPtr>(ptr)->get();
@@ -28,7 +44,7 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong jsValue)
 {
   try
   {
-    return JniPtrToLong(new AdblockPlus::FilterPtr(new AdblockPlus::Filter(JniGetJsValuePtr(jsValue))));
+    return JniNewHandle(JNI_HANDLE_JS_VALUE, new AdblockPlus::FilterPtr(new AdblockPlus::Filter(JniGetJsValuePtr(jsValue))));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
@@ -42,34 +58,7 @@ static jobject JNICALL JniGetType(JNIEnv* env, jclass clazz, jlong ptr)
   }
   CATCH_THROW_AND_RETURN(env, 0)
 
-  const char* enumName = 0;
-
-  switch (type)
-  {
-  case AdblockPlus::Filter::TYPE_BLOCKING:
-    enumName = "BLOCKING";
-    break;
-  case AdblockPlus::Filter::TYPE_COMMENT:
-    enumName = "COMMENT";
-    break;
-  case AdblockPlus::Filter::TYPE_ELEMHIDE:
-    enumName = "ELEMHIDE";
-    break;
-  case AdblockPlus::Filter::TYPE_ELEMHIDE_EXCEPTION:
-    enumName = "ELEMHIDE_EXCEPTION";
-    break;
-  case AdblockPlus::Filter::TYPE_EXCEPTION:
-    enumName = "EXCEPTION";
-    break;
-  default:
-    enumName = "INVALID";
-    break;
-  }
-
-  JniLocalReference<jclass> enumClass(env, env->FindClass(PKG("Filter$Type")));
-  jfieldID enumField = env->GetStaticFieldID(*enumClass, enumName,
-      TYP("Filter$Type"));
-  return env->GetStaticObjectField(*enumClass, enumField);
+  return env->NewLocalRef(filterTypes[JniFilterTypeToOrdinal(type)]);
 }
 
 static jboolean JNICALL JniIsListed(JNIEnv* env, jclass clazz, jlong ptr)
@@ -123,5 +112,23 @@ static JNINativeMethod methods[] =
 
 extern "C" JNIEXPORT void JNICALL Java_org_adblockplus_libadblockplus_Filter_registerNatives(JNIEnv *env, jclass clazz)
 {
+  JniLocalReference<jclass> typeClass(env, env->FindClass(PKG("Filter$Type")));
+  jmethodID valuesMethod = env->GetStaticMethodID(*typeClass, "values",
+      "()[" TYP("Filter$Type"));
+  JniLocalReference<jobjectArray> values(env, static_cast<jobjectArray>(
+      env->CallStaticObjectMethod(*typeClass, valuesMethod)));
+
+  jsize count = std::min<jsize>(env->GetArrayLength(*values),
+      sizeof(filterTypes) / sizeof(filterTypes[0]));
+  for (jsize i = 0; i < count; i++)
+  {
+    if (filterTypes[i])
+    {
+      env->DeleteGlobalRef(filterTypes[i]);
+    }
+    filterTypes[i] = env->NewGlobalRef(
+        *JniLocalReference<jobject>(env, env->GetObjectArrayElement(*values, i)));
+  }
+
   env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
 }
@@ -21,14 +21,14 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
 {
   try
   {
-    return JniPtrToLong(new JniFilterChangeCallback(env, callbackObject));
+    return JniNewHandle(JNI_HANDLE_CALLBACK, new JniFilterChangeCallback(env, callbackObject));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<JniFilterChangeCallback>(ptr);
+  JniDeleteHandle<JniFilterChangeCallback>(JNI_HANDLE_CALLBACK, ptr);
 }
 
 JniFilterChangeCallback::JniFilterChangeCallback(JNIEnv* env,
@@ -36,6 +36,8 @@ JniFilterChangeCallback::JniFilterChangeCallback(JNIEnv* env,
     : JniCallbackBase(env, callbackObject), jsValueClass(
         new JniGlobalReference<jclass>(env, env->FindClass(PKG("JsValue"))))
 {
+  callbackMethod = GetCallbackMethodID(env, "filterChangeCallback",
+      "(Ljava/lang/String;" TYP("JsValue") ")V");
 }
 
 void JniFilterChangeCallback::Callback(const std::string& arg,
@@ -43,17 +45,12 @@ void JniFilterChangeCallback::Callback(const std::string& arg,
 {
   JNIEnvAcquire env(GetJavaVM());
 
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "filterChangeCallback", "(Ljava/lang/String;" TYP("JsValue") ")V");
-
-  if (method)
+  if (callbackMethod)
   {
     JniLocalReference<jstring> jArg(*env, env->NewStringUTF(arg.c_str()));
     JniLocalReference<jobject> jJsValue(*env,
         NewJniJsValue(*env, jsValue, jsValueClass->Get()));
-    env->CallVoidMethod(GetCallbackObject(), method, *jArg, *jJsValue);
+    env->CallVoidMethod(GetCallbackObject(), callbackMethod, *jArg, *jJsValue);
   }
 
   CheckAndLogJavaException(*env);
@@ -31,17 +31,57 @@ static jobject SubscriptionsToArrayList(JNIEnv* env, std::vector<AdblockPlus::Su
   return list;
 }
 
-static AdblockPlus::FilterEngine::ContentType ConvertContentType(JNIEnv *env,
-    jobject jContentType)
+// indexed by FilterEngine.ContentType ordinals, keep in sync with FilterEngine.java
+static const AdblockPlus::FilterEngine::ContentType contentTypes[] =
 {
-  JniLocalReference<jclass> contentTypeClass(env,
-      env->GetObjectClass(jContentType));
-  jmethodID nameMethod = env->GetMethodID(*contentTypeClass, "name",
-      "()Ljava/lang/String;");
-  JniLocalReference<jstring> jValue(env,
-      (jstring) env->CallObjectMethod(jContentType, nameMethod));
-  const std::string value = JniJavaToStdString(env, *jValue);
-  return AdblockPlus::FilterEngine::StringToContentType(value);
+  AdblockPlus::FilterEngine::CONTENT_TYPE_OTHER,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_SCRIPT,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_IMAGE,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_STYLESHEET,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_OBJECT,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_SUBDOCUMENT,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_DOCUMENT,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_XMLHTTPREQUEST,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_OBJECT_SUBREQUEST,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_FONT,
+  AdblockPlus::FilterEngine::CONTENT_TYPE_MEDIA
+};
+
+static AdblockPlus::FilterEngine::ContentType ConvertContentType(jint jContentType)
+{
+  if (jContentType < 0 ||
+      jContentType >= (jint)(sizeof(contentTypes) / sizeof(contentTypes[0])))
+  {
+    return AdblockPlus::FilterEngine::CONTENT_TYPE_OTHER;
+  }
+
+  return contentTypes[jContentType];
+}
+
+// ordinals of FilterEngine.MatchDecision
+enum MatchDecision
+{
+  MATCH_DECISION_NO_MATCH = 0,
+  MATCH_DECISION_BLOCK = 1,
+  MATCH_DECISION_ALLOW = 2
+};
+
+static jint FilterToMatchDecision(const AdblockPlus::FilterPtr& filter)
+{
+  if (filter)
+  {
+    switch (filter->GetType())
+    {
+    case AdblockPlus::Filter::TYPE_BLOCKING:
+      return MATCH_DECISION_BLOCK;
+    case AdblockPlus::Filter::TYPE_EXCEPTION:
+      return MATCH_DECISION_ALLOW;
+    default:
+      break;
+    }
+  }
+
+  return MATCH_DECISION_NO_MATCH;
 }
 
 static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong enginePtr)
@@ -49,14 +89,14 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong enginePtr)
   try
   {
     AdblockPlus::JsEnginePtr& jsEngine = *JniLongToTypePtr<AdblockPlus::JsEnginePtr>(enginePtr);
-    return JniPtrToLong(new AdblockPlus::FilterEngine(jsEngine));
+    return JniNewHandle(JNI_HANDLE_FILTER_ENGINE, new AdblockPlus::FilterEngine(jsEngine));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+  JniDeleteHandle<AdblockPlus::FilterEngine>(JNI_HANDLE_FILTER_ENGINE, ptr);
 }
 
 static jboolean JNICALL JniIsFirstRun(JNIEnv* env, jclass clazz, jlong ptr)
@@ -293,13 +333,90 @@ static jobject JNICALL JniGetElementHidingSelectors(JNIEnv* env, jclass clazz,
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
-static jobject JNICALL JniMatches(JNIEnv* env, jclass clazz, jlong ptr, jstring jUrl, jobject jContentType, jstring jDocumentUrl)
+// one "a, b, c {display: none !important;}" rule per group of selectors
+static std::string JoinElementHidingStyleSheet(const std::vector<std::string>& selectors,
+    size_t groupSize)
+{
+  static const std::string ruleEnd = " {display: none !important;}\n";
+
+  size_t length = ((selectors.size() + groupSize - 1) / groupSize) * ruleEnd.size();
+  for (std::vector<std::string>::const_iterator it = selectors.begin(), end =
+      selectors.end(); it != end; it++)
+  {
+    length += it->size() + 2;
+  }
+
+  std::string styleSheet;
+  styleSheet.reserve(length);
+
+  size_t inGroup = 0;
+  for (std::vector<std::string>::const_iterator it = selectors.begin(), end =
+      selectors.end(); it != end; it++)
+  {
+    if (inGroup > 0)
+    {
+      styleSheet.append(", ");
+    }
+    styleSheet.append(*it);
+
+    if (++inGroup == groupSize)
+    {
+      styleSheet.append(ruleEnd);
+      inGroup = 0;
+    }
+  }
+
+  if (inGroup > 0)
+  {
+    styleSheet.append(ruleEnd);
+  }
+
+  return styleSheet;
+}
+
+static jstring JNICALL JniGetElementHidingStyleSheet(JNIEnv* env, jclass clazz,
+    jlong ptr, jstring jDomain, jint jGroupSize)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  std::string domain = JniJavaToStdString(env, jDomain);
+
+  try
+  {
+    std::string styleSheet = JoinElementHidingStyleSheet(
+        engine->GetElementHidingSelectors(domain), jGroupSize);
+
+    return env->NewStringUTF(styleSheet.c_str());
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jobject JNICALL JniGetElementHidingStyleSheetBuffer(JNIEnv* env, jclass clazz,
+    jlong ptr, jstring jDomain, jint jGroupSize)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  std::string domain = JniJavaToStdString(env, jDomain);
+
+  try
+  {
+    std::string styleSheet = JoinElementHidingStyleSheet(
+        engine->GetElementHidingSelectors(domain), jGroupSize);
+
+    return NewJniDirectByteBuffer(env, styleSheet);
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jobject JNICALL JniMatches(JNIEnv* env, jclass clazz, jlong ptr, jstring jUrl, jint jContentType, jstring jDocumentUrl)
 {
   AdblockPlus::FilterEngine* engine = JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
 
   std::string url = JniJavaToStdString(env, jUrl);
   AdblockPlus::FilterEngine::ContentType contentType =
-      ConvertContentType(env, jContentType);
+      ConvertContentType(jContentType);
   std::string documentUrl = JniJavaToStdString(env, jDocumentUrl);
 
   try
@@ -330,14 +447,14 @@ static void JavaStringArrayToStringVector(JNIEnv* env, jobjectArray jArray,
 }
 
 static jobject JNICALL JniMatchesMany(JNIEnv* env, jclass clazz, jlong ptr,
-    jstring jUrl, jobject jContentType, jobjectArray jDocumentUrls)
+    jstring jUrl, jint jContentType, jobjectArray jDocumentUrls)
 {
   AdblockPlus::FilterEngine* engine =
       JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
 
   std::string url = JniJavaToStdString(env, jUrl);
   AdblockPlus::FilterEngine::ContentType contentType =
-      ConvertContentType(env, jContentType);
+      ConvertContentType(jContentType);
 
   std::vector<std::string> documentUrls;
   JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
@@ -352,6 +469,143 @@ static jobject JNICALL JniMatchesMany(JNIEnv* env, jclass clazz, jlong ptr,
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
+static jint JNICALL JniMatchDecision(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jint jContentType, jstring jDocumentUrl)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  std::string url = JniJavaToStdString(env, jUrl);
+  AdblockPlus::FilterEngine::ContentType contentType =
+      ConvertContentType(jContentType);
+  std::string documentUrl = JniJavaToStdString(env, jDocumentUrl);
+
+  try
+  {
+    return FilterToMatchDecision(
+        engine->Matches(url, contentType, documentUrl));
+  }
+  CATCH_THROW_AND_RETURN(env, MATCH_DECISION_NO_MATCH)
+}
+
+static jint JNICALL JniMatchDecisionMany(JNIEnv* env, jclass clazz,
+    jlong ptr, jstring jUrl, jint jContentType, jobjectArray jDocumentUrls)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  std::string url = JniJavaToStdString(env, jUrl);
+  AdblockPlus::FilterEngine::ContentType contentType =
+      ConvertContentType(jContentType);
+
+  std::vector<std::string> documentUrls;
+  JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
+
+  try
+  {
+    return FilterToMatchDecision(
+        engine->Matches(url, contentType, documentUrls));
+  }
+  CATCH_THROW_AND_RETURN(env, MATCH_DECISION_NO_MATCH)
+}
+
+static jobject JNICALL JniMatchResult(JNIEnv* env, jclass clazz, jlong ptr,
+    jstring jUrl, jint jContentType, jstring jDocumentUrl)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  std::string url = JniJavaToStdString(env, jUrl);
+  AdblockPlus::FilterEngine::ContentType contentType =
+      ConvertContentType(jContentType);
+  std::string documentUrl = JniJavaToStdString(env, jDocumentUrl);
+
+  try
+  {
+    AdblockPlus::FilterPtr filter = engine->Matches(url, contentType,
+        documentUrl);
+
+    return NewJniMatchResult(env, filter);
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jobject JNICALL JniMatchResultMany(JNIEnv* env, jclass clazz,
+    jlong ptr, jstring jUrl, jint jContentType, jobjectArray jDocumentUrls)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  std::string url = JniJavaToStdString(env, jUrl);
+  AdblockPlus::FilterEngine::ContentType contentType =
+      ConvertContentType(jContentType);
+
+  std::vector<std::string> documentUrls;
+  JavaStringArrayToStringVector(env, jDocumentUrls, documentUrls);
+
+  try
+  {
+    AdblockPlus::FilterPtr filter = engine->Matches(url, contentType,
+        documentUrls);
+
+    return NewJniMatchResult(env, filter);
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
+static jobjectArray JNICALL JniMatchesBatch(JNIEnv* env, jclass clazz,
+    jlong ptr, jobjectArray jUrls, jintArray jContentTypes,
+    jobjectArray jDocumentUrls)
+{
+  AdblockPlus::FilterEngine* engine =
+      JniLongToTypePtr<AdblockPlus::FilterEngine>(ptr);
+
+  jsize count = env->GetArrayLength(jUrls);
+
+  std::vector<jint> jContentTypeOrdinals(count);
+  if (count > 0)
+  {
+    env->GetIntArrayRegion(jContentTypes, 0, count, &jContentTypeOrdinals[0]);
+  }
+
+  try
+  {
+    jobjectArray jFilters = NewJniFilterArray(env, count);
+    std::vector<std::string> documentUrls;
+
+    for (jsize i = 0; i < count; i++)
+    {
+      std::string url = JniJavaToStdString(env,
+          *JniLocalReference<jstring>(env,
+              static_cast<jstring>(env->GetObjectArrayElement(jUrls, i))));
+      AdblockPlus::FilterEngine::ContentType contentType =
+          ConvertContentType(jContentTypeOrdinals[i]);
+
+      documentUrls.clear();
+      if (jDocumentUrls)
+      {
+        JavaStringArrayToStringVector(env,
+            *JniLocalReference<jobjectArray>(env,
+                static_cast<jobjectArray>(
+                    env->GetObjectArrayElement(jDocumentUrls, i))),
+            documentUrls);
+      }
+
+      AdblockPlus::FilterPtr filter = engine->Matches(url, contentType,
+          documentUrls);
+
+      if (filter)
+      {
+        env->SetObjectArrayElement(jFilters, i,
+            *JniLocalReference<jobject>(env, NewJniFilter(env, filter)));
+      }
+    }
+
+    return jFilters;
+  }
+  CATCH_THROW_AND_RETURN(env, 0)
+}
+
 static jboolean JNICALL JniIsDocumentWhitelisted(JNIEnv* env, jclass clazz, jlong ptr,
     jstring jUrl, jobjectArray jDocumentUrls)
 {
@@ -433,8 +687,15 @@ static JNINativeMethod methods[] =
   { (char*)"removeFilterChangeCallback", (char*)"(J)V", (void*)JniRemoveFilterChangeCallback },
   { (char*)"forceUpdateCheck", (char*)"(JJ)V", (void*)JniForceUpdateCheck },
   { (char*)"getElementHidingSelectors", (char*)"(JLjava/lang/String;)Ljava/util/List;", (void*)JniGetElementHidingSelectors },
-  { (char*)"matches", (char*)"(JLjava/lang/String;" TYP("FilterEngine$ContentType") "Ljava/lang/String;)" TYP("Filter"), (void*)JniMatches },
-  { (char*)"matches", (char*)"(JLjava/lang/String;" TYP("FilterEngine$ContentType") "[Ljava/lang/String;)" TYP("Filter"), (void*)JniMatchesMany },
+  { (char*)"getElementHidingStyleSheet", (char*)"(JLjava/lang/String;I)Ljava/lang/String;", (void*)JniGetElementHidingStyleSheet },
+  { (char*)"getElementHidingStyleSheetBuffer", (char*)"(JLjava/lang/String;I)Ljava/nio/ByteBuffer;", (void*)JniGetElementHidingStyleSheetBuffer },
+  { (char*)"matches", (char*)"(JLjava/lang/String;ILjava/lang/String;)" TYP("Filter"), (void*)JniMatches },
+  { (char*)"matches", (char*)"(JLjava/lang/String;I[Ljava/lang/String;)" TYP("Filter"), (void*)JniMatchesMany },
+  { (char*)"matchDecision", (char*)"(JLjava/lang/String;ILjava/lang/String;)I", (void*)JniMatchDecision },
+  { (char*)"matchDecision", (char*)"(JLjava/lang/String;I[Ljava/lang/String;)I", (void*)JniMatchDecisionMany },
+  { (char*)"matchResult", (char*)"(JLjava/lang/String;ILjava/lang/String;)" TYP("MatchResult"), (void*)JniMatchResult },
+  { (char*)"matchResult", (char*)"(JLjava/lang/String;I[Ljava/lang/String;)" TYP("MatchResult"), (void*)JniMatchResultMany },
+  { (char*)"matchesBatch", (char*)"(J[Ljava/lang/String;[I[[Ljava/lang/String;)[" TYP("Filter"), (void*)JniMatchesBatch },
   { (char*)"isDocumentWhitelisted", (char*)"(JLjava/lang/String;[Ljava/lang/String;)Z", (void*)JniIsDocumentWhitelisted },
   { (char*)"isElemhideWhitelisted", (char*)"(JLjava/lang/String;[Ljava/lang/String;)Z", (void*)JniIsElemhideWhitelisted },
   { (char*)"getPref", (char*)"(JLjava/lang/String;)" TYP("JsValue"), (void*)JniGetPref },
@@ -40,14 +40,14 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject jAppInfo)
 
   try
   {
-    return JniPtrToLong(new AdblockPlus::JsEnginePtr(AdblockPlus::JsEngine::New(appInfo)));
+    return JniNewHandle(JNI_HANDLE_JS_ENGINE, new AdblockPlus::JsEnginePtr(AdblockPlus::JsEngine::New(appInfo)));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<AdblockPlus::JsEnginePtr>(ptr);
+  JniDeleteHandle<AdblockPlus::JsEnginePtr>(JNI_HANDLE_JS_ENGINE, ptr);
 }
 
 static void JNICALL JniSetEventCallback(JNIEnv* env, jclass clazz, jlong ptr, jstring jEventName, jlong jCallbackPtr)
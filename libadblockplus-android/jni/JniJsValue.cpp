@@ -161,7 +161,24 @@ static jobject JNICALL JniGetProperty(JNIEnv* env, jclass clazz, jlong ptr, jstr
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<AdblockPlus::JsValuePtr>(ptr);
+  JniDeleteHandle<AdblockPlus::JsValuePtr>(JNI_HANDLE_JS_VALUE, ptr);
+}
+
+static void JNICALL JniDtorBatch(JNIEnv* env, jclass clazz, jlongArray ptrs, jint count)
+{
+  jlong* elements = env->GetLongArrayElements(ptrs, 0);
+  if (!elements)
+  {
+    return;
+  }
+
+  for (jint i = 0; i < count; i++)
+  {
+    delete JniLongToTypePtr<AdblockPlus::JsValuePtr>(elements[i]);
+  }
+  JniHandlesDeleted(JNI_HANDLE_JS_VALUE, count);
+
+  env->ReleaseLongArrayElements(ptrs, elements, JNI_ABORT);
 }
 
 jobject NewJniJsValue(JNIEnv* env, const AdblockPlus::JsValuePtr& jsValue, jclass jsValueClass)
@@ -171,8 +188,14 @@ jobject NewJniJsValue(JNIEnv* env, const AdblockPlus::JsValuePtr& jsValue, jclas
     return 0;
   }
 
-  jlong ptr = JniPtrToLong(new AdblockPlus::JsValuePtr(jsValue));
-  return env->NewObject(globalJsValueClass, jsValueClassCtor, ptr);
+  jlong ptr = JniNewHandle(JNI_HANDLE_JS_VALUE, new AdblockPlus::JsValuePtr(jsValue));
+  jobject object = env->NewObject(globalJsValueClass, jsValueClassCtor, ptr);
+  if (!object)
+  {
+    // no wrapper owns the copy, an exception is pending
+    JniDeleteHandle<AdblockPlus::JsValuePtr>(JNI_HANDLE_JS_VALUE, ptr);
+  }
+  return object;
 }
 
 AdblockPlus::JsValue* JniGetJsValue(jlong ptr)
@@ -224,7 +247,8 @@ static JNINativeMethod methods[] =
   { (char*)"asBoolean", (char*)"(J)Z", (void*)JniAsBoolean },
   { (char*)"asList", (char*)"(J)Ljava/util/List;", (void*)JniAsList },
   { (char*)"getProperty", (char*)"(JLjava/lang/String;)" TYP("JsValue"), (void*)JniGetProperty },
-  { (char*)"dtor", (char*)"(J)V", (void*)JniDtor }
+  { (char*)"dtor", (char*)"(J)V", (void*)JniDtor },
+  { (char*)"dtorBatch", (char*)"([JI)V", (void*)JniDtorBatch }
 };
 
 extern "C" JNIEXPORT void JNICALL Java_org_adblockplus_libadblockplus_JsValue_registerNatives(JNIEnv *env, jclass clazz)
@@ -26,6 +26,7 @@ jint JNI_OnLoad(JavaVM* vm, void* reserved)
     return JNI_ERR;
   }
 
+  JniUtils_OnLoad(vm, env, reserved);
   JniJsValue_OnLoad(vm, env, reserved);
 
   return ABP_JNI_VERSION;
@@ -39,5 +40,7 @@ void JNI_OnUnload(JavaVM* vm, void* reserved)
     return;
   }
 
+  JniFilter_OnUnload(vm, env, reserved);
   JniJsValue_OnUnload(vm, env, reserved);
+  JniUtils_OnUnload(vm, env, reserved);
 }
\ No newline at end of file
@@ -21,19 +21,52 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
 {
   try
   {
-    return JniPtrToLong(new JniLogSystemCallback(env, callbackObject));
+    return JniNewHandle(JNI_HANDLE_LOG_SYSTEM, new JniLogSystemCallback(env, callbackObject));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<JniLogSystemCallback>(ptr);
+  JniDeleteHandle<JniLogSystemCallback>(JNI_HANDLE_LOG_SYSTEM, ptr);
 }
 
 JniLogSystemCallback::JniLogSystemCallback(JNIEnv* env, jobject callbackObject)
   : JniCallbackBase(env, callbackObject), AdblockPlus::LogSystem(), logLevelClass(new JniGlobalReference<jclass>(env, env->FindClass(PKG("LogSystem$LogLevel"))))
 {
+  callbackMethod = GetCallbackMethodID(env, "logCallback",
+      "(" TYP("LogSystem$LogLevel") "Ljava/lang/String;Ljava/lang/String;)V");
+
+  static const char* enumNames[] =
+  {
+    "TRACE", "LOG", "INFO", "WARN", "ERROR"
+  };
+
+  jclass enumClass = logLevelClass->Get();
+  if (enumClass)
+  {
+    for (int i = AdblockPlus::LogSystem::LOG_LEVEL_TRACE;
+        i <= AdblockPlus::LogSystem::LOG_LEVEL_ERROR; i++)
+    {
+      jfieldID enumField = env->GetStaticFieldID(enumClass, enumNames[i],
+          TYP("LogSystem$LogLevel"));
+      JniLocalReference<jobject> jLogLevel(env,
+          env->GetStaticObjectField(enumClass, enumField));
+      logLevels[i].reset(new JniGlobalReference<jobject>(env, *jLogLevel));
+    }
+  }
+}
+
+jobject JniLogSystemCallback::GetLogLevel(
+    AdblockPlus::LogSystem::LogLevel logLevel) const
+{
+  if (logLevel < AdblockPlus::LogSystem::LOG_LEVEL_TRACE ||
+      logLevel > AdblockPlus::LogSystem::LOG_LEVEL_ERROR)
+  {
+    logLevel = AdblockPlus::LogSystem::LOG_LEVEL_TRACE;
+  }
+
+  return logLevels[logLevel] ? logLevels[logLevel]->Get() : 0;
 }
 
 void JniLogSystemCallback::operator()(AdblockPlus::LogSystem::LogLevel logLevel,
@@ -41,53 +74,20 @@ void JniLogSystemCallback::operator()(AdblockPlus::LogSystem::LogLevel logLevel,
 {
   JNIEnvAcquire env(GetJavaVM());
 
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "logCallback",
-      "(" TYP("LogSystem$LogLevel") "Ljava/lang/String;Ljava/lang/String;)V");
-
   // TODO: Set log level from Java and handle it here (to reduce C++->Java calls)
 
-  if (method)
+  if (callbackMethod)
   {
-    const char* enumName = 0;
-
-    switch (logLevel)
+    jobject jLogLevel = GetLogLevel(logLevel);
+    if (jLogLevel)
     {
-    default:
-    case AdblockPlus::LogSystem::LOG_LEVEL_TRACE:
-      enumName = "TRACE";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_LOG:
-      enumName = "LOG";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_INFO:
-      enumName = "INFO";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_WARN:
-      enumName = "WARN";
-      break;
-    case AdblockPlus::LogSystem::LOG_LEVEL_ERROR:
-      enumName = "ERROR";
-      break;
-    }
-
-    jclass enumClass = logLevelClass->Get();
-    if (enumClass)
-    {
-      jfieldID enumField = env->GetStaticFieldID(enumClass, enumName,
-          TYP("LogSystem$LogLevel"));
-      JniLocalReference<jobject> jLogLevel(*env,
-          env->GetStaticObjectField(enumClass, enumField));
-
       JniLocalReference<jstring> jMessage(*env,
           env->NewStringUTF(message.c_str()));
       JniLocalReference<jstring> jSource(*env,
           env->NewStringUTF(source.c_str()));
 
-      env->CallVoidMethod(GetCallbackObject(), method, *jLogLevel, *jMessage,
-          *jSource);
+      env->CallVoidMethod(GetCallbackObject(), callbackMethod, jLogLevel,
+          *jMessage, *jSource);
     }
 
     CheckAndLogJavaException(*env);
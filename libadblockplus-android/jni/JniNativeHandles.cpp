@@ -0,0 +1,37 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include "Utils.h"
+
+static jlong JNICALL JniGetLiveCount(JNIEnv* env, jclass clazz, jint kind)
+{
+  if (kind < 0 || kind >= JNI_HANDLE_KIND_COUNT)
+  {
+    return 0;
+  }
+  return JniGetLiveHandles(static_cast<JniHandleKind>(kind));
+}
+
+static JNINativeMethod methods[] =
+{
+  { (char*)"getLiveCount", (char*)"(I)J", (void*)JniGetLiveCount }
+};
+
+extern "C" JNIEXPORT void JNICALL Java_org_adblockplus_libadblockplus_NativeHandles_registerNatives(JNIEnv *env, jclass clazz)
+{
+  env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0]));
+}
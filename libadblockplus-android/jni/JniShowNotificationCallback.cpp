@@ -21,14 +21,14 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
 {
   try
   {
-    return JniPtrToLong(new JniShowNotificationCallback(env, callbackObject));
+    return JniNewHandle(JNI_HANDLE_CALLBACK, new JniShowNotificationCallback(env, callbackObject));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<JniShowNotificationCallback>(ptr);
+  JniDeleteHandle<JniShowNotificationCallback>(JNI_HANDLE_CALLBACK, ptr);
 }
 
 JniShowNotificationCallback::JniShowNotificationCallback(JNIEnv* env,
@@ -36,6 +36,8 @@ JniShowNotificationCallback::JniShowNotificationCallback(JNIEnv* env,
     : JniCallbackBase(env, callbackObject), notificationClass(
         new JniGlobalReference<jclass>(env, env->FindClass(PKG("Notification"))))
 {
+  callbackMethod = GetCallbackMethodID(env, "showNotificationCallback",
+      "(" TYP("Notification") ")V");
 }
 
 void JniShowNotificationCallback::Callback(
@@ -43,16 +45,11 @@ void JniShowNotificationCallback::Callback(
 {
   JNIEnvAcquire env(GetJavaVM());
 
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "showNotificationCallback", "(" TYP("Notification") ")V");
-
-  if (method)
+  if (callbackMethod)
   {
     JniLocalReference<jobject> jNotification(*env, NewJniNotification(*env,
         notificationPtr));
-    env->CallVoidMethod(GetCallbackObject(), method, *jNotification);
+    env->CallVoidMethod(GetCallbackObject(), callbackMethod, *jNotification);
   }
 
   CheckAndLogJavaException(*env);
@@ -28,7 +28,7 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jlong jsValue)
 {
   try
   {
-    return JniPtrToLong(new AdblockPlus::SubscriptionPtr(new AdblockPlus::Subscription(JniGetJsValuePtr(jsValue))));
+    return JniNewHandle(JNI_HANDLE_JS_VALUE, new AdblockPlus::SubscriptionPtr(new AdblockPlus::Subscription(JniGetJsValuePtr(jsValue))));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
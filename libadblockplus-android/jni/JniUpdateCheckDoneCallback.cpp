@@ -21,36 +21,32 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
 {
   try
   {
-    return JniPtrToLong(new JniUpdateCheckDoneCallback(env, callbackObject));
+    return JniNewHandle(JNI_HANDLE_CALLBACK, new JniUpdateCheckDoneCallback(env, callbackObject));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<JniUpdateCheckDoneCallback>(ptr);
+  JniDeleteHandle<JniUpdateCheckDoneCallback>(JNI_HANDLE_CALLBACK, ptr);
 }
 
 JniUpdateCheckDoneCallback::JniUpdateCheckDoneCallback(
   JNIEnv* env, jobject callbackObject)
   : JniCallbackBase(env, callbackObject)
 {
+  callbackMethod = GetCallbackMethodID(env, "updateCheckDoneCallback",
+      "(Ljava/lang/String;)V");
 }
 
 void JniUpdateCheckDoneCallback::Callback(const std::string& arg)
 {
   JNIEnvAcquire env(GetJavaVM());
 
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "updateCheckDoneCallback",
-      "(Ljava/lang/String;)V");
-
-  if (method)
+  if (callbackMethod)
   {
     JniLocalReference<jstring> jArg(*env, env->NewStringUTF(arg.c_str()));
-    env->CallVoidMethod(GetCallbackObject(), method, *jArg);
+    env->CallVoidMethod(GetCallbackObject(), callbackMethod, *jArg);
   }
 
   CheckAndLogJavaException(*env);
@@ -22,14 +22,14 @@ static jlong JNICALL JniCtor(JNIEnv* env, jclass clazz, jobject callbackObject)
 {
   try
   {
-    return JniPtrToLong(new AdblockPlus::WebRequestPtr(new JniWebRequest(env, callbackObject)));
+    return JniNewHandle(JNI_HANDLE_WEB_REQUEST, new AdblockPlus::WebRequestPtr(new JniWebRequest(env, callbackObject)));
   }
   CATCH_THROW_AND_RETURN(env, 0)
 }
 
 static void JNICALL JniDtor(JNIEnv* env, jclass clazz, jlong ptr)
 {
-  delete JniLongToTypePtr<AdblockPlus::WebRequestPtr>(ptr);
+  JniDeleteHandle<AdblockPlus::WebRequestPtr>(JNI_HANDLE_WEB_REQUEST, ptr);
 }
 
 JniWebRequest::JniWebRequest(JNIEnv* env, jobject callbackObject)
@@ -37,6 +37,17 @@ JniWebRequest::JniWebRequest(JNIEnv* env, jobject callbackObject)
     tupleClass(new JniGlobalReference<jclass>(env, env->FindClass(PKG("HeaderEntry")))),
     serverResponseClass(new JniGlobalReference<jclass>(env, env->FindClass(PKG("ServerResponse"))))
 {
+  callbackMethod = GetCallbackMethodID(env, "httpGET",
+      "(Ljava/lang/String;Ljava/util/List;)" TYP("ServerResponse"));
+  tupleCtor = env->GetMethodID(tupleClass->Get(), "<init>",
+      "(Ljava/lang/String;Ljava/lang/String;)V");
+
+  jclass responseClass = serverResponseClass->Get();
+  statusField = env->GetFieldID(responseClass, "status", "J");
+  responseStatusField = env->GetFieldID(responseClass, "responseStatus", "I");
+  responseField = env->GetFieldID(responseClass, "response", "Ljava/lang/String;");
+  responseBytesField = env->GetFieldID(responseClass, "responseBytes", "Ljava/nio/ByteBuffer;");
+  headersField = env->GetFieldID(responseClass, "headers", "[Ljava/lang/String;");
 }
 
 AdblockPlus::ServerResponse JniWebRequest::GET(const std::string& url,
@@ -44,16 +55,10 @@ AdblockPlus::ServerResponse JniWebRequest::GET(const std::string& url,
 {
   JNIEnvAcquire env(GetJavaVM());
 
-  jmethodID method = env->GetMethodID(
-      *JniLocalReference<jclass>(*env,
-          env->GetObjectClass(GetCallbackObject())),
-      "httpGET",
-      "(Ljava/lang/String;Ljava/util/List;)" TYP("ServerResponse"));
-
   AdblockPlus::ServerResponse sResponse;
   sResponse.status = AdblockPlus::WebRequest::NS_ERROR_FAILURE;
 
-  if (method)
+  if (callbackMethod)
   {
     JniLocalReference<jobject> arrayList(*env, NewJniArrayList(*env));
 
@@ -66,34 +71,51 @@ AdblockPlus::ServerResponse JniWebRequest::GET(const std::string& url,
     }
 
     JniLocalReference<jobject> response(*env,
-        env->CallObjectMethod(GetCallbackObject(), method,
+        env->CallObjectMethod(GetCallbackObject(), callbackMethod,
             *JniLocalReference<jstring>(*env, env->NewStringUTF(url.c_str())),
             *arrayList));
 
     if (!env->ExceptionCheck())
     {
-      sResponse.status = JniGetLongField(*env, serverResponseClass->Get(),
-          *response, "status");
-      sResponse.responseStatus = JniGetIntField(*env,
-          serverResponseClass->Get(), *response, "responseStatus");
-      sResponse.responseText = JniGetStringField(*env,
-          serverResponseClass->Get(), *response, "response");
+      sResponse.status = env->GetLongField(*response, statusField);
+      sResponse.responseStatus = env->GetIntField(*response,
+          responseStatusField);
+
+      JniLocalReference<jobject> responseBytes(*env,
+          env->GetObjectField(*response, responseBytesField));
+      if (*responseBytes)
+      {
+        if (!JniByteBufferToStdString(*env, *responseBytes, sResponse.responseText))
+        {
+          sResponse.status = AdblockPlus::WebRequest::NS_ERROR_FAILURE;
+        }
+      }
+      else
+      {
+        sResponse.responseText = JniJavaToStdString(*env,
+            *JniLocalReference<jstring>(*env,
+                static_cast<jstring>(env->GetObjectField(*response,
+                    responseField))));
+      }
 
       // map headers
-      jobjectArray responseHeadersArray = JniGetStringArrayField(*env,
-        serverResponseClass->Get(), *response, "headers");
+      JniLocalReference<jobjectArray> responseHeadersArray(*env,
+          static_cast<jobjectArray>(env->GetObjectField(*response,
+              headersField)));
 
-      if (responseHeadersArray)
+      if (*responseHeadersArray)
       {
-        int itemsCount = env->GetArrayLength(responseHeadersArray) / 2;
+        int itemsCount = env->GetArrayLength(*responseHeadersArray) / 2;
         for (int i = 0; i < itemsCount; i++)
         {
-          jstring jKey = (jstring)env->GetObjectArrayElement(responseHeadersArray, i * 2);
-          std::string stdKey = JniJavaToStdString(*env, jKey);
-          
-          jstring jValue = (jstring)env->GetObjectArrayElement(responseHeadersArray, i * 2 + 1);
-          std::string stdValue = JniJavaToStdString(*env, jValue);
-          
+          std::string stdKey = JniJavaToStdString(*env,
+              *JniLocalReference<jstring>(*env, static_cast<jstring>(
+                  env->GetObjectArrayElement(*responseHeadersArray, i * 2))));
+
+          std::string stdValue = JniJavaToStdString(*env,
+              *JniLocalReference<jstring>(*env, static_cast<jstring>(
+                  env->GetObjectArrayElement(*responseHeadersArray, i * 2 + 1))));
+
           std::pair<std::string,std::string>  keyValue(stdKey, stdValue);
           sResponse.responseHeaders.push_back(keyValue);
         }
@@ -109,13 +131,10 @@ AdblockPlus::ServerResponse JniWebRequest::GET(const std::string& url,
 jobject JniWebRequest::NewTuple(JNIEnv* env, const std::string& a,
     const std::string& b) const
 {
-  jmethodID factory = env->GetMethodID(tupleClass->Get(), "<init>",
-      "(Ljava/lang/String;Ljava/lang/String;)V");
-
   JniLocalReference<jstring> strA(env, env->NewStringUTF(a.c_str()));
   JniLocalReference<jstring> strB(env, env->NewStringUTF(b.c_str()));
 
-  return env->NewObject(tupleClass->Get(), factory, *strA, *strB);
+  return env->NewObject(tupleClass->Get(), tupleCtor, *strA, *strB);
 }
 
 static JNINativeMethod methods[] =
@@ -15,10 +15,127 @@
  * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+#include <atomic>
 #include <string>
+#include <cstring>
+#include <pthread.h>
 
 #include "Utils.h"
 
+// precached in JNI_OnLoad and released in JNI_OnUnload
+static jclass arrayListClass;
+static jmethodID arrayListCtor;
+static jmethodID arrayListAdd;
+static jclass filterClass;
+static jmethodID filterCtor;
+static jclass subscriptionClass;
+static jmethodID subscriptionCtor;
+static jclass notificationClass;
+static jmethodID notificationCtor;
+static jclass matchResultClass;
+static jmethodID matchResultCtor;
+static jclass byteBufferClass;
+static jmethodID byteBufferAllocateDirect;
+static jmethodID byteBufferPosition;
+static jmethodID byteBufferLimit;
+static jmethodID byteBufferArray;
+static jmethodID byteBufferArrayOffset;
+static jclass exceptionClass;
+
+static std::atomic<jlong> liveHandles[JNI_HANDLE_KIND_COUNT];
+
+// set to the JavaVM on native threads attached by JNIEnvAcquire, which stay
+// attached until the thread exits
+static pthread_key_t attachedThreadKey;
+static bool attachedThreadKeyCreated;
+
+// local references made during a callback on such threads are freed with
+// this frame instead of on detach
+static const jint CALLBACK_LOCAL_FRAME_CAPACITY = 16;
+
+static jclass NewGlobalClass(JNIEnv* env, const char* name)
+{
+  JniLocalReference<jclass> localClass(env, env->FindClass(name));
+  return static_cast<jclass>(env->NewGlobalRef(*localClass));
+}
+
+static void DeleteGlobalClass(JNIEnv* env, jclass& clazz)
+{
+  if (clazz)
+  {
+    env->DeleteGlobalRef(clazz);
+    clazz = 0;
+  }
+}
+
+static void DetachOnThreadExit(void* javaVM)
+{
+  static_cast<JavaVM*>(javaVM)->DetachCurrentThread();
+}
+
+void JniUtils_OnLoad(JavaVM* vm, JNIEnv* env, void* reserved)
+{
+  attachedThreadKeyCreated = pthread_key_create(&attachedThreadKey, DetachOnThreadExit) == 0;
+
+  // precache for performance and avoid FindClass on native threads
+  arrayListClass = NewGlobalClass(env, "java/util/ArrayList");
+  arrayListCtor = env->GetMethodID(arrayListClass, "<init>", "()V");
+  arrayListAdd = env->GetMethodID(arrayListClass, "add", "(Ljava/lang/Object;)Z");
+
+  filterClass = NewGlobalClass(env, PKG("Filter"));
+  filterCtor = env->GetMethodID(filterClass, "<init>", "(J)V");
+
+  subscriptionClass = NewGlobalClass(env, PKG("Subscription"));
+  subscriptionCtor = env->GetMethodID(subscriptionClass, "<init>", "(J)V");
+
+  notificationClass = NewGlobalClass(env, PKG("Notification"));
+  notificationCtor = env->GetMethodID(notificationClass, "<init>", "(J)V");
+
+  matchResultClass = NewGlobalClass(env, PKG("MatchResult"));
+  matchResultCtor = env->GetMethodID(matchResultClass, "<init>", "(ILjava/lang/String;)V");
+
+  byteBufferClass = NewGlobalClass(env, "java/nio/ByteBuffer");
+  byteBufferAllocateDirect = env->GetStaticMethodID(byteBufferClass, "allocateDirect", "(I)Ljava/nio/ByteBuffer;");
+  byteBufferPosition = env->GetMethodID(byteBufferClass, "position", "()I");
+  byteBufferLimit = env->GetMethodID(byteBufferClass, "limit", "()I");
+  byteBufferArray = env->GetMethodID(byteBufferClass, "array", "()[B");
+  byteBufferArrayOffset = env->GetMethodID(byteBufferClass, "arrayOffset", "()I");
+
+  exceptionClass = NewGlobalClass(env, PKG("AdblockPlusException"));
+}
+
+void JniUtils_OnUnload(JavaVM* vm, JNIEnv* env, void* reserved)
+{
+  DeleteGlobalClass(env, arrayListClass);
+  DeleteGlobalClass(env, filterClass);
+  DeleteGlobalClass(env, subscriptionClass);
+  DeleteGlobalClass(env, notificationClass);
+  DeleteGlobalClass(env, matchResultClass);
+  DeleteGlobalClass(env, byteBufferClass);
+  DeleteGlobalClass(env, exceptionClass);
+
+  if (attachedThreadKeyCreated)
+  {
+    pthread_key_delete(attachedThreadKey);
+    attachedThreadKeyCreated = false;
+  }
+}
+
+void JniHandlesCreated(JniHandleKind kind, jlong count)
+{
+  liveHandles[kind].fetch_add(count, std::memory_order_relaxed);
+}
+
+void JniHandlesDeleted(JniHandleKind kind, jlong count)
+{
+  liveHandles[kind].fetch_sub(count, std::memory_order_relaxed);
+}
+
+jlong JniGetLiveHandles(JniHandleKind kind)
+{
+  return liveHandles[kind].load(std::memory_order_relaxed);
+}
+
 std::string JniJavaToStdString(JNIEnv* env, jstring str)
 {
   if (!str)
@@ -33,25 +150,80 @@ std::string JniJavaToStdString(JNIEnv* env, jstring str)
   return ret;
 }
 
+bool JniByteBufferToStdString(JNIEnv* env, jobject buffer, std::string& result)
+{
+  result.clear();
+  jint position = env->CallIntMethod(buffer, byteBufferPosition);
+  jint length = env->CallIntMethod(buffer, byteBufferLimit) - position;
+  if (length <= 0)
+  {
+    return true;
+  }
+
+  const char* address = static_cast<const char*>(env->GetDirectBufferAddress(buffer));
+  if (address)
+  {
+    result.assign(address + position, length);
+    return true;
+  }
+
+  JniLocalReference<jbyteArray> array(env,
+      static_cast<jbyteArray>(env->CallObjectMethod(buffer, byteBufferArray)));
+  if (env->ExceptionCheck())
+  {
+    // read-only heap buffers don't expose their array
+    env->ExceptionClear();
+    return false;
+  }
+  jint offset = env->CallIntMethod(buffer, byteBufferArrayOffset);
+
+  result.resize(length);
+  env->GetByteArrayRegion(*array, offset + position, length,
+      reinterpret_cast<jbyte*>(&result[0]));
+  if (env->ExceptionCheck())
+  {
+    env->ExceptionClear();
+    result.clear();
+    return false;
+  }
+  return true;
+}
+
 jobject NewJniArrayList(JNIEnv* env)
 {
-  JniLocalReference<jclass> clazz(env, env->FindClass("java/util/ArrayList"));
-  jmethodID ctor = env->GetMethodID(*clazz, "<init>", "()V");
-  return env->NewObject(*clazz, ctor);
+  return env->NewObject(arrayListClass, arrayListCtor);
 }
 
 void JniAddObjectToList(JNIEnv* env, jobject list, jobject value)
 {
-  JniLocalReference<jclass> clazz(env, env->GetObjectClass(list));
-  jmethodID add = env->GetMethodID(*clazz, "add", "(Ljava/lang/Object;)Z");
-  env->CallBooleanMethod(list, add, value);
+  env->CallBooleanMethod(list, arrayListAdd, value);
+}
+
+jobjectArray NewJniFilterArray(JNIEnv* env, jsize length)
+{
+  return env->NewObjectArray(length, filterClass, 0);
+}
+
+jobject NewJniDirectByteBuffer(JNIEnv* env, const std::string& bytes)
+{
+  jobject buffer = env->CallStaticObjectMethod(byteBufferClass,
+      byteBufferAllocateDirect, static_cast<jint>(bytes.size()));
+  if (!buffer)
+  {
+    return 0;
+  }
+
+  if (!bytes.empty())
+  {
+    memcpy(env->GetDirectBufferAddress(buffer), bytes.data(), bytes.size());
+  }
+
+  return buffer;
 }
 
 void JniThrowException(JNIEnv* env, const std::string& message)
 {
-  JniLocalReference<jclass> clazz(env,
-      env->FindClass(PKG("AdblockPlusException")));
-  env->ThrowNew(*clazz, message.c_str());
+  env->ThrowNew(exceptionClass, message.c_str());
 }
 
 void JniThrowException(JNIEnv* env, const std::exception& e)
@@ -64,23 +236,50 @@ void JniThrowException(JNIEnv* env)
   JniThrowException(env, "Unknown exception from libadblockplus");
 }
 
+static jint JniAttachCurrentThread(JavaVM* javaVM, JNIEnv** env)
+{
+  // as daemon, threads staying attached must not keep the VM from exiting
+#ifdef __ANDROID__
+  return javaVM->AttachCurrentThreadAsDaemon(env, 0);
+#else
+  // desktop JDK headers declare the env parameter as void**
+  return javaVM->AttachCurrentThreadAsDaemon(reinterpret_cast<void**>(env), 0);
+#endif
+}
+
 JNIEnvAcquire::JNIEnvAcquire(JavaVM* javaVM)
-  : javaVM(javaVM), jniEnv(0), attachmentStatus(0)
+  : javaVM(javaVM), jniEnv(0), attachmentStatus(0), localFramePushed(false)
 {
   attachmentStatus = javaVM->GetEnv((void **)&jniEnv, ABP_JNI_VERSION);
   if (attachmentStatus == JNI_EDETACHED)
   {
-    if (javaVM->AttachCurrentThread(&jniEnv, 0))
+    if (JniAttachCurrentThread(javaVM, &jniEnv))
     {
       // This one is FATAL, we can't recover from this (because without a JVM we're dead), so
       // throwing a runtime_exception in a ctor can be tolerated here IMHO
       throw std::runtime_error("Failed to get JNI environment");
     }
+
+    // attaching is expensive, callbacks come from a few native threads
+    // over and over, so keep it until the thread exits
+    if (attachedThreadKeyCreated && pthread_setspecific(attachedThreadKey, javaVM) == 0)
+    {
+      attachmentStatus = JNI_OK;
+    }
+  }
+
+  if (attachmentStatus == JNI_OK && attachedThreadKeyCreated && pthread_getspecific(attachedThreadKey))
+  {
+    localFramePushed = jniEnv->PushLocalFrame(CALLBACK_LOCAL_FRAME_CAPACITY) == 0;
   }
 }
 
 JNIEnvAcquire::~JNIEnvAcquire()
 {
+  if (localFramePushed)
+  {
+    jniEnv->PopLocalFrame(0);
+  }
   if (attachmentStatus == JNI_EDETACHED)
   {
     javaVM->DetachCurrentThread();
@@ -88,37 +287,72 @@ JNIEnvAcquire::~JNIEnvAcquire()
 }
 
 template<typename T>
-static jobject NewJniObject(JNIEnv* env, const T& value, const char* javaClass)
+static jobject NewJniObject(JNIEnv* env, const T& value, jclass clazz, jmethodID ctor)
 {
   if (!value.get())
   {
     return 0;
   }
 
-  JniLocalReference<jclass> clazz(
-      env,
-      env->FindClass(javaClass));
-  jmethodID method = env->GetMethodID(*clazz, "<init>", "(J)V");
-
-  return env->NewObject(
-      *clazz,
-      method,
-      JniPtrToLong(new T(value)));
+  const jlong ptr = JniNewHandle(JNI_HANDLE_JS_VALUE, new T(value));
+  jobject object = env->NewObject(clazz, ctor, ptr);
+  if (!object)
+  {
+    // no wrapper owns the copy, an exception is pending
+    JniDeleteHandle<T>(JNI_HANDLE_JS_VALUE, ptr);
+  }
+  return object;
 }
 
 jobject NewJniFilter(JNIEnv* env, const AdblockPlus::FilterPtr& filter)
 {
-  return NewJniObject(env, filter, PKG("Filter"));
+  return NewJniObject(env, filter, filterClass, filterCtor);
+}
+
+jint JniFilterTypeToOrdinal(AdblockPlus::Filter::Type type)
+{
+  switch (type)
+  {
+  case AdblockPlus::Filter::TYPE_BLOCKING:
+    return 0;
+  case AdblockPlus::Filter::TYPE_EXCEPTION:
+    return 1;
+  case AdblockPlus::Filter::TYPE_ELEMHIDE:
+    return 2;
+  case AdblockPlus::Filter::TYPE_ELEMHIDE_EXCEPTION:
+    return 3;
+  case AdblockPlus::Filter::TYPE_COMMENT:
+    return 4;
+  default:
+    return 5;
+  }
+}
+
+jobject NewJniMatchResult(JNIEnv* env, const AdblockPlus::FilterPtr& filter)
+{
+  if (!filter.get())
+  {
+    return 0;
+  }
+
+  JniLocalReference<jstring> jText(env,
+      env->NewStringUTF(filter->GetProperty("text")->AsString().c_str()));
+
+  return env->NewObject(
+      matchResultClass,
+      matchResultCtor,
+      JniFilterTypeToOrdinal(filter->GetType()),
+      *jText);
 }
 
 jobject NewJniSubscription(JNIEnv* env,
     const AdblockPlus::SubscriptionPtr& subscription)
 {
-  return NewJniObject(env, subscription, PKG("Subscription"));
+  return NewJniObject(env, subscription, subscriptionClass, subscriptionCtor);
 }
 
 jobject NewJniNotification(JNIEnv* env,
     const AdblockPlus::NotificationPtr& notification)
 {
-  return NewJniObject(env, notification, PKG("Notification"));
+  return NewJniObject(env, notification, notificationClass, notificationCtor);
 }
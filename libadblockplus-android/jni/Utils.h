@@ -31,6 +31,13 @@
 
 #define ABP_JNI_VERSION JNI_VERSION_1_6
 
+void JniUtils_OnLoad(JavaVM* vm, JNIEnv* env, void* reserved);
+
+void JniUtils_OnUnload(JavaVM* vm, JNIEnv* env, void* reserved);
+
+// releases the Filter.Type values cached by Filter.registerNatives
+void JniFilter_OnUnload(JavaVM* vm, JNIEnv* env, void* reserved);
+
 void JniThrowException(JNIEnv* env, const std::string& message);
 
 void JniThrowException(JNIEnv* env, const std::exception& e);
@@ -94,6 +101,7 @@ private:
   JavaVM* javaVM;
   JNIEnv* jniEnv;
   int attachmentStatus;
+  bool localFramePushed;
 };
 
 template<typename T>
@@ -147,8 +155,44 @@ inline T* JniLongToTypePtr(jlong value)
   return reinterpret_cast<T*>((size_t)value);
 }
 
+// kinds of native objects held by Java wrappers, ordinals of NativeHandles.Kind
+enum JniHandleKind
+{
+  JNI_HANDLE_JS_VALUE,
+  JNI_HANDLE_JS_ENGINE,
+  JNI_HANDLE_FILTER_ENGINE,
+  JNI_HANDLE_WEB_REQUEST,
+  JNI_HANDLE_LOG_SYSTEM,
+  JNI_HANDLE_CALLBACK,
+  JNI_HANDLE_KIND_COUNT
+};
+
+void JniHandlesCreated(JniHandleKind kind, jlong count = 1);
+
+void JniHandlesDeleted(JniHandleKind kind, jlong count = 1);
+
+jlong JniGetLiveHandles(JniHandleKind kind);
+
+template<typename T>
+inline jlong JniNewHandle(JniHandleKind kind, T* object)
+{
+  JniHandlesCreated(kind);
+  return JniPtrToLong(object);
+}
+
+template<typename T>
+inline void JniDeleteHandle(JniHandleKind kind, jlong ptr)
+{
+  delete JniLongToTypePtr<T>(ptr);
+  JniHandlesDeleted(kind);
+}
+
 std::string JniJavaToStdString(JNIEnv* env, jstring str);
 
+// bytes between position and limit of a direct or array-backed ByteBuffer,
+// false with no exception pending if they can't be read
+bool JniByteBufferToStdString(JNIEnv* env, jobject buffer, std::string& result);
+
 void JniAddObjectToList(JNIEnv* env, jobject list, jobject value);
 
 inline std::string JniGetStringField(JNIEnv* env, jclass clazz, jobject jObj, const char* name)
@@ -178,8 +222,18 @@ inline jobjectArray JniGetStringArrayField(JNIEnv* env, jclass clazz, jobject jO
 
 jobject NewJniArrayList(JNIEnv* env);
 
+jobjectArray NewJniFilterArray(JNIEnv* env, jsize length);
+
+// copies the bytes into a new direct java.nio.ByteBuffer
+jobject NewJniDirectByteBuffer(JNIEnv* env, const std::string& bytes);
+
 jobject NewJniFilter(JNIEnv* env, const AdblockPlus::FilterPtr& filter);
 
+// returns the org.adblockplus.libadblockplus.Filter.Type ordinal
+jint JniFilterTypeToOrdinal(AdblockPlus::Filter::Type type);
+
+jobject NewJniMatchResult(JNIEnv* env, const AdblockPlus::FilterPtr& filter);
+
 jobject NewJniSubscription(JNIEnv* env,
     const AdblockPlus::SubscriptionPtr& subscription);
 
@@ -0,0 +1,47 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.android;
+
+import org.adblockplus.libadblockplus.Logging;
+
+import android.util.Log;
+
+/**
+ * Default {@link Logging.Writer} on Android, instantiated reflectively by
+ * {@link Logging} so the core classes don't link against {@code android.util.Log}.
+ */
+public final class AndroidLogWriter implements Logging.Writer
+{
+  @Override
+  public void d(final String tag, final String message)
+  {
+    Log.d(tag, message);
+  }
+
+  @Override
+  public void w(final String tag, final String message, final Throwable t)
+  {
+    Log.w(tag, message, t);
+  }
+
+  @Override
+  public void e(final String tag, final String message, final Throwable t)
+  {
+    Log.e(tag, message, t);
+  }
+}
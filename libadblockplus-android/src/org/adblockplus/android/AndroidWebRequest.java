@@ -17,34 +17,55 @@
 
 package org.adblockplus.android;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import org.adblockplus.libadblockplus.AdblockPlusException;
 import org.adblockplus.libadblockplus.FilterEngine;
 import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.Logging;
 import org.adblockplus.libadblockplus.ServerResponse;
 import org.adblockplus.libadblockplus.ServerResponse.NsStatus;
 import org.adblockplus.libadblockplus.WebRequest;
 
-import android.util.Log;
-
 public class AndroidWebRequest extends WebRequest
 {
-  public final static String TAG = Utils.getTag(WebRequest.class);
+  public final static String TAG = Logging.getTag(WebRequest.class);
+
+  // filter lists compress about 5:1, used to size the buffer for inflated bodies
+  private final static int EXPECTED_COMPRESSION_RATIO = 5;
+  private final static int INFLATER_BUFFER_SIZE = 16 * 1024;
 
   private final HashSet<String> subscriptionURLs = new HashSet<String>();
   private final boolean elemhideEnabled;
+  private final HttpCache cache;
 
-  public AndroidWebRequest(boolean enableElemhide)
+  /**
+   * @param cache revalidates downloads with conditional requests, null to
+   *          always download in full
+   */
+  public AndroidWebRequest(final boolean enableElemhide, final HttpCache cache)
   {
     this.elemhideEnabled = enableElemhide;
+    this.cache = cache;
+  }
+
+  public AndroidWebRequest(boolean enableElemhide)
+  {
+    this(enableElemhide, null);
   }
 
   public AndroidWebRequest()
@@ -74,88 +95,286 @@ public class AndroidWebRequest extends WebRequest
     this.subscriptionURLs.add(engine.getPref("subscriptions_exceptionsurl").toString());
   }
 
+  /**
+   * Reads the stream into a single array sized from the content length, up
+   * to a limit, grown only if the length is unknown (-1) or the stream turns
+   * out longer.
+   */
+  static ByteBuffer readFully(final InputStream in, final int contentLength) throws IOException
+  {
+    byte[] buffer = new byte[ResponseBuffers.getInitialSize(contentLength)];
+    int length = 0;
+
+    while (true)
+    {
+      if (length == buffer.length)
+      {
+        // check for the end before growing a buffer that might be exactly full
+        final int next = in.read();
+        if (next == -1)
+        {
+          break;
+        }
+        buffer = ResponseBuffers.grow(buffer);
+        buffer[length++] = (byte) next;
+      }
+
+      final int read = in.read(buffer, length, buffer.length - length);
+      if (read == -1)
+      {
+        break;
+      }
+      length += read;
+    }
+
+    return ResponseBuffers.wrapTrimmed(buffer, length);
+  }
+
   @Override
   public ServerResponse httpGET(final String urlStr, final List<HeaderEntry> headers)
   {
     try
     {
       final URL url = new URL(urlStr);
-      Log.d(TAG, "Downloading from: " + url);
+      Logging.d(TAG, "Downloading from: " + url);
 
       final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
       connection.setRequestMethod("GET");
-      connection.connect();
 
-      final ServerResponse response = new ServerResponse();
-      response.setResponseStatus(connection.getResponseCode());
-
-      if (response.getResponseStatus() == 200)
+      // also disables transparent gzip of the platform, which hides Content-Length
+      connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+      boolean conditional = false;
+      for (final HeaderEntry header : headers)
       {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
-        final StringBuilder sb = new StringBuilder();
+        connection.setRequestProperty(header.getKey(), header.getValue());
+        conditional |= header.getKey().equalsIgnoreCase("If-None-Match")
+            || header.getKey().equalsIgnoreCase("If-Modified-Since");
+      }
 
-        if (!this.elemhideEnabled && isListedSubscriptionUrl(url))
+      // requests revalidated by the caller bypass the cache
+      final HttpCache.Entry cached = this.cache != null && !conditional ? this.cache.get(urlStr) : null;
+      if (cached != null)
+      {
+        if (cached.getETag() != null)
         {
-          Log.d(TAG, "Removing element hiding rules from: '" + url + "'");
-
-          String line;
-          while ((line = reader.readLine()) != null)
-          {
-            // We're only appending non-element-hiding filters here.
-            //
-            // See:
-            //      https://issues.adblockplus.org/ticket/303
-            //
-            // Follow-up issue for removing this hack:
-            //      https://issues.adblockplus.org/ticket/1541
-            //
-            if (line.indexOf('#') == -1)
-            {
-              sb.append(line);
-              sb.append('\n');
-            }
-          }
+          connection.setRequestProperty("If-None-Match", cached.getETag());
         }
-        else
+        if (cached.getLastModified() != null)
         {
-          int character;
-
-          while ((character = reader.read()) != -1)
-          {
-            sb.append((char) character);
-          }
+          connection.setRequestProperty("If-Modified-Since", cached.getLastModified());
         }
+      }
+      connection.connect();
 
-        response.setStatus(NsStatus.OK);
-        response.setResponse(sb.toString());
+      // a connection whose body was read to the end and closed is kept alive
+      // for the next request to the host, disconnecting would close it
+      boolean consumed = false;
+      try
+      {
+        final ServerResponse response = new ServerResponse();
+        response.setResponseStatus(connection.getResponseCode());
+
+        if (response.getResponseStatus() == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null)
+        {
+          Logging.d(TAG, "Not modified, using cached response for: '" + url + "'");
 
-        if (connection.getHeaderFields().size() > 0)
+          connection.getInputStream().close();
+          consumed = true;
+          response.setResponseStatus(200);
+          readBody(response, url, new FileInputStream(cached.getBody()), (int) cached.getBody().length());
+          response.setStatus(NsStatus.OK);
+          response.setReponseHeaders(cached.getHeaders());
+        }
+        else if (response.getResponseStatus() == HttpURLConnection.HTTP_NOT_MODIFIED && conditional)
         {
-          List<HeaderEntry> responseHeaders = new LinkedList<HeaderEntry>();
-          for (Map.Entry<String, List<String>> eachEntry : connection.getHeaderFields().entrySet())
+          // the caller sent the validators and handles the 304 itself
+          connection.getInputStream().close();
+          consumed = true;
+          response.setStatus(NsStatus.OK);
+          response.setReponseHeaders(getResponseHeaders(connection));
+        }
+        else if (response.getResponseStatus() == 200)
+        {
+          final List<HeaderEntry> responseHeaders = getResponseHeaders(connection);
+          final String eTag = connection.getHeaderField("ETag");
+          final String lastModified = connection.getHeaderField("Last-Modified");
+
+          if (this.cache != null && HttpCache.isCacheable(eTag, lastModified))
           {
-            for (String eachValue : eachEntry.getValue())
+            // the unfiltered body is cached decoded, a failing cache must not fail the download
+            final InputStream in = getDecodedInputStream(connection);
+            final ByteBuffer body;
+            try
             {
-              if (eachEntry.getKey() != null && eachValue != null)
-              {
-                responseHeaders.add(new HeaderEntry(eachEntry.getKey().toLowerCase(), eachValue));
-              }
+              body = readFully(in, getDecodedLength(connection));
             }
+            finally
+            {
+              in.close();
+            }
+            consumed = true;
+            try
+            {
+              this.cache.put(urlStr, eTag, lastModified, responseHeaders, toInputStream(body));
+            }
+            catch (final IOException e)
+            {
+              Logging.w(TAG, "Failed to cache response for: '" + url + "'", e);
+            }
+            setBody(response, url, body);
+          }
+          else
+          {
+            readBody(response, url, getDecodedInputStream(connection), getDecodedLength(connection));
+            consumed = true;
           }
+
+          response.setStatus(NsStatus.OK);
           response.setReponseHeaders(responseHeaders);
         }
-
-        connection.disconnect();
+        else
+        {
+          response.setStatus(NsStatus.ERROR_FAILURE);
+        }
+        return response;
       }
-      else
+      finally
       {
-        response.setStatus(NsStatus.ERROR_FAILURE);
+        if (!consumed)
+        {
+          connection.disconnect();
+        }
       }
-      return response;
     }
     catch (final Throwable t)
     {
       throw new AdblockPlusException("WebRequest failed", t);
     }
   }
+
+  private void readBody(final ServerResponse response, final URL url, final InputStream in,
+      final int contentLength) throws IOException
+  {
+    try
+    {
+      if (!this.elemhideEnabled && isListedSubscriptionUrl(url))
+      {
+        Logging.d(TAG, "Removing element hiding rules from: '" + url + "'");
+
+        // We're only keeping non-element-hiding filters here.
+        //
+        // See:
+        //      https://issues.adblockplus.org/ticket/303
+        //
+        // Follow-up issue for removing this hack:
+        //      https://issues.adblockplus.org/ticket/1541
+        //
+        response.setResponseBytes(ElemhideStripper.strip(in, contentLength));
+      }
+      else
+      {
+        // passed on as bytes, JNI copies them without decoding to UTF-16
+        response.setResponseBytes(readFully(in, contentLength));
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  private void setBody(final ServerResponse response, final URL url, final ByteBuffer body) throws IOException
+  {
+    if (!this.elemhideEnabled && isListedSubscriptionUrl(url))
+    {
+      readBody(response, url, toInputStream(body), body.remaining());
+    }
+    else
+    {
+      response.setResponseBytes(body);
+    }
+  }
+
+  private static InputStream toInputStream(final ByteBuffer buffer)
+  {
+    return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+  }
+
+  private static boolean isCompressed(final HttpURLConnection connection)
+  {
+    final String encoding = connection.getContentEncoding();
+    return encoding != null && (encoding.equalsIgnoreCase("gzip") || encoding.equalsIgnoreCase("x-gzip")
+        || encoding.equalsIgnoreCase("deflate"));
+  }
+
+  /**
+   * Inflates compressed bodies while they are read, straight into the
+   * response buffer.
+   */
+  private static InputStream getDecodedInputStream(final HttpURLConnection connection) throws IOException
+  {
+    final InputStream in = connection.getInputStream();
+    if (!isCompressed(connection))
+    {
+      return in;
+    }
+    if (!connection.getContentEncoding().equalsIgnoreCase("deflate"))
+    {
+      return new GZIPInputStream(in, INFLATER_BUFFER_SIZE);
+    }
+
+    // "deflate" should be zlib wrapped, some servers send raw deflate data
+    final BufferedInputStream buffered = new BufferedInputStream(in, INFLATER_BUFFER_SIZE);
+    buffered.mark(2);
+    final int cmf = buffered.read();
+    final int flg = buffered.read();
+    buffered.reset();
+    final boolean zlib = (cmf & 0x0f) == 8 && flg >= 0 && ((cmf << 8) | flg) % 31 == 0;
+    final Inflater inflater = new Inflater(!zlib);
+    return new InflaterInputStream(buffered, inflater, INFLATER_BUFFER_SIZE)
+    {
+      @Override
+      public void close() throws IOException
+      {
+        super.close();
+        inflater.end();
+      }
+    };
+  }
+
+  /**
+   * @return expected length of the decoded body, -1 if unknown
+   */
+  private static int getDecodedLength(final HttpURLConnection connection)
+  {
+    final int contentLength = connection.getContentLength();
+    if (contentLength < 0 || !isCompressed(connection))
+    {
+      return contentLength;
+    }
+    return (int) Math.min((long) contentLength * EXPECTED_COMPRESSION_RATIO, Integer.MAX_VALUE - 8);
+  }
+
+  private static List<HeaderEntry> getResponseHeaders(final HttpURLConnection connection)
+  {
+    // the body is passed on decoded
+    final boolean decoded = isCompressed(connection);
+    final List<HeaderEntry> responseHeaders = new LinkedList<HeaderEntry>();
+    for (Map.Entry<String, List<String>> eachEntry : connection.getHeaderFields().entrySet())
+    {
+      if (decoded && ("Content-Encoding".equalsIgnoreCase(eachEntry.getKey())
+          || "Content-Length".equalsIgnoreCase(eachEntry.getKey())))
+      {
+        continue;
+      }
+      for (String eachValue : eachEntry.getValue())
+      {
+        if (eachEntry.getKey() != null && eachValue != null)
+        {
+          responseHeaders.add(new HeaderEntry(eachEntry.getKey().toLowerCase(), eachValue));
+        }
+      }
+    }
+    return responseHeaders;
+  }
 }
@@ -0,0 +1,277 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.android;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.adblockplus.libadblockplus.AdblockPlusException;
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.ServerResponse;
+
+/**
+ * Serves concurrent <code>GET</code>s, e.g. from several subscription and
+ * notification downloads, on a bounded pool of download threads.
+ * <p>
+ * At most <code>maxRequests</code> downloads run at once and at most
+ * <code>maxRequestsPerHost</code> of them against one host, further requests
+ * wait in order. Connections are kept alive between requests to a host.
+ */
+public class ConcurrentWebRequest extends AndroidWebRequest
+{
+  public final static int DEFAULT_MAX_REQUESTS = 4;
+  public final static int DEFAULT_MAX_REQUESTS_PER_HOST = 2;
+
+  private final static long IDLE_THREAD_TIMEOUT_MILLIS = 30 * 1000;
+  private final static AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+  private final int maxRequestsPerHost;
+  private final ThreadPoolExecutor executor;
+  // guarded by itself: running requests per host and those waiting for a slot
+  private final Map<String, Host> hosts = new HashMap<String, Host>();
+
+  private final static class Host
+  {
+    private int running;
+    private final LinkedList<DownloadTask> waiting = new LinkedList<DownloadTask>();
+  }
+
+  // holds a host slot from execute() until its body returns or it is cancelled unstarted
+  private final class DownloadTask extends FutureTask<ServerResponse>
+  {
+    private final String hostKey;
+    private final AtomicBoolean started;
+
+    DownloadTask(final String hostKey, final String url, final List<HeaderEntry> headers)
+    {
+      this(hostKey, url, headers, new AtomicBoolean(false));
+    }
+
+    private DownloadTask(final String hostKey, final String url, final List<HeaderEntry> headers,
+        final AtomicBoolean started)
+    {
+      super(new Callable<ServerResponse>()
+      {
+        @Override
+        public ServerResponse call()
+        {
+          if (!started.compareAndSet(false, true))
+          {
+            return null;
+          }
+          try
+          {
+            return download(url, headers);
+          }
+          finally
+          {
+            // a cancelled download keeps its slot until the connection is done with
+            finished(hostKey);
+          }
+        }
+      });
+      this.hostKey = hostKey;
+      this.started = started;
+    }
+
+    @Override
+    protected void done()
+    {
+      synchronized (ConcurrentWebRequest.this.hosts)
+      {
+        final Host host = ConcurrentWebRequest.this.hosts.get(this.hostKey);
+        if (host != null && host.waiting.remove(this))
+        {
+          // cancelled before it got a slot
+          return;
+        }
+      }
+      if (this.started.compareAndSet(false, true))
+      {
+        // cancelled or rejected before the body ran
+        finished(this.hostKey);
+      }
+    }
+  }
+
+  public ConcurrentWebRequest(final boolean enableElemhide, final HttpCache cache, final int maxRequests,
+      final int maxRequestsPerHost)
+  {
+    super(enableElemhide, cache);
+    if (maxRequests < 1 || maxRequestsPerHost < 1)
+    {
+      throw new IllegalArgumentException("Request limits must be positive");
+    }
+    this.maxRequestsPerHost = maxRequestsPerHost;
+    this.executor = new ThreadPoolExecutor(maxRequests, maxRequests,
+        IDLE_THREAD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory()
+        {
+          @Override
+          public Thread newThread(final Runnable runnable)
+          {
+            final Thread thread = new Thread(runnable, "WebRequest-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  public ConcurrentWebRequest(final boolean enableElemhide, final HttpCache cache)
+  {
+    this(enableElemhide, cache, DEFAULT_MAX_REQUESTS, DEFAULT_MAX_REQUESTS_PER_HOST);
+  }
+
+  public ConcurrentWebRequest()
+  {
+    this(false, null);
+  }
+
+  /**
+   * Queues the download, it runs once a slot for its host is free.
+   */
+  public Future<ServerResponse> submit(final String url, final List<HeaderEntry> headers)
+  {
+    final String hostKey = getHostKey(url);
+    final DownloadTask task = new DownloadTask(hostKey, url, headers);
+
+    synchronized (this.hosts)
+    {
+      Host host = this.hosts.get(hostKey);
+      if (host == null)
+      {
+        host = new Host();
+        this.hosts.put(hostKey, host);
+      }
+      if (host.running < this.maxRequestsPerHost)
+      {
+        host.running++;
+        execute(task);
+      }
+      else
+      {
+        host.waiting.add(task);
+      }
+    }
+    return task;
+  }
+
+  private void execute(final DownloadTask task)
+  {
+    try
+    {
+      this.executor.execute(task);
+    }
+    catch (final RejectedExecutionException e)
+    {
+      // disposed, done() passes the slot on
+      task.cancel(false);
+    }
+  }
+
+  // passes the slot of a task on to the next waiting one
+  private void finished(final String hostKey)
+  {
+    synchronized (this.hosts)
+    {
+      final Host host = this.hosts.get(hostKey);
+      final DownloadTask next = host.waiting.poll();
+      if (next != null)
+      {
+        execute(next);
+      }
+      else if (--host.running == 0)
+      {
+        this.hosts.remove(hostKey);
+      }
+    }
+  }
+
+  private ServerResponse download(final String url, final List<HeaderEntry> headers)
+  {
+    return super.httpGET(url, headers);
+  }
+
+  /**
+   * Called by the native engine on its download threads, blocks until the
+   * queued download completes.
+   */
+  @Override
+  public ServerResponse httpGET(final String url, final List<HeaderEntry> headers)
+  {
+    final Future<ServerResponse> future = submit(url, headers);
+    try
+    {
+      return future.get();
+    }
+    catch (final ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AdblockPlusException(e.getCause());
+    }
+    catch (final InterruptedException e)
+    {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new AdblockPlusException(e);
+    }
+  }
+
+  private static String getHostKey(final String url)
+  {
+    try
+    {
+      final URL parsed = new URL(url);
+      return parsed.getProtocol() + "://" + parsed.getAuthority();
+    }
+    catch (final MalformedURLException e)
+    {
+      // fails in the download
+      return "";
+    }
+  }
+
+  /**
+   * Stops the download threads once queued downloads are done.
+   */
+  @Override
+  public void dispose()
+  {
+    this.executor.shutdown();
+    super.dispose();
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Drops element hiding rules (<code>##</code>, <code>#@#</code>,
+ * <code>#?#</code> and the old <code>#tag(attr=value)</code> syntax) from a
+ * downloaded filter list while it is read, working on the UTF-8 bytes.
+ * <p>
+ * Rules are recognized like adblockpluscore does, so blocking filters that
+ * merely contain <code>#</code>, e.g. <code>||example.com/#ad</code>, are
+ * kept. Kept lines are compacted in place in the download buffer, nothing is
+ * allocated per line.
+ */
+public final class ElemhideStripper
+{
+  private ElemhideStripper()
+  {
+  }
+
+  /**
+   * @param expectedLength initial buffer size, -1 if unknown
+   * @return the kept lines, line endings unchanged
+   */
+  public static ByteBuffer strip(final InputStream in, final int expectedLength) throws IOException
+  {
+    byte[] buffer = new byte[ResponseBuffers.getInitialSize(expectedLength > 0 ? expectedLength : -1)];
+    // kept output is [0, write), the current line starts at lineStart, read data ends at fill
+    int write = 0;
+    int lineStart = 0;
+    int fill = 0;
+
+    while (true)
+    {
+      if (fill == buffer.length)
+      {
+        if (lineStart > write)
+        {
+          System.arraycopy(buffer, lineStart, buffer, write, fill - lineStart);
+          fill -= lineStart - write;
+          lineStart = write;
+        }
+        else
+        {
+          buffer = ResponseBuffers.grow(buffer);
+        }
+      }
+
+      final int read = in.read(buffer, fill, buffer.length - fill);
+      if (read == -1)
+      {
+        break;
+      }
+
+      final int end = fill + read;
+      for (int i = fill; i < end; i++)
+      {
+        if (buffer[i] == '\n')
+        {
+          write = keepLine(buffer, lineStart, i + 1, write);
+          lineStart = i + 1;
+        }
+      }
+      fill = end;
+    }
+
+    // the last line has no line break
+    write = keepLine(buffer, lineStart, fill, write);
+    return ResponseBuffers.wrapTrimmed(buffer, write);
+  }
+
+  private static int keepLine(final byte[] buffer, final int start, final int end, final int write)
+  {
+    if (start == end || isElemhideFilter(buffer, start, end))
+    {
+      return write;
+    }
+    if (write != start)
+    {
+      System.arraycopy(buffer, start, buffer, write, end - start);
+    }
+    return write + end - start;
+  }
+
+  /**
+   * Byte-level equivalent of the element hiding filter regular expression of
+   * adblockpluscore, applied to the line without surrounding whitespace.
+   */
+  static boolean isElemhideFilter(final byte[] line, final int lineStart, final int lineEnd)
+  {
+    int start = lineStart;
+    int end = lineEnd;
+    while (start < end && isWhitespace(line[start]))
+    {
+      start++;
+    }
+    while (end > start && isWhitespace(line[end - 1]))
+    {
+      end--;
+    }
+
+    // domains can't contain any of /*|@"! but may contain #, try every #
+    for (int i = start; i < end; i++)
+    {
+      final byte c = line[i];
+      if (c == '/' || c == '*' || c == '|' || c == '@' || c == '"' || c == '!')
+      {
+        return false;
+      }
+      if (c == '#' && isSelector(line, i + 1, end))
+      {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // what follows the first # of a rule
+  private static boolean isSelector(final byte[] line, final int start, final int end)
+  {
+    int i = start;
+    if (i < end && (line[i] == '@' || line[i] == '?'))
+    {
+      i++;
+    }
+    if (i < end && line[i] == '#')
+    {
+      // ##selector, core parses a selector containing { or } as a blocking filter
+      for (int j = i + 1; j < end; j++)
+      {
+        if (line[j] == '{' || line[j] == '}')
+        {
+          return false;
+        }
+      }
+      return i + 1 < end;
+    }
+    return isOldSyntaxSelector(line, i, end);
+  }
+
+  // tag(attr)(attr=value)... or *(attr)...
+  private static boolean isOldSyntaxSelector(final byte[] line, final int start, final int end)
+  {
+    int i = start;
+    if (i < end && line[i] == '*')
+    {
+      i++;
+    }
+    else
+    {
+      i = skipWordChars(line, i, end);
+      if (i == start)
+      {
+        return false;
+      }
+    }
+
+    while (i < end)
+    {
+      if (line[i] != '(')
+      {
+        return false;
+      }
+      final int name = i + 1;
+      i = skipWordChars(line, name, end);
+      if (i == name || i == end)
+      {
+        return false;
+      }
+      if (line[i] == '$' || line[i] == '^' || line[i] == '*')
+      {
+        i++;
+        if (i == end || line[i] != '=')
+        {
+          return false;
+        }
+      }
+      if (line[i] == '=')
+      {
+        i++;
+        while (i < end && line[i] != '(' && line[i] != ')' && line[i] != '"')
+        {
+          i++;
+        }
+      }
+      if (i == end || line[i] != ')')
+      {
+        return false;
+      }
+      i++;
+    }
+    return true;
+  }
+
+  private static int skipWordChars(final byte[] line, final int start, final int end)
+  {
+    int i = start;
+    while (i < end && isWordChar(line[i]))
+    {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isWordChar(final byte c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+  }
+
+  private static boolean isWhitespace(final byte c)
+  {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.android;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.adblockplus.libadblockplus.HeaderEntry;
+import org.adblockplus.libadblockplus.Logging;
+
+/**
+ * On-disk cache of response bodies with their ETag and Last-Modified
+ * validators, used by {@link AndroidWebRequest} to revalidate downloads with
+ * conditional requests.
+ * <p>
+ * Entries are keyed by URL without the statistics parameters the synchronizer
+ * adds to subscription URLs, other query parameters are kept.
+ */
+public class HttpCache
+{
+  private final static String TAG = Logging.getTag(HttpCache.class);
+  private final static int VERSION = 1;
+  private final static int BUFFER_SIZE = 64 * 1024;
+  // added by the synchronizer of adblockpluscore, change between downloads
+  private final static Set<String> DOWNLOADER_PARAMETERS = new HashSet<String>(Arrays.asList(
+      "addonName", "addonVersion", "application", "applicationVersion", "platform",
+      "platformVersion", "lastVersion", "downloadCount"));
+
+  private final File directory;
+
+  public final static class Entry
+  {
+    private final String url;
+    private final String eTag;
+    private final String lastModified;
+    private final List<HeaderEntry> headers;
+    private final File body;
+
+    private Entry(final String url, final String eTag, final String lastModified,
+        final List<HeaderEntry> headers, final File body)
+    {
+      this.url = url;
+      this.eTag = eTag;
+      this.lastModified = lastModified;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    public String getUrl()
+    {
+      return this.url;
+    }
+
+    /**
+     * @return null if the response had no ETag
+     */
+    public String getETag()
+    {
+      return this.eTag;
+    }
+
+    /**
+     * @return null if the response had no Last-Modified
+     */
+    public String getLastModified()
+    {
+      return this.lastModified;
+    }
+
+    public List<HeaderEntry> getHeaders()
+    {
+      return this.headers;
+    }
+
+    public File getBody()
+    {
+      return this.body;
+    }
+  }
+
+  public HttpCache(final File directory)
+  {
+    this.directory = directory;
+  }
+
+  public File getDirectory()
+  {
+    return this.directory;
+  }
+
+  static String stripDownloaderParameters(final String url)
+  {
+    final int query = url.indexOf('?');
+    if (query == -1)
+    {
+      return url;
+    }
+
+    final int fragment = url.indexOf('#', query);
+    final int queryEnd = fragment != -1 ? fragment : url.length();
+    final StringBuilder stripped = new StringBuilder(url.length()).append(url, 0, query);
+    char separator = '?';
+    int start = query + 1;
+    while (start <= queryEnd)
+    {
+      int end = url.indexOf('&', start);
+      if (end == -1 || end > queryEnd)
+      {
+        end = queryEnd;
+      }
+      final int equals = url.indexOf('=', start);
+      final String name = url.substring(start, equals != -1 && equals < end ? equals : end);
+      if (end > start && !DOWNLOADER_PARAMETERS.contains(name))
+      {
+        stripped.append(separator).append(url, start, end);
+        separator = '&';
+      }
+      start = end + 1;
+    }
+    return stripped.append(url, queryEnd, url.length()).toString();
+  }
+
+  static boolean isCacheable(final String eTag, final String lastModified)
+  {
+    return eTag != null || lastModified != null;
+  }
+
+  /**
+   * @return null if nothing is cached for the URL or the entry is unreadable
+   */
+  public synchronized Entry get(final String url)
+  {
+    final String key = getKey(url);
+    final File meta = new File(this.directory, key + ".meta");
+    final File body = new File(this.directory, key + ".body");
+    if (!meta.exists() || !body.exists())
+    {
+      return null;
+    }
+
+    try
+    {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)));
+      try
+      {
+        if (in.readInt() != VERSION)
+        {
+          return null;
+        }
+        final String entryUrl = in.readUTF();
+        if (!entryUrl.equals(stripDownloaderParameters(url)))
+        {
+          return null;
+        }
+        final String eTag = readOptionalUTF(in);
+        final String lastModified = readOptionalUTF(in);
+        final int headerCount = in.readInt();
+        final List<HeaderEntry> headers = new ArrayList<HeaderEntry>(headerCount);
+        for (int i = 0; i < headerCount; i++)
+        {
+          headers.add(HeaderEntry.of(in.readUTF(), in.readUTF()));
+        }
+        return new Entry(entryUrl, eTag, lastModified, Collections.unmodifiableList(headers), body);
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch (final IOException e)
+    {
+      Logging.w(TAG, "Failed to read cache entry for " + url, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores the body read from the stream, replacing any previous entry once
+   * it has been completely written.
+   *
+   * @return the new entry
+   */
+  public Entry put(final String url, final String eTag, final String lastModified,
+      final List<HeaderEntry> headers, final InputStream body) throws IOException
+  {
+    if (!this.directory.isDirectory() && !this.directory.mkdirs())
+    {
+      throw new IOException("Can't create cache directory " + this.directory);
+    }
+
+    final String key = getKey(url);
+    final File bodyTemp = File.createTempFile(key, ".body.tmp", this.directory);
+    final File metaTemp = File.createTempFile(key, ".meta.tmp", this.directory);
+    try
+    {
+      final OutputStream out = new FileOutputStream(bodyTemp);
+      try
+      {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = body.read(buffer)) != -1)
+        {
+          out.write(buffer, 0, read);
+        }
+      }
+      finally
+      {
+        out.close();
+      }
+
+      final DataOutputStream meta = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metaTemp)));
+      try
+      {
+        meta.writeInt(VERSION);
+        meta.writeUTF(stripDownloaderParameters(url));
+        writeOptionalUTF(meta, eTag);
+        writeOptionalUTF(meta, lastModified);
+        meta.writeInt(headers.size());
+        for (final HeaderEntry header : headers)
+        {
+          meta.writeUTF(header.getKey());
+          meta.writeUTF(header.getValue());
+        }
+      }
+      finally
+      {
+        meta.close();
+      }
+
+      synchronized (this)
+      {
+        final File bodyFile = new File(this.directory, key + ".body");
+        final File metaFile = new File(this.directory, key + ".meta");
+        if (!bodyTemp.renameTo(bodyFile) || !metaTemp.renameTo(metaFile))
+        {
+          metaFile.delete();
+          throw new IOException("Can't store cache entry for " + url);
+        }
+        return new Entry(stripDownloaderParameters(url), eTag, lastModified, Collections.unmodifiableList(headers), bodyFile);
+      }
+    }
+    finally
+    {
+      bodyTemp.delete();
+      metaTemp.delete();
+    }
+  }
+
+  public synchronized void remove(final String url)
+  {
+    final String key = getKey(url);
+    new File(this.directory, key + ".meta").delete();
+    new File(this.directory, key + ".body").delete();
+  }
+
+  private static String getKey(final String url)
+  {
+    try
+    {
+      final byte[] digest = MessageDigest.getInstance("SHA-1").digest(stripDownloaderParameters(url).getBytes("UTF-8"));
+      final StringBuilder key = new StringBuilder(digest.length * 2);
+      for (final byte b : digest)
+      {
+        key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return key.toString();
+    }
+    catch (final NoSuchAlgorithmException e)
+    {
+      throw new IllegalStateException(e);
+    }
+    catch (final IOException e)
+    {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String readOptionalUTF(final DataInputStream in) throws IOException
+  {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeOptionalUTF(final DataOutputStream out, final String value) throws IOException
+  {
+    out.writeBoolean(value != null);
+    if (value != null)
+    {
+      out.writeUTF(value);
+    }
+  }
+}
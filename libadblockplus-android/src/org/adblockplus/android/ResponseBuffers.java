@@ -0,0 +1,70 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.android;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sizing of the arrays response bodies are read into, shared by
+ * {@link AndroidWebRequest} and {@link ElemhideStripper}.
+ */
+final class ResponseBuffers
+{
+  // initial buffer size for responses without Content-Length
+  final static int DEFAULT_SIZE = 64 * 1024;
+  // Content-Length is server-controlled, larger bodies grow the buffer as they arrive
+  private final static int MAX_INITIAL_SIZE = 16 * 1024 * 1024;
+  // several times the largest known filter lists
+  private final static int MAX_BODY_SIZE = 64 * 1024 * 1024;
+
+  private ResponseBuffers()
+  {
+  }
+
+  static int getInitialSize(final int expectedLength)
+  {
+    return expectedLength >= 0 ? Math.min(expectedLength, MAX_INITIAL_SIZE) : DEFAULT_SIZE;
+  }
+
+  /**
+   * @throws IOException if the body would exceed the size limit
+   */
+  static byte[] grow(final byte[] buffer) throws IOException
+  {
+    if (buffer.length >= MAX_BODY_SIZE)
+    {
+      throw new IOException("Response body exceeds " + MAX_BODY_SIZE + " bytes");
+    }
+    return Arrays.copyOf(buffer, Math.min(Math.max(buffer.length * 2, DEFAULT_SIZE), MAX_BODY_SIZE));
+  }
+
+  /**
+   * Copies the data into an array of its size if the buffer was overestimated
+   * by more than the default size, e.g. from a wrong Content-Length or doubling.
+   */
+  static ByteBuffer wrapTrimmed(final byte[] buffer, final int length)
+  {
+    if (buffer.length - length > DEFAULT_SIZE)
+    {
+      return ByteBuffer.wrap(Arrays.copyOf(buffer, length));
+    }
+    return ByteBuffer.wrap(buffer, 0, length);
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Future completed by the first of: the operation's result or error, or a
+ * fallback value once the deadline has passed. The optional callback is
+ * invoked exactly once.
+ */
+final class DeadlineFuture<T> implements Future<T>
+{
+  private final static ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1,
+      new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(final Runnable runnable)
+        {
+          final Thread thread = new Thread(runnable, "FilterEngineDeadlines");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  // setRemoveOnCancelPolicy() needs API 21, purge cancelled deadlines in batches instead
+  private final static int PURGE_INTERVAL = 256;
+  private final static AtomicInteger CANCELLED_DEADLINES = new AtomicInteger(0);
+
+  private final FilterEngineThread.Callback<T> callback;
+  private final AtomicBoolean completed = new AtomicBoolean(false);
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile T result;
+  private volatile Throwable error;
+  private volatile boolean cancelled;
+  private volatile ScheduledFuture<?> deadline;
+
+  DeadlineFuture(final FilterEngineThread.Callback<T> callback)
+  {
+    this.callback = callback;
+  }
+
+  /**
+   * Completes with <code>fallback</code> after <code>timeoutMillis</code>,
+   * immediately if it's not positive.
+   */
+  void setDeadline(final long timeoutMillis, final T fallback)
+  {
+    if (timeoutMillis <= 0)
+    {
+      complete(fallback);
+      return;
+    }
+
+    this.deadline = DEADLINES.schedule(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        complete(fallback);
+      }
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+    if (isDone())
+    {
+      cancelDeadline();
+    }
+  }
+
+  private void cancelDeadline()
+  {
+    final ScheduledFuture<?> deadline = this.deadline;
+    if (deadline != null && deadline.cancel(false)
+        && CANCELLED_DEADLINES.incrementAndGet() % PURGE_INTERVAL == 0)
+    {
+      DEADLINES.purge();
+    }
+  }
+
+  boolean complete(final T result)
+  {
+    if (!this.completed.compareAndSet(false, true))
+    {
+      return false;
+    }
+    this.result = result;
+    this.done.countDown();
+    cancelDeadline();
+    if (this.callback != null)
+    {
+      this.callback.onResult(result);
+    }
+    return true;
+  }
+
+  boolean fail(final Throwable error)
+  {
+    if (!this.completed.compareAndSet(false, true))
+    {
+      return false;
+    }
+    this.error = error;
+    this.done.countDown();
+    cancelDeadline();
+    if (this.callback != null)
+    {
+      this.callback.onError(error);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean cancel(final boolean mayInterruptIfRunning)
+  {
+    this.cancelled = true;
+    if (fail(new CancellationException()))
+    {
+      return true;
+    }
+    this.cancelled = false;
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled()
+  {
+    return this.cancelled;
+  }
+
+  @Override
+  public boolean isDone()
+  {
+    return this.completed.get();
+  }
+
+  @Override
+  public T get() throws InterruptedException, ExecutionException
+  {
+    this.done.await();
+    return getResult();
+  }
+
+  @Override
+  public T get(final long timeout, final TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    if (!this.done.await(timeout, unit))
+    {
+      throw new TimeoutException();
+    }
+    return getResult();
+  }
+
+  private T getResult() throws ExecutionException
+  {
+    if (this.error instanceof CancellationException)
+    {
+      throw (CancellationException) this.error;
+    }
+    if (this.error != null)
+    {
+      throw new ExecutionException(this.error);
+    }
+    return this.result;
+  }
+}
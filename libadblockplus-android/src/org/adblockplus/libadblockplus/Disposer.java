@@ -19,13 +19,60 @@ package org.adblockplus.libadblockplus;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Disposes the native object of a wrapper explicitly or, once the wrapper
+ * became unreachable, on the cleaner thread.
+ * <p>
+ * Registered disposers are kept reachable in intrusive lists, striped by the
+ * registering thread, so wrappers created and disposed on different threads
+ * don't contend for one lock and registering allocates nothing.
+ * <p>
+ * The cleaner drains everything waiting in the reference queue at once and
+ * frees native objects that support it with one native call per batch, see
+ * the cleaner statistics for how far it falls behind.
+ * <p>
+ * Live wrappers are counted per class. In leak detection mode the allocation
+ * site of every n-th wrapper is recorded and reported if the wrapper is
+ * collected without being disposed.
+ */
 public final class Disposer extends WeakReference<Disposable>
 {
   static final ReferenceQueue<Disposable> referenceQueue = new ReferenceQueue<Disposable>();
-  private static final HashSet<Disposer> disposerSet = new HashSet<Disposer>();
+  private static final Stripe[] stripes = createStripes();
+  private static final int BATCH_SIZE = 256;
+  // written by the cleaner thread only
+  private static volatile long cleanedCount;
+  private static volatile int lastDrainDepth;
+  private static volatile int maxDrainDepth;
+  private static volatile long lastDrainNanos;
+  private static volatile long maxDrainNanos;
+  private static final ConcurrentHashMap<Class<?>, AtomicInteger> liveCounts =
+      new ConcurrentHashMap<Class<?>, AtomicInteger>();
+  private static final int LEAK_SITE_FRAMES = 8;
+  private static volatile int leakSampleInterval;
+  // racy, only spreads the samples
+  private static int leakSampleCounter;
+  // guarded by itself
+  private static final HashMap<List<StackTraceElement>, LeakSite> leakSites =
+      new HashMap<List<StackTraceElement>, LeakSite>();
   private final Disposable disposable;
+  private final Stripe stripe;
+  private final AtomicInteger liveCount;
+  // allocation site, if sampled for leak detection
+  private final Throwable site;
+  // guarded by stripe
+  private Disposer prev;
+  private Disposer next;
   private volatile boolean disposed = false;
 
   static
@@ -36,15 +83,51 @@ public final class Disposer extends WeakReference<Disposable>
     thread.start();
   }
 
+  /**
+   * Frees native objects of one type by pointer.
+   */
+  interface BatchRelease
+  {
+    void release(long[] ptrs, int count);
+  }
+
+  /**
+   * Disposes a native object the cleaner can free together with others of
+   * its type.
+   */
+  interface BatchDisposable extends Disposable
+  {
+    long getPtr();
+
+    BatchRelease getBatchRelease();
+  }
+
   public Disposer(final Disposable referent, final Disposable disposable)
   {
     super(referent, referenceQueue);
     this.disposable = disposable;
+    this.stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    this.stripe.add(this);
+
+    this.liveCount = getLiveCount(referent.getClass());
+    this.liveCount.incrementAndGet();
+    final int sampleInterval = leakSampleInterval;
+    this.site = sampleInterval > 0 && leakSampleCounter++ % sampleInterval == 0 ? new Throwable() : null;
+  }
 
-    synchronized (disposerSet)
+  private static AtomicInteger getLiveCount(final Class<?> clazz)
+  {
+    AtomicInteger count = liveCounts.get(clazz);
+    if (count == null)
     {
-      disposerSet.add(this);
+      final AtomicInteger newCount = new AtomicInteger();
+      count = liveCounts.putIfAbsent(clazz, newCount);
+      if (count == null)
+      {
+        count = newCount;
+      }
     }
+    return count;
   }
 
   public synchronized void dispose()
@@ -61,15 +144,281 @@ public final class Disposer extends WeakReference<Disposable>
       }
 
       this.disposed = true;
-      synchronized (disposerSet)
+      this.stripe.remove(this);
+      this.liveCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Marks this disposed without disposing, for the cleaner and
+   * {@link JsScope} that free native objects in batches.
+   *
+   * @return what to dispose, null if disposed already
+   */
+  synchronized Disposable detach()
+  {
+    if (this.disposed)
+    {
+      return null;
+    }
+    this.disposed = true;
+    this.stripe.remove(this);
+    this.liveCount.decrementAndGet();
+    return this.disposable;
+  }
+
+  /**
+   * @return number of objects disposed by the cleaner
+   */
+  public static long getCleanedCount()
+  {
+    return cleanedCount;
+  }
+
+  /**
+   * @return number of collected wrappers that were waiting when the cleaner
+   *         last drained the reference queue
+   */
+  public static int getLastDrainDepth()
+  {
+    return lastDrainDepth;
+  }
+
+  public static int getMaxDrainDepth()
+  {
+    return maxDrainDepth;
+  }
+
+  /**
+   * @return time the cleaner took to dispose everything it last drained
+   */
+  public static long getLastDrainNanos()
+  {
+    return lastDrainNanos;
+  }
+
+  public static long getMaxDrainNanos()
+  {
+    return maxDrainNanos;
+  }
+
+  /**
+   * @return number of wrappers neither disposed nor collected yet, per
+   *         wrapper class, e.g. {@link Filter}
+   */
+  public static Map<Class<?>, Integer> getLiveCounts()
+  {
+    final Map<Class<?>, Integer> counts = new HashMap<Class<?>, Integer>();
+    for (final Map.Entry<Class<?>, AtomicInteger> entry : liveCounts.entrySet())
+    {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return counts;
+  }
+
+  /**
+   * Records the allocation site of every n-th wrapper created from now on,
+   * collected sites are kept until leak detection is disabled.
+   *
+   * @param sampleInterval 1 to record every wrapper, 0 to disable
+   */
+  public static void setLeakDetection(final int sampleInterval)
+  {
+    if (sampleInterval < 0)
+    {
+      throw new IllegalArgumentException("Sample interval must not be negative");
+    }
+    leakSampleInterval = sampleInterval;
+    if (sampleInterval == 0)
+    {
+      synchronized (leakSites)
       {
-        disposerSet.remove(this);
+        leakSites.clear();
+      }
+    }
+  }
+
+  /**
+   * @return allocation sites of sampled wrappers that were collected without
+   *         being disposed, most frequent first
+   */
+  public static List<LeakSite> getTopLeakSites(final int max)
+  {
+    final List<LeakSite> sites;
+    synchronized (leakSites)
+    {
+      sites = new ArrayList<LeakSite>(leakSites.size());
+      for (final LeakSite site : leakSites.values())
+      {
+        sites.add(new LeakSite(site.frames, site.count));
+      }
+    }
+    Collections.sort(sites, new Comparator<LeakSite>()
+    {
+      @Override
+      public int compare(final LeakSite a, final LeakSite b)
+      {
+        return a.count > b.count ? -1 : (a.count == b.count ? 0 : 1);
+      }
+    });
+    return sites.size() > max ? sites.subList(0, max) : sites;
+  }
+
+  private static void recordLeak(final Throwable site)
+  {
+    final StackTraceElement[] stackTrace = site.getStackTrace();
+    // skip the constructors down to the code creating the wrapper
+    int start = 0;
+    while (start < stackTrace.length - 1
+        && (stackTrace[start].getClassName().equals(Disposer.class.getName())
+            || stackTrace[start].getMethodName().equals("<init>")))
+    {
+      start++;
+    }
+    final List<StackTraceElement> frames = Arrays.asList(
+        Arrays.copyOfRange(stackTrace, start, Math.min(stackTrace.length, start + LEAK_SITE_FRAMES)));
+
+    synchronized (leakSites)
+    {
+      final LeakSite leakSite = leakSites.get(frames);
+      if (leakSite != null)
+      {
+        leakSite.count++;
+      }
+      else
+      {
+        leakSites.put(frames, new LeakSite(frames, 1));
+      }
+    }
+  }
+
+  public static final class LeakSite
+  {
+    private final List<StackTraceElement> frames;
+    private int count;
+
+    LeakSite(final List<StackTraceElement> frames, final int count)
+    {
+      this.frames = frames;
+      this.count = count;
+    }
+
+    /**
+     * @return innermost frames of the allocation, starting where the wrapper
+     *         was created
+     */
+    public List<StackTraceElement> getFrames()
+    {
+      return this.frames;
+    }
+
+    /**
+     * @return number of sampled wrappers from this site that leaked
+     */
+    public int getCount()
+    {
+      return this.count;
+    }
+
+    @Override
+    public String toString()
+    {
+      final StringBuilder sb = new StringBuilder();
+      sb.append(this.count).append(" leaked");
+      for (final StackTraceElement frame : this.frames)
+      {
+        sb.append("\n\tat ").append(frame);
+      }
+      return sb.toString();
+    }
+  }
+
+  private static Stripe[] createStripes()
+  {
+    // power of two, enough for the threads of a few engines
+    final int wanted = Math.min(Runtime.getRuntime().availableProcessors() * 4, 64);
+    int count = 1;
+    while (count < wanted)
+    {
+      count <<= 1;
+    }
+
+    final Stripe[] stripes = new Stripe[count];
+    for (int i = 0; i < count; i++)
+    {
+      stripes[i] = new Stripe();
+    }
+    return stripes;
+  }
+
+  private static final class Stripe
+  {
+    private Disposer head;
+
+    synchronized void add(final Disposer disposer)
+    {
+      disposer.next = this.head;
+      if (this.head != null)
+      {
+        this.head.prev = disposer;
+      }
+      this.head = disposer;
+    }
+
+    synchronized void remove(final Disposer disposer)
+    {
+      if (disposer.prev != null)
+      {
+        disposer.prev.next = disposer.next;
+      }
+      else
+      {
+        this.head = disposer.next;
+      }
+      if (disposer.next != null)
+      {
+        disposer.next.prev = disposer.prev;
+      }
+      disposer.prev = null;
+      disposer.next = null;
+    }
+  }
+
+  private static final class Batch
+  {
+    private final BatchRelease release;
+    private final long[] ptrs = new long[BATCH_SIZE];
+    private int count;
+
+    Batch(final BatchRelease release)
+    {
+      this.release = release;
+    }
+
+    void add(final long ptr)
+    {
+      this.ptrs[this.count++] = ptr;
+      if (this.count == BATCH_SIZE)
+      {
+        flush();
+      }
+    }
+
+    void flush()
+    {
+      if (this.count > 0)
+      {
+        final int count = this.count;
+        this.count = 0;
+        this.release.release(this.ptrs, count);
       }
     }
   }
 
   private static final class Cleaner implements Runnable
   {
+    private final ArrayList<Batch> batches = new ArrayList<Batch>();
+
     public Cleaner()
     {
       //
@@ -82,7 +431,7 @@ public final class Disposer extends WeakReference<Disposable>
       {
         try
         {
-          ((Disposer) Disposer.referenceQueue.remove()).dispose();
+          drain((Disposer) Disposer.referenceQueue.remove());
         }
         catch (final Throwable t)
         {
@@ -90,5 +439,77 @@ public final class Disposer extends WeakReference<Disposable>
         }
       }
     }
+
+    private Batch getBatch(final BatchRelease release)
+    {
+      for (final Batch batch : this.batches)
+      {
+        if (batch.release == release)
+        {
+          return batch;
+        }
+      }
+      final Batch batch = new Batch(release);
+      this.batches.add(batch);
+      return batch;
+    }
+
+    private void drain(final Disposer first)
+    {
+      final long start = System.nanoTime();
+      int depth = 0;
+      int cleaned = 0;
+      try
+      {
+        for (Disposer disposer = first; disposer != null; disposer = (Disposer) Disposer.referenceQueue.poll())
+        {
+          depth++;
+          try
+          {
+            final Disposable disposable = disposer.detach();
+            if (disposable != null && disposer.site != null && leakSampleInterval > 0)
+            {
+              recordLeak(disposer.site);
+            }
+            if (disposable instanceof BatchDisposable)
+            {
+              final BatchDisposable batchDisposable = (BatchDisposable) disposable;
+              getBatch(batchDisposable.getBatchRelease()).add(batchDisposable.getPtr());
+              cleaned++;
+            }
+            else if (disposable != null)
+            {
+              cleaned++;
+              disposable.dispose();
+            }
+          }
+          catch (final Throwable t)
+          {
+            // ignored, as for explicit disposal
+          }
+        }
+      }
+      finally
+      {
+        for (final Batch batch : this.batches)
+        {
+          try
+          {
+            batch.flush();
+          }
+          catch (final Throwable t)
+          {
+            // ignored
+          }
+        }
+
+        final long nanos = System.nanoTime() - start;
+        cleanedCount += cleaned;
+        lastDrainDepth = depth;
+        maxDrainDepth = Math.max(maxDrainDepth, depth);
+        lastDrainNanos = nanos;
+        maxDrainNanos = Math.max(maxDrainNanos, nanos);
+      }
+    }
   }
 }
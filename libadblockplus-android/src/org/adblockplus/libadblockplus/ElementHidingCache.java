@@ -0,0 +1,202 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element hiding selectors by domain in front of a {@link FilterEngine},
+ * bounded by the estimated memory used by the cached selectors.
+ * <p>
+ * Returned lists are immutable and shared between callers. The cache is
+ * flushed on every filter or subscription change, see {@link MatchCache} on
+ * how to keep receiving these changes.
+ */
+public final class ElementHidingCache implements Disposable
+{
+  // rough per-object costs on a 32 bit VM: String with its char array, list slot
+  private final static int STRING_OVERHEAD = 40;
+  private final static int REFERENCE_SIZE = 4;
+  private final static int ENTRY_OVERHEAD = 64;
+
+  private final FilterEngine filterEngine;
+  private final long maxMemory;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final FilterChangeListeners.Listener listener;
+  private long memory = 0;
+  private long generation = 0;
+  private long hitCount = 0;
+  private long missCount = 0;
+
+  private final static class Entry
+  {
+    final List<String> selectors;
+    final long memory;
+
+    Entry(final String domain, final List<String> selectors)
+    {
+      this.selectors = Collections.unmodifiableList(selectors);
+      long memory = ENTRY_OVERHEAD + STRING_OVERHEAD + 2 * domain.length();
+      for (final String selector : selectors)
+      {
+        memory += REFERENCE_SIZE + STRING_OVERHEAD + 2 * selector.length();
+      }
+      this.memory = memory;
+    }
+  }
+
+  public ElementHidingCache(final FilterEngine filterEngine, final long maxMemory)
+  {
+    this(filterEngine, maxMemory, null);
+  }
+
+  /**
+   * @param maxMemory estimated memory in bytes the cached selectors may use
+   */
+  public ElementHidingCache(final FilterEngine filterEngine, final long maxMemory,
+      final FilterChangeCallback filterChangeCallback)
+  {
+    if (maxMemory <= 0)
+    {
+      throw new IllegalArgumentException("maxMemory must be positive");
+    }
+
+    this.filterEngine = filterEngine;
+    this.maxMemory = maxMemory;
+    this.listener = FilterChangeListeners.forwarding(new FilterChangeListeners.Listener()
+    {
+      @Override
+      public void filterChanged(final String action, final JsValue jsValue)
+      {
+        invalidate();
+      }
+    }, filterChangeCallback);
+    filterEngine.getFilterChangeListeners().add(this.listener);
+  }
+
+  public List<String> getElementHidingSelectors(final String domain)
+  {
+    final long keyGeneration;
+
+    synchronized (this.entries)
+    {
+      final Entry cached = this.entries.get(domain);
+      if (cached != null)
+      {
+        this.hitCount++;
+        return cached.selectors;
+      }
+      this.missCount++;
+      keyGeneration = this.generation;
+    }
+
+    final Entry entry = new Entry(domain, this.filterEngine.getElementHidingSelectors(domain));
+
+    synchronized (this.entries)
+    {
+      // don't store selectors computed against filters changed in the meantime
+      if (keyGeneration == this.generation && entry.memory <= this.maxMemory)
+      {
+        final Entry previous = this.entries.put(domain, entry);
+        if (previous != null)
+        {
+          this.memory -= previous.memory;
+        }
+        this.memory += entry.memory;
+        evict();
+      }
+    }
+
+    return entry.selectors;
+  }
+
+  public void invalidate()
+  {
+    synchronized (this.entries)
+    {
+      this.generation++;
+      this.entries.clear();
+      this.memory = 0;
+    }
+  }
+
+  public int size()
+  {
+    synchronized (this.entries)
+    {
+      return this.entries.size();
+    }
+  }
+
+  /**
+   * @return estimated memory in bytes used by the cached selectors
+   */
+  public long getMemory()
+  {
+    synchronized (this.entries)
+    {
+      return this.memory;
+    }
+  }
+
+  public long getMaxMemory()
+  {
+    return this.maxMemory;
+  }
+
+  public long getHitCount()
+  {
+    synchronized (this.entries)
+    {
+      return this.hitCount;
+    }
+  }
+
+  public long getMissCount()
+  {
+    synchronized (this.entries)
+    {
+      return this.missCount;
+    }
+  }
+
+  /**
+   * Detaches the cache from the engine.
+   */
+  @Override
+  public void dispose()
+  {
+    this.filterEngine.getFilterChangeListeners().remove(this.listener);
+    invalidate();
+  }
+
+  // drops least recently used domains until the cache fits
+  private void evict()
+  {
+    final Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+    while (this.memory > this.maxMemory && iterator.hasNext())
+    {
+      this.memory -= iterator.next().getValue().memory;
+      iterator.remove();
+    }
+  }
+}
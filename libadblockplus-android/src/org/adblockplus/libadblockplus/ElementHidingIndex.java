@@ -0,0 +1,480 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Element hiding selectors split into the generic ones applying to every
+ * domain and the per-domain rest, following ElemHide of adblockpluscore.
+ * <p>
+ * Generic selectors without exceptions are joined into a style sheet once per
+ * filter list version, so per page only the domain-specific selectors have to
+ * be looked up. For any domain the generic selectors and the domain selectors
+ * together are the selectors {@link FilterEngine#getElementHidingSelectors}
+ * returns. After filters or subscriptions changed the index is rebuilt from
+ * the filters of the engine in the background, calls keep getting the
+ * previous version until the rebuild finished, see {@link #update()}.
+ * <p>
+ * Like {@link MatchCache} the index listens to the engine next to the other
+ * components, a callback passed to the constructor receives the changes after
+ * the index.
+ */
+public final class ElementHidingIndex implements Disposable
+{
+  private final static Pattern ELEMHIDE_FILTER =
+      Pattern.compile("^([^/*|@\"!]*?)#(@)?(?:([\\w-]+|\\*)((?:\\([\\w-]+(?:[$^*]?=[^()\"]*)?\\))*)|#([^{}]+))$");
+  private final static Pattern ATTRIBUTE_RULE = Pattern.compile("\\([\\w-]+(?:[$^*]?=[^()\"]*)?\\)");
+  private final static Pattern EMPTY_DOMAIN = Pattern.compile("(^|,)~?(,|$)");
+
+  // shared by all indexes, rebuilds are rare
+  private final static ExecutorService REBUILDS = Executors.newSingleThreadExecutor(new ThreadFactory()
+  {
+    @Override
+    public Thread newThread(final Runnable runnable)
+    {
+      final Thread thread = new Thread(runnable, "ElementHidingIndexRebuild");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  private final FilterEngine filterEngine;
+  private final FilterChangeListeners.Listener listener;
+  private final Object rebuildLock = new Object();
+  private volatile Snapshot snapshot;
+  private volatile boolean stale = true;
+  private volatile long generation = 0;
+  private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+  private boolean disposed = false;
+
+  private final static class Rule
+  {
+    final String selector;
+    final HashMap<String, Boolean> domains;
+    final boolean exception;
+
+    Rule(final String selector, final HashMap<String, Boolean> domains, final boolean exception)
+    {
+      this.selector = selector;
+      this.domains = domains;
+      this.exception = exception;
+    }
+
+    /**
+     * @return null for filters other than element hiding and exception filters
+     */
+    static Rule fromText(final String text)
+    {
+      final Matcher matcher = ELEMHIDE_FILTER.matcher(text);
+      if (!matcher.matches())
+      {
+        return null;
+      }
+
+      final String domainSource = matcher.group(1);
+      if (domainSource.length() > 0 && EMPTY_DOMAIN.matcher(domainSource).find())
+      {
+        return null;
+      }
+
+      String selector = matcher.group(5);
+      if (selector == null)
+      {
+        selector = toSelector(matcher.group(3), matcher.group(4));
+        if (selector == null)
+        {
+          return null;
+        }
+      }
+
+      return new Rule(selector,
+          domainSource.length() > 0 ? RequestFilter.parseDomains(domainSource, ",") : null,
+          matcher.group(2) != null);
+    }
+
+    // old syntax, e.g. example.com#div(id=foo)
+    private static String toSelector(final String tagName, final String attributeRules)
+    {
+      final String tag = tagName.equals("*") ? "" : tagName;
+      String id = null;
+      final StringBuilder additional = new StringBuilder();
+      final Matcher rules = ATTRIBUTE_RULE.matcher(attributeRules);
+      while (rules.find())
+      {
+        final String rule = rules.group().substring(1, rules.group().length() - 1);
+        final int separator = rule.indexOf('=');
+        if (separator > 0)
+        {
+          additional.append('[').append(rule, 0, separator + 1).append('"')
+              .append(rule, separator + 1, rule.length()).append("\"]");
+        }
+        else if (id != null)
+        {
+          return null;
+        }
+        else
+        {
+          id = rule;
+        }
+      }
+
+      if (id != null)
+      {
+        return tag + "." + id + additional + "," + tag + "#" + id + additional;
+      }
+      if (tag.length() > 0 || additional.length() > 0)
+      {
+        return tag + additional;
+      }
+      return null;
+    }
+
+    boolean isGeneric()
+    {
+      return this.domains == null || this.domains.get("");
+    }
+  }
+
+  private final static class Snapshot
+  {
+    final List<String> genericSelectors;
+    final String genericStyleSheet;
+    // rules by the domains they include, rules applying to unlisted domains by ""
+    final HashMap<String, ArrayList<Rule>> rulesByDomain;
+    final HashMap<String, ArrayList<Rule>> exceptions;
+    final int filterCount;
+
+    Snapshot(final List<String> genericSelectors, final HashMap<String, ArrayList<Rule>> rulesByDomain,
+        final HashMap<String, ArrayList<Rule>> exceptions, final int filterCount)
+    {
+      this.genericSelectors = Collections.unmodifiableList(genericSelectors);
+      this.genericStyleSheet = joinStyleSheet(genericSelectors, FilterEngine.DEFAULT_SELECTOR_GROUP_SIZE);
+      this.rulesByDomain = rulesByDomain;
+      this.exceptions = exceptions;
+      this.filterCount = filterCount;
+    }
+
+    boolean isExcepted(final Rule rule, final String domain)
+    {
+      final ArrayList<Rule> exceptions = this.exceptions.get(rule.selector);
+      if (exceptions != null)
+      {
+        for (final Rule exception : exceptions)
+        {
+          if (RequestFilter.isActiveOnDomain(exception.domains, domain))
+          {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+  public ElementHidingIndex(final FilterEngine filterEngine)
+  {
+    this(filterEngine, null);
+  }
+
+  public ElementHidingIndex(final FilterEngine filterEngine, final FilterChangeCallback filterChangeCallback)
+  {
+    this.filterEngine = filterEngine;
+    this.listener = FilterChangeListeners.forwarding(new FilterChangeListeners.Listener()
+    {
+      @Override
+      public void filterChanged(final String action, final JsValue jsValue)
+      {
+        if (action.equals("load") || action.startsWith("filter.")
+            || action.equals("subscription.added") || action.equals("subscription.removed")
+            || action.equals("subscription.disabled") || action.equals("subscription.updated"))
+        {
+          generation++;
+          stale = true;
+        }
+      }
+    }, filterChangeCallback);
+    filterEngine.getFilterChangeListeners().add(this.listener);
+  }
+
+  /**
+   * @return generic selectors without exceptions, the same list until the
+   *         filters change
+   */
+  public List<String> getGenericSelectors()
+  {
+    return getSnapshot().genericSelectors;
+  }
+
+  /**
+   * {@link #getGenericSelectors()} as a style sheet like
+   * {@link FilterEngine#getElementHidingStyleSheet(String)}, the same instance
+   * until the filters change.
+   */
+  public String getGenericStyleSheet()
+  {
+    return getSnapshot().genericStyleSheet;
+  }
+
+  /**
+   * @return selectors applying to the domain in addition to
+   *         {@link #getGenericSelectors()}
+   */
+  public List<String> getDomainSelectors(final String domain)
+  {
+    final Snapshot snapshot = getSnapshot();
+    final String docDomain = RequestFilter.stripTrailingDots(
+        domain != null ? domain.toLowerCase(Locale.ENGLISH) : "");
+
+    final List<String> selectors = new ArrayList<String>();
+    final HashSet<Rule> seen = new HashSet<Rule>();
+    String current = docDomain;
+    while (true)
+    {
+      if (current.length() > 0)
+      {
+        addSelectors(snapshot, snapshot.rulesByDomain.get(current), docDomain, seen, selectors);
+      }
+      final int nextDot = current.indexOf('.');
+      if (nextDot < 0)
+      {
+        break;
+      }
+      current = current.substring(nextDot + 1);
+    }
+    addSelectors(snapshot, snapshot.rulesByDomain.get(""), docDomain, seen, selectors);
+    return selectors;
+  }
+
+  public String getDomainStyleSheet(final String domain)
+  {
+    return joinStyleSheet(getDomainSelectors(domain), FilterEngine.DEFAULT_SELECTOR_GROUP_SIZE);
+  }
+
+  /**
+   * @return number of element hiding and exception filters
+   */
+  public int getFilterCount()
+  {
+    return getSnapshot().filterCount;
+  }
+
+  /**
+   * Rebuilds the index now if filters or subscriptions changed, so following
+   * calls see the changes. Blocks while the engine is read.
+   */
+  public void update()
+  {
+    rebuild();
+  }
+
+  /**
+   * Detaches the index from the engine, waiting for a running rebuild. The
+   * getters keep serving the last built version, they throw
+   * {@link IllegalStateException} if none was built yet.
+   */
+  @Override
+  public void dispose()
+  {
+    this.filterEngine.getFilterChangeListeners().remove(this.listener);
+    synchronized (this.rebuildLock)
+    {
+      this.disposed = true;
+    }
+  }
+
+  /**
+   * Same output as the native style sheet of
+   * {@link FilterEngine#getElementHidingStyleSheet(String, int)}.
+   */
+  static String joinStyleSheet(final List<String> selectors, final int selectorGroupSize)
+  {
+    final StringBuilder styleSheet = new StringBuilder();
+    for (int i = 0; i < selectors.size(); i++)
+    {
+      styleSheet.append(selectors.get(i));
+      if ((i + 1) % selectorGroupSize == 0 || i + 1 == selectors.size())
+      {
+        styleSheet.append(" {display: none !important;}\n");
+      }
+      else
+      {
+        styleSheet.append(", ");
+      }
+    }
+    return styleSheet.toString();
+  }
+
+  private static void addSelectors(final Snapshot snapshot, final ArrayList<Rule> rules, final String domain,
+      final HashSet<Rule> seen, final List<String> selectors)
+  {
+    if (rules == null)
+    {
+      return;
+    }
+    for (final Rule rule : rules)
+    {
+      if (seen.add(rule)
+          && RequestFilter.isActiveOnDomain(rule.domains, domain)
+          && !snapshot.isExcepted(rule, domain))
+      {
+        selectors.add(rule.selector);
+      }
+    }
+  }
+
+  private static void add(final HashMap<String, ArrayList<Rule>> map, final String key, final Rule rule)
+  {
+    ArrayList<Rule> rules = map.get(key);
+    if (rules == null)
+    {
+      rules = new ArrayList<Rule>();
+      map.put(key, rules);
+    }
+    rules.add(rule);
+  }
+
+  private static Snapshot build(final Set<String> texts, final Set<String> disabled)
+  {
+    final ArrayList<Rule> rules = new ArrayList<Rule>();
+    final HashMap<String, ArrayList<Rule>> exceptions = new HashMap<String, ArrayList<Rule>>();
+    int exceptionCount = 0;
+    for (final String text : texts)
+    {
+      final Rule rule = disabled.contains(text) ? null : Rule.fromText(text);
+      if (rule != null)
+      {
+        if (rule.exception)
+        {
+          add(exceptions, rule.selector, rule);
+          exceptionCount++;
+        }
+        else
+        {
+          rules.add(rule);
+        }
+      }
+    }
+
+    final List<String> genericSelectors = new ArrayList<String>();
+    final HashMap<String, ArrayList<Rule>> rulesByDomain = new HashMap<String, ArrayList<Rule>>();
+    for (final Rule rule : rules)
+    {
+      if (rule.domains == null && !exceptions.containsKey(rule.selector))
+      {
+        genericSelectors.add(rule.selector);
+      }
+      else if (rule.isGeneric())
+      {
+        add(rulesByDomain, "", rule);
+      }
+      else
+      {
+        for (final Map.Entry<String, Boolean> domain : rule.domains.entrySet())
+        {
+          if (domain.getValue())
+          {
+            add(rulesByDomain, domain.getKey(), rule);
+          }
+        }
+      }
+    }
+
+    return new Snapshot(genericSelectors, rulesByDomain, exceptions, rules.size() + exceptionCount);
+  }
+
+  private Snapshot getSnapshot()
+  {
+    final Snapshot snapshot = this.snapshot;
+    if (snapshot == null)
+    {
+      rebuild();
+      final Snapshot built = this.snapshot;
+      if (built == null)
+      {
+        // disposed before the first build
+        throw new IllegalStateException("ElementHidingIndex is disposed");
+      }
+      return built;
+    }
+    if (this.stale)
+    {
+      scheduleRebuild();
+    }
+    return snapshot;
+  }
+
+  private void scheduleRebuild()
+  {
+    if (this.rebuildScheduled.compareAndSet(false, true))
+    {
+      REBUILDS.execute(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          rebuildScheduled.set(false);
+          rebuild();
+        }
+      });
+    }
+  }
+
+  private void rebuild()
+  {
+    synchronized (this.rebuildLock)
+    {
+      if (!this.stale || this.disposed)
+      {
+        return;
+      }
+      this.stale = false;
+      final long startGeneration = this.generation;
+
+      final HashSet<String> disabled = new HashSet<String>();
+      try
+      {
+        final HashMap<String, Integer> counts = ListedFilters.collect(this.filterEngine, disabled);
+        this.snapshot = build(counts.keySet(), disabled);
+      }
+      catch (final RuntimeException e)
+      {
+        this.stale = true;
+        throw e;
+      }
+      // changes in the meantime may be missing from the snapshot
+      if (this.generation != startGeneration)
+      {
+        this.stale = true;
+      }
+    }
+  }
+}
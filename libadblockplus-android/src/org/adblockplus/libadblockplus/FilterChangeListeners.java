@@ -0,0 +1,90 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The single native filter change callback of a {@link FilterEngine}, fanning
+ * every filter or subscription change out to the registered listeners and to
+ * the callback set with
+ * {@link FilterEngine#setFilterChangeCallback(FilterChangeCallback)}.
+ * Components sharing an engine each add their own listener.
+ */
+final class FilterChangeListeners extends FilterChangeCallback
+{
+  interface Listener
+  {
+    void filterChanged(String action, JsValue jsValue);
+  }
+
+  private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private volatile FilterChangeCallback userCallback;
+
+  void add(final Listener listener)
+  {
+    this.listeners.add(listener);
+  }
+
+  void remove(final Listener listener)
+  {
+    this.listeners.remove(listener);
+  }
+
+  void setUserCallback(final FilterChangeCallback callback)
+  {
+    this.userCallback = callback;
+  }
+
+  /**
+   * Listener running <code>listener</code> and then forwarding the change to
+   * <code>next</code>, if any.
+   */
+  static Listener forwarding(final Listener listener, final FilterChangeCallback next)
+  {
+    if (next == null)
+    {
+      return listener;
+    }
+
+    return new Listener()
+    {
+      @Override
+      public void filterChanged(final String action, final JsValue jsValue)
+      {
+        listener.filterChanged(action, jsValue);
+        next.filterChangeCallback(action, jsValue);
+      }
+    };
+  }
+
+  @Override
+  public void filterChangeCallback(final String action, final JsValue jsValue)
+  {
+    for (final Listener listener : this.listeners)
+    {
+      listener.filterChanged(action, jsValue);
+    }
+
+    final FilterChangeCallback callback = this.userCallback;
+    if (callback != null)
+    {
+      callback.filterChangeCallback(action, jsValue);
+    }
+  }
+}
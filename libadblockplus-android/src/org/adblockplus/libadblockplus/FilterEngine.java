@@ -17,12 +17,19 @@
 
 package org.adblockplus.libadblockplus;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 public final class FilterEngine implements Disposable
 {
   private final Disposer disposer;
   protected final long ptr;
+  private FilterEngineThread asyncThread;
+  private boolean disposed = false;
+  private FilterChangeListeners filterChangeListeners;
 
   static
   {
@@ -30,12 +37,27 @@ public final class FilterEngine implements Disposable
     registerNatives();
   }
 
+  // ordinals are passed to JNI, keep in sync with JniFilterEngine.cpp
   public static enum ContentType
   {
     OTHER, SCRIPT, IMAGE, STYLESHEET, OBJECT, SUBDOCUMENT, DOCUMENT, XMLHTTPREQUEST,
     OBJECT_SUBREQUEST, FONT, MEDIA
   }
 
+  // ordinals are returned from JNI, keep in sync with JniFilterEngine.cpp
+  public static enum MatchDecision
+  {
+    NO_MATCH, BLOCK, ALLOW
+  }
+
+  private final static MatchDecision[] MATCH_DECISIONS = MatchDecision.values();
+
+  /**
+   * Selectors per rule in element hiding style sheets, browsers drop rules
+   * with too many selectors.
+   */
+  public final static int DEFAULT_SELECTOR_GROUP_SIZE = 1024;
+
   public FilterEngine(final JsEngine jsEngine)
   {
     this.ptr = ctor(jsEngine.ptr);
@@ -84,12 +106,31 @@ public final class FilterEngine implements Disposable
 
   public void removeFilterChangeCallback()
   {
-    removeFilterChangeCallback(this.ptr);
+    getFilterChangeListeners().setUserCallback(null);
   }
 
+  /**
+   * Sets the callback notified of filter and subscription changes, replacing
+   * the previous one. Caches and matchers attached to this engine keep
+   * receiving the changes.
+   */
   public void setFilterChangeCallback(final FilterChangeCallback callback)
   {
-    setFilterChangeCallback(this.ptr, callback.ptr);
+    getFilterChangeListeners().setUserCallback(callback);
+  }
+
+  /**
+   * Registry fanning filter changes out to every component attached to this
+   * engine, installed as the native callback on first use.
+   */
+  synchronized FilterChangeListeners getFilterChangeListeners()
+  {
+    if (this.filterChangeListeners == null)
+    {
+      this.filterChangeListeners = new FilterChangeListeners();
+      setFilterChangeCallback(this.ptr, this.filterChangeListeners.ptr);
+    }
+    return this.filterChangeListeners;
   }
 
   public void forceUpdateCheck()
@@ -107,6 +148,40 @@ public final class FilterEngine implements Disposable
     return getElementHidingSelectors(this.ptr, domain);
   }
 
+  public String getElementHidingStyleSheet(final String domain)
+  {
+    return getElementHidingStyleSheet(domain, DEFAULT_SELECTOR_GROUP_SIZE);
+  }
+
+  /**
+   * Element hiding selectors for the domain joined into CSS rules hiding the
+   * matched elements, at most <code>selectorGroupSize</code> selectors per rule.
+   * Empty if no selectors apply.
+   */
+  public String getElementHidingStyleSheet(final String domain, final int selectorGroupSize)
+  {
+    checkSelectorGroupSize(selectorGroupSize);
+    return getElementHidingStyleSheet(this.ptr, domain, selectorGroupSize);
+  }
+
+  /**
+   * Same as {@link #getElementHidingStyleSheet(String, int)}, as UTF-8 in a
+   * direct buffer ready to be written out.
+   */
+  public ByteBuffer getElementHidingStyleSheetBuffer(final String domain, final int selectorGroupSize)
+  {
+    checkSelectorGroupSize(selectorGroupSize);
+    return getElementHidingStyleSheetBuffer(this.ptr, domain, selectorGroupSize);
+  }
+
+  private static void checkSelectorGroupSize(final int selectorGroupSize)
+  {
+    if (selectorGroupSize <= 0)
+    {
+      throw new IllegalArgumentException("selectorGroupSize must be positive");
+    }
+  }
+
   public void showNextNotification(final String url)
   {
     showNextNotification(this.ptr, url);
@@ -129,12 +204,54 @@ public final class FilterEngine implements Disposable
 
   public Filter matches(final String url, final ContentType contentType, final String documentUrl)
   {
-    return matches(this.ptr, url, contentType, documentUrl);
+    return matches(this.ptr, url, contentType.ordinal(), documentUrl);
   }
 
   public Filter matches(final String url, final ContentType contentType, final String[] documentUrls)
   {
-    return matches(this.ptr, url, contentType, documentUrls);
+    return matches(this.ptr, url, contentType.ordinal(), documentUrls);
+  }
+
+  public MatchDecision matchDecision(final String url, final ContentType contentType, final String documentUrl)
+  {
+    return MATCH_DECISIONS[matchDecision(this.ptr, url, contentType.ordinal(), documentUrl)];
+  }
+
+  public MatchDecision matchDecision(final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    return MATCH_DECISIONS[matchDecision(this.ptr, url, contentType.ordinal(), documentUrls)];
+  }
+
+  public MatchResult matchResult(final String url, final ContentType contentType, final String documentUrl)
+  {
+    return matchResult(this.ptr, url, contentType.ordinal(), documentUrl);
+  }
+
+  public MatchResult matchResult(final String url, final ContentType contentType, final String[] documentUrls)
+  {
+    return matchResult(this.ptr, url, contentType.ordinal(), documentUrls);
+  }
+
+  /**
+   * Matches all requests in one native call. {@code documentUrls} may be {@code null},
+   * otherwise all arrays must be of the same length.
+   *
+   * @return matching filter (or {@code null}) for each request, in input order
+   */
+  public Filter[] matchesBatch(final String[] urls, final ContentType[] contentTypes, final String[][] documentUrls)
+  {
+    if (urls.length != contentTypes.length || (documentUrls != null && urls.length != documentUrls.length))
+    {
+      throw new IllegalArgumentException("Batch arrays must be of the same length");
+    }
+
+    final int[] contentTypeOrdinals = new int[contentTypes.length];
+    for (int i = 0; i < contentTypes.length; i++)
+    {
+      contentTypeOrdinals[i] = contentTypes[i].ordinal();
+    }
+
+    return matchesBatch(this.ptr, urls, contentTypeOrdinals, documentUrls);
   }
 
   public boolean isDocumentWhitelisted(String url, String[] documentUrls)
@@ -147,6 +264,100 @@ public final class FilterEngine implements Disposable
     return isElemhideWhitelisted(this.ptr, url, documentUrls);
   }
 
+  /**
+   * Matches on an internal engine thread without blocking the caller. If the
+   * decision isn't available within {@code timeoutMillis}, {@code fallback} is
+   * returned instead: {@code NO_MATCH} to fail open, {@code BLOCK} to fail
+   * closed. {@code callback} may be {@code null}, it's invoked exactly once.
+   */
+  public Future<MatchDecision> matchesAsync(final String url, final ContentType contentType,
+      final String documentUrl, final long timeoutMillis, final MatchDecision fallback,
+      final FilterEngineThread.Callback<MatchDecision> callback)
+  {
+    return matchesAsync(url, contentType, new String[] { documentUrl }, timeoutMillis, fallback, callback);
+  }
+
+  public Future<MatchDecision> matchesAsync(final String url, final ContentType contentType,
+      final String[] documentUrls, final long timeoutMillis, final MatchDecision fallback,
+      final FilterEngineThread.Callback<MatchDecision> callback)
+  {
+    return submitAsync(new Callable<MatchDecision>()
+    {
+      @Override
+      public MatchDecision call()
+      {
+        return matchDecision(url, contentType, documentUrls);
+      }
+    }, timeoutMillis, fallback, callback);
+  }
+
+  /**
+   * Like {@link #matchesAsync}, an empty list is returned once the deadline
+   * has passed.
+   */
+  public Future<List<String>> getElementHidingSelectorsAsync(final String domain, final long timeoutMillis,
+      final FilterEngineThread.Callback<List<String>> callback)
+  {
+    return submitAsync(new Callable<List<String>>()
+    {
+      @Override
+      public List<String> call()
+      {
+        return getElementHidingSelectors(domain);
+      }
+    }, timeoutMillis, Collections.<String>emptyList(), callback);
+  }
+
+  private synchronized FilterEngineThread getAsyncThread()
+  {
+    if (this.disposed)
+    {
+      throw new IllegalStateException("FilterEngine is disposed");
+    }
+    if (this.asyncThread == null)
+    {
+      this.asyncThread = new FilterEngineThread(this);
+    }
+    return this.asyncThread;
+  }
+
+  private <T> Future<T> submitAsync(final Callable<T> callable, final long timeoutMillis, final T fallback,
+      final FilterEngineThread.Callback<T> callback)
+  {
+    // throws on a disposed engine before a deadline could invoke the callback
+    final FilterEngineThread asyncThread = getAsyncThread();
+    final DeadlineFuture<T> future = new DeadlineFuture<T>(callback);
+    future.setDeadline(timeoutMillis, fallback);
+    if (future.isDone())
+    {
+      return future;
+    }
+
+    asyncThread.submit(new Callable<T>()
+    {
+      @Override
+      public T call() throws Exception
+      {
+        // the deadline passed while queued, don't bother the engine
+        return future.isDone() ? null : callable.call();
+      }
+    }, new FilterEngineThread.Callback<T>()
+    {
+      @Override
+      public void onResult(final T result)
+      {
+        future.complete(result);
+      }
+
+      @Override
+      public void onError(final Throwable t)
+      {
+        future.fail(t);
+      }
+    });
+    return future;
+  }
+
   public JsValue getPref(final String pref)
   {
     return getPref(this.ptr, pref);
@@ -160,7 +371,29 @@ public final class FilterEngine implements Disposable
   @Override
   public void dispose()
   {
+    final FilterEngineThread asyncThread;
+    synchronized (this)
+    {
+      this.disposed = true;
+      asyncThread = this.asyncThread;
+      this.asyncThread = null;
+    }
+    // joins the thread, a queued call may still need the lock
+    if (asyncThread != null)
+    {
+      asyncThread.dispose();
+    }
     this.disposer.dispose();
+
+    // the native engine held a raw pointer to it, release it only afterwards
+    synchronized (this)
+    {
+      if (this.filterChangeListeners != null)
+      {
+        this.filterChangeListeners.dispose();
+        this.filterChangeListeners = null;
+      }
+    }
   }
 
   private final static class DisposeWrapper implements Disposable
@@ -207,6 +440,10 @@ public final class FilterEngine implements Disposable
 
   private final static native List<String> getElementHidingSelectors(long ptr, String domain);
 
+  private final static native String getElementHidingStyleSheet(long ptr, String domain, int selectorGroupSize);
+
+  private final static native ByteBuffer getElementHidingStyleSheetBuffer(long ptr, String domain, int selectorGroupSize);
+
   private final static native void showNextNotification(long ptr, String url);
 
   private final static native void setShowNotificationCallback(long ptr, long callbackPtr);
@@ -215,9 +452,19 @@ public final class FilterEngine implements Disposable
 
   private final static native JsValue getPref(long ptr, String pref);
 
-  private final static native Filter matches(long ptr, String url, ContentType contentType, String documentUrl);
+  private final static native Filter matches(long ptr, String url, int contentType, String documentUrl);
+
+  private final static native Filter matches(long ptr, String url, int contentType, String[] documentUrls);
+
+  private final static native int matchDecision(long ptr, String url, int contentType, String documentUrl);
+
+  private final static native int matchDecision(long ptr, String url, int contentType, String[] documentUrls);
+
+  private final static native MatchResult matchResult(long ptr, String url, int contentType, String documentUrl);
+
+  private final static native MatchResult matchResult(long ptr, String url, int contentType, String[] documentUrls);
 
-  private final static native Filter matches(long ptr, String url, ContentType contentType, String[] documentUrls);
+  private final static native Filter[] matchesBatch(long ptr, String[] urls, int[] contentTypes, String[][] documentUrls);
 
   private final static native boolean isDocumentWhitelisted(long ptr, String url, String[] documentUrls);
 
@@ -0,0 +1,507 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Several {@link FilterEngine} instances, each with its own {@link JsEngine},
+ * answering matching calls in parallel.
+ * <p>
+ * The first engine is the primary one: change filters and subscriptions
+ * through {@link #getPrimary()}, the changes are mirrored to the other engines
+ * before the call returns. Only the primary engine downloads subscriptions,
+ * the filters it downloads are copied to the other engines. Those get a web
+ * request failing every request instead of the one set by the factory and
+ * their automatic subscription updates are turned off. The pool listens to
+ * the primary engine like {@link MatchCache}, a callback passed to the
+ * constructor receives the changes after they were mirrored.
+ */
+public final class FilterEnginePool implements Disposable
+{
+  /**
+   * Creates the configured JS engines of the pool, every engine needs its
+   * own file system base path.
+   */
+  public interface JsEngineFactory
+  {
+    JsEngine createJsEngine(int index);
+  }
+
+  // download schedule of a subscription, copied along with its filters
+  private final static String[] COPIED_SUBSCRIPTION_PROPERTIES =
+  {
+    "lastDownload", "lastSuccess", "lastCheck", "expires", "softExpiration"
+  };
+
+  private final JsEngine[] jsEngines;
+  private final FilterEngine[] filterEngines;
+  private final AtomicIntegerArray queueDepths;
+  private final FilterChangeListeners.Listener listener;
+  private final WebRequest offlineWebRequest = new OfflineWebRequest();
+
+  // lets the secondary engines fail their own downloads right away
+  private final static class OfflineWebRequest extends WebRequest
+  {
+    @Override
+    public ServerResponse httpGET(final String url, final List<HeaderEntry> headers)
+    {
+      final ServerResponse response = new ServerResponse();
+      response.setStatus(ServerResponse.NsStatus.ERROR_FAILURE);
+      return response;
+    }
+  }
+
+  public FilterEnginePool(final int size, final JsEngineFactory factory)
+  {
+    this(size, factory, null);
+  }
+
+  public FilterEnginePool(final int size, final JsEngineFactory factory,
+      final FilterChangeCallback filterChangeCallback)
+  {
+    if (size <= 0)
+    {
+      throw new IllegalArgumentException("size must be positive");
+    }
+
+    this.jsEngines = new JsEngine[size];
+    this.filterEngines = new FilterEngine[size];
+    this.queueDepths = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++)
+    {
+      this.jsEngines[i] = factory.createJsEngine(i);
+      if (i > 0)
+      {
+        // set before the engine starts, which may download the first-run subscription
+        this.jsEngines[i].setWebRequest(this.offlineWebRequest);
+      }
+      this.filterEngines[i] = new FilterEngine(this.jsEngines[i]);
+    }
+    for (int i = 1; i < size; i++)
+    {
+      final JsValue autoUpdate = this.jsEngines[i].newValue(false);
+      this.filterEngines[i].setPref("subscriptions_autoupdate", autoUpdate);
+      autoUpdate.dispose();
+      synchronize(i);
+    }
+
+    this.listener = FilterChangeListeners.forwarding(new FilterChangeListeners.Listener()
+    {
+      @Override
+      public void filterChanged(final String action, final JsValue jsValue)
+      {
+        mirror(action, jsValue);
+      }
+    }, filterChangeCallback);
+    getPrimary().getFilterChangeListeners().add(this.listener);
+  }
+
+  public FilterEngine getPrimary()
+  {
+    return this.filterEngines[0];
+  }
+
+  public int getSize()
+  {
+    return this.filterEngines.length;
+  }
+
+  public FilterEngine getFilterEngine(final int index)
+  {
+    return this.filterEngines[index];
+  }
+
+  /**
+   * @return number of calls running or waiting on the engine
+   */
+  public int getQueueDepth(final int index)
+  {
+    return this.queueDepths.get(index);
+  }
+
+  public int[] getQueueDepths()
+  {
+    final int[] depths = new int[this.filterEngines.length];
+    for (int i = 0; i < depths.length; i++)
+    {
+      depths[i] = this.queueDepths.get(i);
+    }
+    return depths;
+  }
+
+  public Filter matches(final String url, final FilterEngine.ContentType contentType, final String documentUrl)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].matches(url, contentType, documentUrl);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public Filter matches(final String url, final FilterEngine.ContentType contentType, final String[] documentUrls)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].matches(url, contentType, documentUrls);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public FilterEngine.MatchDecision matchDecision(final String url, final FilterEngine.ContentType contentType,
+      final String documentUrl)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].matchDecision(url, contentType, documentUrl);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public FilterEngine.MatchDecision matchDecision(final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].matchDecision(url, contentType, documentUrls);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public MatchResult matchResult(final String url, final FilterEngine.ContentType contentType,
+      final String documentUrl)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].matchResult(url, contentType, documentUrl);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public MatchResult matchResult(final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].matchResult(url, contentType, documentUrls);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public boolean isDocumentWhitelisted(final String url, final String[] documentUrls)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].isDocumentWhitelisted(url, documentUrls);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public boolean isElemhideWhitelisted(final String url, final String[] documentUrls)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].isElemhideWhitelisted(url, documentUrls);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  public List<String> getElementHidingSelectors(final String domain)
+  {
+    final int index = acquire();
+    try
+    {
+      return this.filterEngines[index].getElementHidingSelectors(domain);
+    }
+    finally
+    {
+      release(index);
+    }
+  }
+
+  @Override
+  public void dispose()
+  {
+    getPrimary().getFilterChangeListeners().remove(this.listener);
+    for (int i = 0; i < this.filterEngines.length; i++)
+    {
+      this.filterEngines[i].dispose();
+      this.jsEngines[i].dispose();
+    }
+    this.offlineWebRequest.dispose();
+  }
+
+  // picks the engine with the fewest calls in flight
+  private int acquire()
+  {
+    int best = 0;
+    int bestDepth = Integer.MAX_VALUE;
+    for (int i = 0; i < this.filterEngines.length; i++)
+    {
+      final int depth = this.queueDepths.get(i);
+      if (depth < bestDepth)
+      {
+        best = i;
+        bestDepth = depth;
+        if (depth == 0)
+        {
+          break;
+        }
+      }
+    }
+    this.queueDepths.incrementAndGet(best);
+    return best;
+  }
+
+  private void release(final int index)
+  {
+    this.queueDepths.decrementAndGet(index);
+  }
+
+  private void mirror(final String action, final JsValue jsValue)
+  {
+    if (action.equals("filter.added") || action.equals("filter.removed"))
+    {
+      final String text = ListedFilters.getStringProperty(jsValue, "text");
+      for (int i = 1; i < this.filterEngines.length; i++)
+      {
+        final Filter filter = this.filterEngines[i].getFilter(text);
+        if (action.equals("filter.added"))
+        {
+          filter.addToList();
+        }
+        else
+        {
+          filter.removeFromList();
+        }
+        filter.dispose();
+      }
+    }
+    else if (action.equals("filter.disabled"))
+    {
+      final String script = "require('filterClasses').Filter.fromText("
+          + quote(ListedFilters.getStringProperty(jsValue, "text")) + ").disabled = "
+          + ListedFilters.getBooleanProperty(jsValue, "disabled");
+      evaluateOnSecondaries(script);
+    }
+    else if (action.equals("subscription.disabled"))
+    {
+      final String script = "require('subscriptionClasses').Subscription.fromURL("
+          + quote(ListedFilters.getStringProperty(jsValue, "url")) + ").disabled = "
+          + ListedFilters.getBooleanProperty(jsValue, "disabled");
+      evaluateOnSecondaries(script);
+    }
+    else if (action.equals("subscription.added") || action.equals("subscription.updated"))
+    {
+      final String url = ListedFilters.getStringProperty(jsValue, "url");
+      // special subscriptions holding user filters follow the filter changes
+      if (!url.startsWith("~"))
+      {
+        evaluateOnSecondaries(copySubscriptionScript(url, jsValue));
+      }
+    }
+    else if (action.equals("subscription.removed"))
+    {
+      final String url = ListedFilters.getStringProperty(jsValue, "url");
+      if (!url.startsWith("~"))
+      {
+        for (int i = 1; i < this.filterEngines.length; i++)
+        {
+          final Subscription subscription = this.filterEngines[i].getSubscription(url);
+          subscription.removeFromList();
+          subscription.dispose();
+        }
+      }
+    }
+  }
+
+  /**
+   * Script listing the subscription on an engine with the download schedule
+   * and, once downloaded, the filters of the primary engine's copy. Unlike
+   * {@link Subscription#addToList()} adding it through FilterStorage doesn't
+   * start a download.
+   */
+  private static String copySubscriptionScript(final String url, final JsValue subscription)
+  {
+    final StringBuilder script = new StringBuilder();
+    script.append("(function(url, texts, properties)\n")
+        .append("{\n")
+        .append("  var FilterStorage = require('filterStorage').FilterStorage;\n")
+        .append("  var Filter = require('filterClasses').Filter;\n")
+        .append("  var subscription = require('subscriptionClasses').Subscription.fromURL(url);\n")
+        .append("  for (var name in properties)\n")
+        .append("    subscription[name] = properties[name];\n")
+        .append("  FilterStorage.addSubscription(subscription);\n")
+        .append("  if (!texts)\n")
+        .append("    return;\n")
+        .append("  var filters = [];\n")
+        .append("  for (var i = 0; i < texts.length; i++)\n")
+        .append("    filters.push(Filter.fromText(texts[i]));\n")
+        .append("  FilterStorage.updateSubscriptionFilters(subscription, filters);\n")
+        .append("})(").append(quote(url)).append(", ");
+
+    boolean first = true;
+    final JsValue lastDownload = subscription.getProperty("lastDownload");
+    final boolean downloaded = lastDownload.isNumber() && lastDownload.asLong() > 0;
+    lastDownload.dispose();
+    if (downloaded)
+    {
+      script.append('[');
+      final JsValue filters = subscription.getProperty("filters");
+      for (final JsValue filter : filters.asList())
+      {
+        if (!first)
+        {
+          script.append(',');
+        }
+        first = false;
+        script.append(quote(ListedFilters.getStringProperty(filter, "text")));
+        filter.dispose();
+      }
+      filters.dispose();
+      script.append(']');
+    }
+    else
+    {
+      script.append("null");
+    }
+
+    script.append(", {disabled:").append(ListedFilters.getBooleanProperty(subscription, "disabled"));
+    for (final String name : COPIED_SUBSCRIPTION_PROPERTIES)
+    {
+      final JsValue property = subscription.getProperty(name);
+      if (property.isNumber())
+      {
+        script.append(',').append(name).append(':').append(property.asLong());
+      }
+      property.dispose();
+    }
+    return script.append("})").toString();
+  }
+
+  private void evaluateOnSecondaries(final String script)
+  {
+    for (int i = 1; i < this.jsEngines.length; i++)
+    {
+      this.jsEngines[i].evaluate(script).dispose();
+    }
+  }
+
+  // JavaScript string literal
+  private static String quote(final String value)
+  {
+    final StringBuilder quoted = new StringBuilder(value.length() + 2);
+    quoted.append('"');
+    for (int i = 0; i < value.length(); i++)
+    {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\')
+      {
+        quoted.append('\\').append(c);
+      }
+      else if (c < 0x20 || c == '\u2028' || c == '\u2029')
+      {
+        quoted.append("\\u").append(Integer.toHexString(c | 0x10000).substring(1));
+      }
+      else
+      {
+        quoted.append(c);
+      }
+    }
+    return quoted.append('"').toString();
+  }
+
+  // makes the listed subscriptions and filters of an engine match the primary one
+  private void synchronize(final int index)
+  {
+    final FilterEngine filterEngine = this.filterEngines[index];
+    final Set<String> urls = new HashSet<String>();
+    for (final Subscription subscription : getPrimary().getListedSubscriptions())
+    {
+      final String url = ListedFilters.getStringProperty(subscription, "url");
+      urls.add(url);
+      // also replaces the filters of subscriptions both engines list, e.g. the first-run one
+      this.jsEngines[index].evaluate(copySubscriptionScript(url, subscription)).dispose();
+      subscription.dispose();
+    }
+    for (final Subscription subscription : filterEngine.getListedSubscriptions())
+    {
+      if (!urls.contains(ListedFilters.getStringProperty(subscription, "url")))
+      {
+        subscription.removeFromList();
+      }
+      subscription.dispose();
+    }
+
+    final Set<String> texts = new HashSet<String>();
+    for (final Filter filter : getPrimary().getListedFilters())
+    {
+      texts.add(ListedFilters.getStringProperty(filter, "text"));
+      filter.dispose();
+    }
+    for (final Filter filter : filterEngine.getListedFilters())
+    {
+      if (!texts.remove(ListedFilters.getStringProperty(filter, "text")))
+      {
+        filter.removeFromList();
+      }
+      filter.dispose();
+    }
+    for (final String text : texts)
+    {
+      final Filter filter = filterEngine.getFilter(text);
+      filter.addToList();
+      filter.dispose();
+    }
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs all calls to a {@link FilterEngine} on one dedicated engine thread.
+ * <p>
+ * Callers on any thread submit operations through a lock-free queue and get a
+ * {@link Future} or a {@link Callback} invoked on the engine thread. Calls made
+ * on the engine thread itself, e.g. from a callback, run directly. Disposing
+ * stops the thread and cancels pending operations, the engine itself is left
+ * to the caller.
+ */
+public final class FilterEngineThread implements Disposable
+{
+  private final static String TAG = Logging.getTag(FilterEngineThread.class);
+
+  public interface Callback<T>
+  {
+    void onResult(T result);
+
+    void onError(Throwable t);
+  }
+
+  private final FilterEngine filterEngine;
+  private final ConcurrentLinkedQueue<FutureTask<?>> queue = new ConcurrentLinkedQueue<FutureTask<?>>();
+  private final Thread thread;
+  private volatile boolean running = true;
+  private volatile boolean parked = false;
+
+  public FilterEngineThread(final FilterEngine filterEngine)
+  {
+    this.filterEngine = filterEngine;
+    this.thread = new Thread(new Runnable()
+    {
+      @Override
+      public void run()
+      {
+        loop();
+      }
+    }, "FilterEngineThread");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  public FilterEngine getFilterEngine()
+  {
+    return this.filterEngine;
+  }
+
+  public boolean isEngineThread()
+  {
+    return Thread.currentThread() == this.thread;
+  }
+
+  public <T> Future<T> submit(final Callable<T> callable)
+  {
+    return enqueue(new FutureTask<T>(callable));
+  }
+
+  public <T> Future<T> submit(final Callable<T> callable, final Callback<T> callback)
+  {
+    return enqueue(new FutureTask<T>(callable)
+    {
+      @Override
+      protected void done()
+      {
+        try
+        {
+          callback.onResult(get());
+        }
+        catch (final ExecutionException e)
+        {
+          callback.onError(e.getCause());
+        }
+        catch (final CancellationException e)
+        {
+          callback.onError(e);
+        }
+        catch (final InterruptedException e)
+        {
+          callback.onError(e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Runs the operation on the engine thread and waits for the result.
+   */
+  public <T> T invoke(final Callable<T> callable)
+  {
+    if (isEngineThread())
+    {
+      try
+      {
+        return callable.call();
+      }
+      catch (final RuntimeException e)
+      {
+        throw e;
+      }
+      catch (final Exception e)
+      {
+        throw new AdblockPlusException(e);
+      }
+    }
+
+    final Future<T> future = submit(callable);
+    try
+    {
+      return future.get();
+    }
+    catch (final ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+      {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AdblockPlusException(e.getCause());
+    }
+    catch (final InterruptedException e)
+    {
+      future.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new AdblockPlusException(e);
+    }
+  }
+
+  public Future<Filter> matches(final String url, final FilterEngine.ContentType contentType,
+      final String documentUrl)
+  {
+    return submit(new Callable<Filter>()
+    {
+      @Override
+      public Filter call()
+      {
+        return FilterEngineThread.this.filterEngine.matches(url, contentType, documentUrl);
+      }
+    });
+  }
+
+  public Future<Filter> matches(final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls)
+  {
+    return submit(new Callable<Filter>()
+    {
+      @Override
+      public Filter call()
+      {
+        return FilterEngineThread.this.filterEngine.matches(url, contentType, documentUrls);
+      }
+    });
+  }
+
+  public Future<FilterEngine.MatchDecision> matchDecision(final String url,
+      final FilterEngine.ContentType contentType, final String documentUrl)
+  {
+    return submit(new Callable<FilterEngine.MatchDecision>()
+    {
+      @Override
+      public FilterEngine.MatchDecision call()
+      {
+        return FilterEngineThread.this.filterEngine.matchDecision(url, contentType, documentUrl);
+      }
+    });
+  }
+
+  public Future<FilterEngine.MatchDecision> matchDecision(final String url,
+      final FilterEngine.ContentType contentType, final String[] documentUrls)
+  {
+    return submit(new Callable<FilterEngine.MatchDecision>()
+    {
+      @Override
+      public FilterEngine.MatchDecision call()
+      {
+        return FilterEngineThread.this.filterEngine.matchDecision(url, contentType, documentUrls);
+      }
+    });
+  }
+
+  public Future<Boolean> isDocumentWhitelisted(final String url, final String[] documentUrls)
+  {
+    return submit(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return FilterEngineThread.this.filterEngine.isDocumentWhitelisted(url, documentUrls);
+      }
+    });
+  }
+
+  public Future<Boolean> isElemhideWhitelisted(final String url, final String[] documentUrls)
+  {
+    return submit(new Callable<Boolean>()
+    {
+      @Override
+      public Boolean call()
+      {
+        return FilterEngineThread.this.filterEngine.isElemhideWhitelisted(url, documentUrls);
+      }
+    });
+  }
+
+  public Future<List<String>> getElementHidingSelectors(final String domain)
+  {
+    return submit(new Callable<List<String>>()
+    {
+      @Override
+      public List<String> call()
+      {
+        return FilterEngineThread.this.filterEngine.getElementHidingSelectors(domain);
+      }
+    });
+  }
+
+  public Future<JsValue> getPref(final String pref)
+  {
+    return submit(new Callable<JsValue>()
+    {
+      @Override
+      public JsValue call()
+      {
+        return FilterEngineThread.this.filterEngine.getPref(pref);
+      }
+    });
+  }
+
+  public Future<Void> setPref(final String pref, final JsValue value)
+  {
+    return submit(new Callable<Void>()
+    {
+      @Override
+      public Void call()
+      {
+        FilterEngineThread.this.filterEngine.setPref(pref, value);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void dispose()
+  {
+    this.running = false;
+    LockSupport.unpark(this.thread);
+    if (!isEngineThread())
+    {
+      try
+      {
+        this.thread.join();
+      }
+      catch (final InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private <T> Future<T> enqueue(final FutureTask<T> task)
+  {
+    if (isEngineThread())
+    {
+      // fast path, queueing would deadlock callers waiting for the result
+      task.run();
+      return task;
+    }
+
+    this.queue.offer(task);
+    if (!this.running)
+    {
+      cancelPending();
+    }
+    else if (this.parked)
+    {
+      LockSupport.unpark(this.thread);
+    }
+    return task;
+  }
+
+  private void cancelPending()
+  {
+    FutureTask<?> task;
+    while ((task = this.queue.poll()) != null)
+    {
+      task.cancel(false);
+    }
+  }
+
+  private void loop()
+  {
+    while (this.running)
+    {
+      final FutureTask<?> task = this.queue.poll();
+      if (task == null)
+      {
+        this.parked = true;
+        // re-check after publishing the flag, producers unpark only when it's set
+        if (this.queue.isEmpty() && this.running)
+        {
+          LockSupport.park(this);
+        }
+        this.parked = false;
+        continue;
+      }
+
+      try
+      {
+        task.run();
+      }
+      catch (final Throwable t)
+      {
+        // thrown from a callback, the operation itself is captured by the task
+        Logging.e(TAG, "Callback failed", t);
+      }
+    }
+    cancelPending();
+  }
+}
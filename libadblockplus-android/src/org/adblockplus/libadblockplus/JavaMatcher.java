@@ -0,0 +1,439 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Evaluates blocking and exception filters in Java, without entering JNI or
+ * the JavaScript engine on the matching path.
+ * <p>
+ * The filters of all enabled subscriptions and the listed (user) filters are
+ * compiled into a keyword index, following the matcher of adblockpluscore.
+ * Added, removed and disabled filters are applied incrementally, subscription
+ * changes trigger a full rebuild on the next match call. Third-party checks
+ * use a small subset of the public suffix list, so results can differ from
+ * {@link FilterEngine} for hosts under suffixes missing from it.
+ * <p>
+ * Like {@link MatchCache} the matcher listens to the engine next to the
+ * other components, a callback passed to the constructor receives the changes
+ * after the matcher.
+ */
+public final class JavaMatcher implements Disposable
+{
+  // multi-label public suffixes, anything else is treated as a one-label suffix
+  private final static Set<String> PUBLIC_SUFFIXES = new HashSet<String>(Arrays.asList(
+    "ac.uk", "co.uk", "gov.uk", "ltd.uk", "me.uk", "net.uk", "nhs.uk", "org.uk", "plc.uk", "sch.uk",
+    "asn.au", "com.au", "edu.au", "gov.au", "id.au", "net.au", "org.au",
+    "ac.nz", "co.nz", "geek.nz", "gen.nz", "govt.nz", "net.nz", "org.nz", "school.nz",
+    "ac.jp", "co.jp", "go.jp", "ne.jp", "or.jp",
+    "ac.kr", "co.kr", "go.kr", "ne.kr", "or.kr",
+    "ac.in", "co.in", "firm.in", "gen.in", "gov.in", "net.in", "org.in",
+    "ac.za", "co.za", "gov.za", "net.za", "org.za",
+    "ac.il", "co.il", "gov.il", "org.il",
+    "ac.th", "co.th", "go.th", "in.th", "or.th",
+    "co.id", "go.id", "or.id", "web.id",
+    "co.ke", "or.ke",
+    "co.at", "or.at",
+    "com.ar", "com.br", "com.cn", "com.co", "com.eg", "com.hk", "com.mx", "com.my", "com.ng",
+    "com.pe", "com.ph", "com.pk", "com.pl", "com.sa", "com.sg", "com.tr", "com.tw", "com.ua",
+    "com.ve", "com.vn",
+    "gov.br", "net.br", "org.br",
+    "gov.cn", "net.cn", "org.cn",
+    "edu.hk", "org.hk",
+    "net.pl", "org.pl",
+    "gen.tr", "net.tr", "org.tr",
+    "org.mx", "org.tw"));
+
+  private final FilterEngine filterEngine;
+  private final FilterChangeListeners.Listener listener;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Object rebuildLock = new Object();
+  private KeywordIndex blacklist = new KeywordIndex();
+  private KeywordIndex whitelist = new KeywordIndex();
+  // occurrences of each filter text in enabled subscriptions
+  private HashMap<String, Integer> filterCounts = new HashMap<String, Integer>();
+  private volatile boolean stale = true;
+  private volatile long generation = 0;
+
+  public JavaMatcher(final FilterEngine filterEngine)
+  {
+    this(filterEngine, null);
+  }
+
+  public JavaMatcher(final FilterEngine filterEngine, final FilterChangeCallback filterChangeCallback)
+  {
+    this.filterEngine = filterEngine;
+    this.listener = FilterChangeListeners.forwarding(new FilterChangeListeners.Listener()
+    {
+      @Override
+      public void filterChanged(final String action, final JsValue jsValue)
+      {
+        onFilterChange(action, jsValue);
+      }
+    }, filterChangeCallback);
+    filterEngine.getFilterChangeListeners().add(this.listener);
+    rebuild();
+  }
+
+  public MatchResult matches(final String url, final FilterEngine.ContentType contentType, final String documentUrl)
+  {
+    return matches(url, contentType, new String[] { documentUrl });
+  }
+
+  /**
+   * Same semantics as {@link FilterEngine#matches(String, FilterEngine.ContentType, String[])},
+   * null <code>documentUrls</code> are treated as empty.
+   */
+  public MatchResult matches(final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls)
+  {
+    if (this.stale)
+    {
+      rebuild();
+    }
+
+    this.lock.readLock().lock();
+    try
+    {
+      final int typeMask = RequestFilter.toTypeMask(contentType);
+      if (documentUrls == null || documentUrls.length == 0)
+      {
+        return toResult(check(url, typeMask, ""));
+      }
+
+      String lastDocumentUrl = documentUrls[0];
+      for (final String documentUrl : documentUrls)
+      {
+        final RequestFilter match = check(documentUrl, RequestFilter.TYPE_DOCUMENT, lastDocumentUrl);
+        if (match != null && match.isException())
+        {
+          return match.result;
+        }
+        lastDocumentUrl = documentUrl;
+      }
+      return toResult(check(url, typeMask, lastDocumentUrl));
+    }
+    finally
+    {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  public FilterEngine.MatchDecision matchDecision(final String url, final FilterEngine.ContentType contentType,
+      final String documentUrl)
+  {
+    final MatchResult result = matches(url, contentType, documentUrl);
+    return result != null ? result.getDecision() : FilterEngine.MatchDecision.NO_MATCH;
+  }
+
+  public FilterEngine.MatchDecision matchDecision(final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls)
+  {
+    final MatchResult result = matches(url, contentType, documentUrls);
+    return result != null ? result.getDecision() : FilterEngine.MatchDecision.NO_MATCH;
+  }
+
+  /**
+   * @return number of compiled blocking and exception filters
+   */
+  public int getFilterCount()
+  {
+    if (this.stale)
+    {
+      rebuild();
+    }
+
+    this.lock.readLock().lock();
+    try
+    {
+      return this.blacklist.size() + this.whitelist.size();
+    }
+    finally
+    {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void dispose()
+  {
+    this.filterEngine.getFilterChangeListeners().remove(this.listener);
+  }
+
+  private static MatchResult toResult(final RequestFilter filter)
+  {
+    return filter != null ? filter.result : null;
+  }
+
+  private RequestFilter check(final String location, final int typeMask, final String documentUrl)
+  {
+    final boolean checkWhitelist = this.whitelist.mayMatch(typeMask);
+    final boolean checkBlacklist = this.blacklist.mayMatch(typeMask);
+    if (!checkWhitelist && !checkBlacklist)
+    {
+      return null;
+    }
+
+    // domain options are stored without the trailing dot of absolute names
+    final String docDomain = RequestFilter.stripTrailingDots(extractHost(documentUrl));
+    final boolean thirdParty = isThirdParty(extractHost(location), docDomain);
+    final String lowerCaseLocation = location.toLowerCase(Locale.ENGLISH);
+
+    RequestFilter blacklistHit = null;
+    final int length = lowerCaseLocation.length();
+    int start = -1;
+    // keyword candidates are runs of 3 or more keyword characters, then ""
+    for (int i = 0; i <= length + 1; i++)
+    {
+      final String keyword;
+      if (i < length && RequestFilter.isKeywordChar(lowerCaseLocation.charAt(i)))
+      {
+        if (start < 0)
+        {
+          start = i;
+        }
+        continue;
+      }
+      else if (i <= length)
+      {
+        if (start < 0 || i - start < 3)
+        {
+          start = -1;
+          continue;
+        }
+        keyword = lowerCaseLocation.substring(start, i);
+        start = -1;
+      }
+      else
+      {
+        keyword = "";
+      }
+
+      if (checkWhitelist)
+      {
+        final RequestFilter whitelistHit =
+            this.whitelist.match(keyword, location, lowerCaseLocation, typeMask, docDomain, thirdParty);
+        if (whitelistHit != null)
+        {
+          return whitelistHit;
+        }
+      }
+      if (checkBlacklist && blacklistHit == null)
+      {
+        blacklistHit = this.blacklist.match(keyword, location, lowerCaseLocation, typeMask, docDomain, thirdParty);
+      }
+    }
+    return blacklistHit;
+  }
+
+  static String extractHost(final String url)
+  {
+    if (url == null)
+    {
+      return "";
+    }
+    final int schemeEnd = url.indexOf("://");
+    if (schemeEnd <= 0)
+    {
+      return "";
+    }
+
+    int start = schemeEnd + 3;
+    int end = start;
+    while (end < url.length())
+    {
+      final char c = url.charAt(end);
+      if (c == '/' || c == '?' || c == '#')
+      {
+        break;
+      }
+      if (c == '@')
+      {
+        start = end + 1;
+      }
+      end++;
+    }
+
+    // strip the port, keeping IPv6 literals
+    final int bracket = url.lastIndexOf(']', end - 1);
+    final int colon = url.indexOf(':', bracket >= start ? bracket : start);
+    if (colon >= 0 && colon < end)
+    {
+      end = colon;
+    }
+    return url.substring(start, end).toLowerCase(Locale.ENGLISH);
+  }
+
+  static boolean isThirdParty(final String requestHost, final String documentHost)
+  {
+    final String request = RequestFilter.stripTrailingDots(requestHost);
+    final String documentDomain = getBaseDomain(RequestFilter.stripTrailingDots(documentHost));
+    if (request.length() > documentDomain.length())
+    {
+      return !request.endsWith("." + documentDomain);
+    }
+    return !request.equals(documentDomain);
+  }
+
+  /**
+   * Last two labels, or three when the last two are a public suffix like
+   * co.uk or com.au.
+   */
+  static String getBaseDomain(final String host)
+  {
+    final int last = host.lastIndexOf('.');
+    if (last <= 0)
+    {
+      return host;
+    }
+    final int secondLast = host.lastIndexOf('.', last - 1);
+    if (secondLast < 0)
+    {
+      return host;
+    }
+    if (PUBLIC_SUFFIXES.contains(host.substring(secondLast + 1)))
+    {
+      final int thirdLast = host.lastIndexOf('.', secondLast - 1);
+      return host.substring(thirdLast + 1);
+    }
+    return host.substring(secondLast + 1);
+  }
+
+  private static void add(final KeywordIndex blacklist, final KeywordIndex whitelist, final String text)
+  {
+    final RequestFilter filter = RequestFilter.fromText(text);
+    if (filter != null)
+    {
+      (filter.isException() ? whitelist : blacklist).add(filter);
+    }
+  }
+
+  private void remove(final String text)
+  {
+    this.whitelist.remove(text);
+    this.blacklist.remove(text);
+  }
+
+  private void onFilterChange(final String action, final JsValue jsValue)
+  {
+    if (action.equals("filter.added") || action.equals("filter.removed") || action.equals("filter.disabled"))
+    {
+      final String text = ListedFilters.getStringProperty(jsValue, "text");
+      final boolean disabled = ListedFilters.getBooleanProperty(jsValue, "disabled");
+
+      this.lock.writeLock().lock();
+      try
+      {
+        this.generation++;
+        final Integer count = this.filterCounts.get(text);
+        if (action.equals("filter.added"))
+        {
+          this.filterCounts.put(text, count != null ? count + 1 : 1);
+          if (count == null && !disabled)
+          {
+            add(this.blacklist, this.whitelist, text);
+          }
+        }
+        else if (action.equals("filter.removed"))
+        {
+          if (count != null && count > 1)
+          {
+            this.filterCounts.put(text, count - 1);
+          }
+          else
+          {
+            this.filterCounts.remove(text);
+            remove(text);
+          }
+        }
+        else if (disabled)
+        {
+          remove(text);
+        }
+        else if (count != null)
+        {
+          add(this.blacklist, this.whitelist, text);
+        }
+      }
+      finally
+      {
+        this.lock.writeLock().unlock();
+      }
+    }
+    else if (action.equals("load") || action.equals("subscription.added")
+        || action.equals("subscription.removed") || action.equals("subscription.disabled")
+        || action.equals("subscription.updated"))
+    {
+      this.generation++;
+      this.stale = true;
+    }
+  }
+
+  private void rebuild()
+  {
+    synchronized (this.rebuildLock)
+    {
+      if (!this.stale)
+      {
+        return;
+      }
+      this.stale = false;
+      final long startGeneration = this.generation;
+
+      // the engine is queried without holding the lock, change callbacks
+      // waiting for it could otherwise block the JavaScript engine
+      final HashSet<String> disabled = new HashSet<String>();
+      final HashMap<String, Integer> counts = ListedFilters.collect(this.filterEngine, disabled);
+
+      final KeywordIndex blacklist = new KeywordIndex();
+      final KeywordIndex whitelist = new KeywordIndex();
+      for (final String text : counts.keySet())
+      {
+        if (!disabled.contains(text))
+        {
+          add(blacklist, whitelist, text);
+        }
+      }
+
+      this.lock.writeLock().lock();
+      try
+      {
+        this.blacklist = blacklist;
+        this.whitelist = whitelist;
+        this.filterCounts = counts;
+        // changes applied to the old index in the meantime are lost
+        if (this.generation != startGeneration)
+        {
+          this.stale = true;
+        }
+      }
+      finally
+      {
+        this.lock.writeLock().unlock();
+      }
+    }
+  }
+}
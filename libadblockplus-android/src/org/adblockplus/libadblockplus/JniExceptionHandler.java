@@ -19,13 +19,9 @@ package org.adblockplus.libadblockplus;
 
 import java.util.concurrent.LinkedBlockingQueue;
 
-import org.adblockplus.android.Utils;
-
-import android.util.Log;
-
 public final class JniExceptionHandler
 {
-  private final static String TAG = Utils.getTag(JniExceptionHandler.class);
+  private final static String TAG = Logging.getTag(JniExceptionHandler.class);
 
   private static LogWorker logWorker = null;
 
@@ -59,7 +55,7 @@ public final class JniExceptionHandler
         try
         {
           final Throwable t = this.exceptionQueue.take();
-          Log.e(TAG, "Exception from JNI", t);
+          Logging.e(TAG, "Exception from JNI", t);
         }
         catch (final InterruptedException ie)
         {
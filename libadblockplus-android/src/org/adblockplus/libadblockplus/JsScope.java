@@ -0,0 +1,143 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks every {@link JsValue}, including filters, subscriptions and
+ * notifications, created on the opening thread while the scope is open and
+ * frees all of them with one native call on {@link #close()}, instead of
+ * waiting for the garbage collector:
+ *
+ * <pre>
+ * final JsScope scope = JsScope.open();
+ * try
+ * {
+ *   final String title = filterEngine.getPref("title").asString();
+ * }
+ * finally
+ * {
+ *   scope.close();
+ * }
+ * </pre>
+ *
+ * Values must not be used after the scope is closed, as after dispose().
+ * Scopes nest, a value belongs to the innermost one.
+ */
+public final class JsScope implements Closeable
+{
+  private final static ThreadLocal<JsScope> current = new ThreadLocal<JsScope>();
+  // lets JsValue skip the thread local while no scope is open at all
+  private final static AtomicInteger openCount = new AtomicInteger();
+
+  private final JsScope parent;
+  private final Thread thread;
+  private Disposer[] disposers = new Disposer[16];
+  private int count;
+  private boolean closed;
+
+  private JsScope(final JsScope parent)
+  {
+    this.parent = parent;
+    this.thread = Thread.currentThread();
+  }
+
+  public static JsScope open()
+  {
+    final JsScope scope = new JsScope(current.get());
+    current.set(scope);
+    openCount.incrementAndGet();
+    return scope;
+  }
+
+  static void track(final Disposer disposer)
+  {
+    if (openCount.get() > 0)
+    {
+      final JsScope scope = current.get();
+      if (scope != null)
+      {
+        scope.add(disposer);
+      }
+    }
+  }
+
+  private void add(final Disposer disposer)
+  {
+    if (this.count == this.disposers.length)
+    {
+      this.disposers = Arrays.copyOf(this.disposers, this.count * 2);
+    }
+    this.disposers[this.count++] = disposer;
+  }
+
+  /**
+   * @return number of values tracked so far
+   */
+  public int size()
+  {
+    return this.count;
+  }
+
+  /**
+   * Frees the tracked values, those disposed already are skipped.
+   *
+   * @throws IllegalStateException if called on another thread or with an
+   *           inner scope still open
+   */
+  @Override
+  public void close()
+  {
+    if (this.closed)
+    {
+      return;
+    }
+    if (Thread.currentThread() != this.thread || current.get() != this)
+    {
+      throw new IllegalStateException("Scopes must be closed in reverse order on the opening thread");
+    }
+
+    this.closed = true;
+    current.set(this.parent);
+    openCount.decrementAndGet();
+
+    final long[] ptrs = new long[this.count];
+    int ptrCount = 0;
+    Disposer.BatchRelease release = null;
+    for (int i = 0; i < this.count; i++)
+    {
+      final Disposable disposable = this.disposers[i].detach();
+      if (disposable != null)
+      {
+        final Disposer.BatchDisposable batchDisposable = (Disposer.BatchDisposable) disposable;
+        ptrs[ptrCount++] = batchDisposable.getPtr();
+        release = batchDisposable.getBatchRelease();
+      }
+    }
+    this.disposers = null;
+    this.count = 0;
+
+    if (release != null)
+    {
+      release.release(ptrs, ptrCount);
+    }
+  }
+}
@@ -34,6 +34,7 @@ public class JsValue implements Disposable
   {
     this.ptr = ptr;
     this.disposer = new Disposer(this, new DisposeWrapper(ptr));
+    JsScope.track(this.disposer);
   }
 
   @Override
@@ -113,8 +114,18 @@ public class JsValue implements Disposable
     return asString(this.ptr);
   }
 
-  private final static class DisposeWrapper implements Disposable
+  private final static class DisposeWrapper implements Disposer.BatchDisposable
   {
+    // values collected together, e.g. listed filters, are freed in one call
+    private final static Disposer.BatchRelease BATCH_RELEASE = new Disposer.BatchRelease()
+    {
+      @Override
+      public void release(final long[] ptrs, final int count)
+      {
+        dtorBatch(ptrs, count);
+      }
+    };
+
     private final long ptr;
 
     public DisposeWrapper(final long ptr)
@@ -127,6 +138,18 @@ public class JsValue implements Disposable
     {
       dtor(this.ptr);
     }
+
+    @Override
+    public long getPtr()
+    {
+      return this.ptr;
+    }
+
+    @Override
+    public Disposer.BatchRelease getBatchRelease()
+    {
+      return BATCH_RELEASE;
+    }
   }
 
   private final static native void registerNatives();
@@ -158,4 +181,6 @@ public class JsValue implements Disposable
   private final static native List<JsValue> asList(long ptr);
 
   private final static native void dtor(long ptr);
+
+  private final static native void dtorBatch(long[] ptrs, int count);
 }
@@ -0,0 +1,110 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Filters by keyword, a filter is only tested against URLs containing its
+ * keyword. Follows Matcher from adblockpluscore.
+ */
+final class KeywordIndex
+{
+  private final HashMap<String, ArrayList<RequestFilter>> filterByKeyword =
+      new HashMap<String, ArrayList<RequestFilter>>();
+  private final HashMap<String, String> keywordByFilter = new HashMap<String, String>();
+  // content types of all filters ever added, lets callers skip the index
+  private int contentTypes = 0;
+
+  void add(final RequestFilter filter)
+  {
+    if (this.keywordByFilter.containsKey(filter.text))
+    {
+      return;
+    }
+
+    final String keyword = RequestFilter.findKeyword(filter.text, this);
+    ArrayList<RequestFilter> filters = this.filterByKeyword.get(keyword);
+    if (filters == null)
+    {
+      filters = new ArrayList<RequestFilter>(1);
+      this.filterByKeyword.put(keyword, filters);
+    }
+    filters.add(filter);
+    this.keywordByFilter.put(filter.text, keyword);
+    this.contentTypes |= filter.contentType;
+  }
+
+  void remove(final String text)
+  {
+    final String keyword = this.keywordByFilter.remove(text);
+    if (keyword == null)
+    {
+      return;
+    }
+
+    final ArrayList<RequestFilter> filters = this.filterByKeyword.get(keyword);
+    for (int i = 0; i < filters.size(); i++)
+    {
+      if (filters.get(i).text.equals(text))
+      {
+        filters.remove(i);
+        break;
+      }
+    }
+    if (filters.isEmpty())
+    {
+      this.filterByKeyword.remove(keyword);
+    }
+  }
+
+  int getFilterCount(final String keyword)
+  {
+    final ArrayList<RequestFilter> filters = this.filterByKeyword.get(keyword);
+    return filters != null ? filters.size() : 0;
+  }
+
+  boolean mayMatch(final int typeMask)
+  {
+    return (this.contentTypes & typeMask) != 0;
+  }
+
+  int size()
+  {
+    return this.keywordByFilter.size();
+  }
+
+  RequestFilter match(final String keyword, final String location, final String lowerCaseLocation,
+      final int typeMask, final String docDomain, final boolean thirdParty)
+  {
+    final ArrayList<RequestFilter> filters = this.filterByKeyword.get(keyword);
+    if (filters != null)
+    {
+      for (int i = 0; i < filters.size(); i++)
+      {
+        final RequestFilter filter = filters.get(i);
+        if (filter.matches(location, lowerCaseLocation, typeMask, docDomain, thirdParty))
+        {
+          return filter;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Reads the filters of a {@link FilterEngine} and the properties of filter
+ * change events for the Java side indexes.
+ */
+final class ListedFilters
+{
+  private ListedFilters()
+  {
+  }
+
+  static String getStringProperty(final JsValue jsValue, final String name)
+  {
+    final JsValue property = jsValue.getProperty(name);
+    try
+    {
+      return property.asString();
+    }
+    finally
+    {
+      property.dispose();
+    }
+  }
+
+  static boolean getBooleanProperty(final JsValue jsValue, final String name)
+  {
+    final JsValue property = jsValue.getProperty(name);
+    try
+    {
+      return property.asBoolean();
+    }
+    finally
+    {
+      property.dispose();
+    }
+  }
+
+  /**
+   * Counts the occurrences of each filter text in the enabled subscriptions
+   * and the listed (user) filters.
+   *
+   * @param disabled receives the texts of disabled filters
+   */
+  static HashMap<String, Integer> collect(final FilterEngine filterEngine, final HashSet<String> disabled)
+  {
+    final HashMap<String, Integer> counts = new HashMap<String, Integer>();
+    for (final Subscription subscription : filterEngine.getListedSubscriptions())
+    {
+      if (!getBooleanProperty(subscription, "disabled"))
+      {
+        final JsValue filters = subscription.getProperty("filters");
+        for (final JsValue filter : filters.asList())
+        {
+          count(counts, disabled, filter);
+          filter.dispose();
+        }
+        filters.dispose();
+      }
+      subscription.dispose();
+    }
+    for (final Filter filter : filterEngine.getListedFilters())
+    {
+      count(counts, disabled, filter);
+      filter.dispose();
+    }
+    return counts;
+  }
+
+  private static void count(final HashMap<String, Integer> counts, final HashSet<String> disabled,
+      final JsValue filter)
+  {
+    final String text = getStringProperty(filter, "text");
+    final Integer count = counts.get(text);
+    counts.put(text, count != null ? count + 1 : 1);
+    if (getBooleanProperty(filter, "disabled"))
+    {
+      disabled.add(text);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thin logging facade so the library doesn't depend on {@code android.util.Log}
+ * and can be loaded on a desktop JVM. Writes to logcat on Android and to
+ * {@code java.util.logging} otherwise.
+ */
+public final class Logging
+{
+  public interface Writer
+  {
+    void d(String tag, String message);
+
+    void w(String tag, String message, Throwable t);
+
+    void e(String tag, String message, Throwable t);
+  }
+
+  private final static String ANDROID_LOG_CLASS = "android.util.Log";
+  private final static String ANDROID_WRITER_CLASS = "org.adblockplus.android.AndroidLogWriter";
+
+  private static volatile Writer writer = createDefaultWriter();
+
+  private Logging()
+  {
+    //
+  }
+
+  public static String getTag(final Class<?> clazz)
+  {
+    return clazz.getSimpleName();
+  }
+
+  public static void setWriter(final Writer writer)
+  {
+    Logging.writer = writer != null ? writer : createDefaultWriter();
+  }
+
+  public static void d(final String tag, final String message)
+  {
+    writer.d(tag, message);
+  }
+
+  public static void w(final String tag, final String message)
+  {
+    writer.w(tag, message, null);
+  }
+
+  public static void w(final String tag, final String message, final Throwable t)
+  {
+    writer.w(tag, message, t);
+  }
+
+  public static void e(final String tag, final String message)
+  {
+    writer.e(tag, message, null);
+  }
+
+  public static void e(final String tag, final String message, final Throwable t)
+  {
+    writer.e(tag, message, t);
+  }
+
+  private static Writer createDefaultWriter()
+  {
+    try
+    {
+      Class.forName(ANDROID_LOG_CLASS);
+      return (Writer) Class.forName(ANDROID_WRITER_CLASS).getDeclaredConstructor().newInstance();
+    }
+    catch (final Throwable t)
+    {
+      return new JavaLoggingWriter();
+    }
+  }
+
+  private final static class JavaLoggingWriter implements Writer
+  {
+    @Override
+    public void d(final String tag, final String message)
+    {
+      Logger.getLogger(tag).log(Level.FINE, message);
+    }
+
+    @Override
+    public void w(final String tag, final String message, final Throwable t)
+    {
+      Logger.getLogger(tag).log(Level.WARNING, message, t);
+    }
+
+    @Override
+    public void e(final String tag, final String message, final Throwable t)
+    {
+      Logger.getLogger(tag).log(Level.SEVERE, message, t);
+    }
+  }
+}
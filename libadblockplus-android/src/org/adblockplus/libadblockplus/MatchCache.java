@@ -0,0 +1,211 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of match results in front of a {@link FilterEngine}.
+ * <p>
+ * The cache is flushed on every filter or subscription change. It listens to
+ * the engine next to other caches, matchers and the callback set with
+ * {@link FilterEngine#setFilterChangeCallback(FilterChangeCallback)}, a
+ * callback passed to the constructor receives the changes after the flush.
+ */
+public final class MatchCache implements Disposable
+{
+  private final FilterEngine filterEngine;
+  private final int maxSize;
+  private final LinkedHashMap<Key, MatchResult> entries;
+  private final FilterChangeListeners.Listener listener;
+  private long generation = 0;
+  private long hitCount = 0;
+  private long missCount = 0;
+
+  public MatchCache(final FilterEngine filterEngine, final int maxSize)
+  {
+    this(filterEngine, maxSize, null);
+  }
+
+  public MatchCache(final FilterEngine filterEngine, final int maxSize, final FilterChangeCallback filterChangeCallback)
+  {
+    if (maxSize <= 0)
+    {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+
+    this.filterEngine = filterEngine;
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<Key, MatchResult>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<Key, MatchResult> eldest)
+      {
+        return size() > MatchCache.this.maxSize;
+      }
+    };
+    this.listener = FilterChangeListeners.forwarding(new FilterChangeListeners.Listener()
+    {
+      @Override
+      public void filterChanged(final String action, final JsValue jsValue)
+      {
+        invalidate();
+      }
+    }, filterChangeCallback);
+    filterEngine.getFilterChangeListeners().add(this.listener);
+  }
+
+  public MatchResult matches(final String url, final FilterEngine.ContentType contentType, final String documentUrl)
+  {
+    return matches(url, contentType, new String[] { documentUrl });
+  }
+
+  public MatchResult matches(final String url, final FilterEngine.ContentType contentType, final String[] documentUrls)
+  {
+    final Key key = new Key(url, contentType, documentUrls);
+    final long keyGeneration;
+
+    synchronized (this.entries)
+    {
+      final MatchResult cached = this.entries.get(key);
+      if (cached != null || this.entries.containsKey(key))
+      {
+        this.hitCount++;
+        return cached;
+      }
+      this.missCount++;
+      keyGeneration = this.generation;
+    }
+
+    final MatchResult result = this.filterEngine.matchResult(url, contentType, documentUrls);
+
+    synchronized (this.entries)
+    {
+      // don't store results computed against filters changed in the meantime
+      if (keyGeneration == this.generation)
+      {
+        this.entries.put(key, result);
+      }
+    }
+
+    return result;
+  }
+
+  public FilterEngine.MatchDecision matchDecision(final String url, final FilterEngine.ContentType contentType,
+      final String documentUrl)
+  {
+    return toDecision(matches(url, contentType, documentUrl));
+  }
+
+  public FilterEngine.MatchDecision matchDecision(final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls)
+  {
+    return toDecision(matches(url, contentType, documentUrls));
+  }
+
+  public void invalidate()
+  {
+    synchronized (this.entries)
+    {
+      this.generation++;
+      this.entries.clear();
+    }
+  }
+
+  public int size()
+  {
+    synchronized (this.entries)
+    {
+      return this.entries.size();
+    }
+  }
+
+  public int getMaxSize()
+  {
+    return this.maxSize;
+  }
+
+  public long getHitCount()
+  {
+    synchronized (this.entries)
+    {
+      return this.hitCount;
+    }
+  }
+
+  public long getMissCount()
+  {
+    synchronized (this.entries)
+    {
+      return this.missCount;
+    }
+  }
+
+  /**
+   * Detaches the cache from the engine.
+   */
+  @Override
+  public void dispose()
+  {
+    this.filterEngine.getFilterChangeListeners().remove(this.listener);
+    invalidate();
+  }
+
+  private static FilterEngine.MatchDecision toDecision(final MatchResult result)
+  {
+    return result != null ? result.getDecision() : FilterEngine.MatchDecision.NO_MATCH;
+  }
+
+  private final static class Key
+  {
+    private final String url;
+    private final FilterEngine.ContentType contentType;
+    private final String[] documentUrls;
+    private final int hashCode;
+
+    public Key(final String url, final FilterEngine.ContentType contentType, final String[] documentUrls)
+    {
+      this.url = url;
+      this.contentType = contentType;
+      this.documentUrls = documentUrls != null ? documentUrls.clone() : new String[0];
+      this.hashCode = (url.hashCode() * 31 + contentType.hashCode()) * 31 + Arrays.hashCode(this.documentUrls);
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return this.hashCode;
+    }
+
+    @Override
+    public boolean equals(final Object o)
+    {
+      if (!(o instanceof Key))
+      {
+        return false;
+      }
+      final Key other = (Key) o;
+      return this.hashCode == other.hashCode
+          && this.contentType == other.contentType
+          && this.url.equals(other.url)
+          && Arrays.equals(this.documentUrls, other.documentUrls);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+/**
+ * Value-type match result, holds no native handle and needs no disposal.
+ */
+public final class MatchResult
+{
+  private final static Filter.Type[] TYPES = Filter.Type.values();
+
+  private final Filter.Type type;
+  private final String text;
+
+  // called from JNI
+  private MatchResult(final int type, final String text)
+  {
+    this.type = TYPES[type];
+    this.text = text;
+  }
+
+  MatchResult(final Filter.Type type, final String text)
+  {
+    this.type = type;
+    this.text = text;
+  }
+
+  public Filter.Type getType()
+  {
+    return this.type;
+  }
+
+  public String getText()
+  {
+    return this.text;
+  }
+
+  public FilterEngine.MatchDecision getDecision()
+  {
+    switch (this.type)
+    {
+      case BLOCKING:
+        return FilterEngine.MatchDecision.BLOCK;
+      case EXCEPTION:
+        return FilterEngine.MatchDecision.ALLOW;
+      default:
+        return FilterEngine.MatchDecision.NO_MATCH;
+    }
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.text.hashCode() * 31 + this.type.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (!(o instanceof MatchResult))
+    {
+      return false;
+    }
+    final MatchResult other = (MatchResult) o;
+    return this.type == other.type && this.text.equals(other.text);
+  }
+
+  @Override
+  public String toString()
+  {
+    return this.type + ": " + this.text;
+  }
+}
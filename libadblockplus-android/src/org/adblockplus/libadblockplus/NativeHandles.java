@@ -0,0 +1,66 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Live native objects created by the JNI layer for Java wrappers. Compare
+ * with {@link Disposer#getLiveCounts()}: native objects outliving their
+ * wrappers point to leaks below the Java layer.
+ */
+public final class NativeHandles
+{
+  /**
+   * JS_VALUE includes the values of filters, subscriptions and notifications.
+   */
+  public enum Kind
+  {
+    JS_VALUE, JS_ENGINE, FILTER_ENGINE, WEB_REQUEST, LOG_SYSTEM, CALLBACK
+  }
+
+  static
+  {
+    System.loadLibrary("adblockplus-jni");
+    registerNatives();
+  }
+
+  private NativeHandles()
+  {
+  }
+
+  public static long getLiveCount(final Kind kind)
+  {
+    return getLiveCount(kind.ordinal());
+  }
+
+  public static Map<Kind, Long> getLiveCounts()
+  {
+    final Map<Kind, Long> counts = new EnumMap<Kind, Long>(Kind.class);
+    for (final Kind kind : Kind.values())
+    {
+      counts.put(kind, getLiveCount(kind.ordinal()));
+    }
+    return counts;
+  }
+
+  private final static native void registerNatives();
+
+  private final static native long getLiveCount(int kind);
+}
@@ -0,0 +1,449 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Blocking or exception filter compiled for {@link JavaMatcher}, follows
+ * RegExpFilter from adblockpluscore.
+ */
+final class RequestFilter
+{
+  private final static Pattern OPTIONS =
+      Pattern.compile("\\$(~?[\\w-]+(?:=[^,\\s]+)?(?:,~?[\\w-]+(?:=[^,\\s]+)?)*)$");
+  private final static Pattern REGEXP_FILTER =
+      Pattern.compile("^(@@)?/.*/(?:\\$~?[\\w-]+(?:=[^,\\s]+)?(?:,~?[\\w-]+(?:=[^,\\s]+)?)*)?$");
+  private final static Pattern ELEMHIDE_FILTER =
+      Pattern.compile("^([^/*|@\"!]*?)#([@?])?(?:([\\w-]+|\\*)((?:\\([\\w-]+(?:[$^*]?=[^()\"]*)?\\))*)|#([^{}]+))$");
+  private final static Pattern KEYWORD_CANDIDATE = Pattern.compile("[^a-z0-9%*]([a-z0-9%]{3,})(?=[^a-z0-9%*])");
+
+  private final static String SEPARATOR =
+      "(?:[\\x00-\\x24\\x26-\\x2C\\x2F\\x3A-\\x40\\x5B-\\x5E\\x60\\x7B-\\x7F]|$)";
+  private final static String EXTENDED_ANCHOR = "^[\\w\\-]+:\\/+(?!\\/)(?:[^\\/]+\\.)?";
+
+  final static int TYPE_OTHER = 1;
+  final static int TYPE_DOCUMENT = 64;
+  private final static int TYPE_ELEMHIDE = 0x40000000;
+  private final static int TYPE_POPUP = 0x10000000;
+  private final static int TYPE_GENERICBLOCK = 0x20000000;
+  private final static int TYPE_GENERICHIDE = 0x80000000;
+  private final static int DEFAULT_CONTENT_TYPE =
+      0x7FFFFFFF & ~(TYPE_DOCUMENT | TYPE_ELEMHIDE | TYPE_POPUP | TYPE_GENERICHIDE | TYPE_GENERICBLOCK);
+
+  private final static HashMap<String, Integer> TYPE_MAP = new HashMap<String, Integer>();
+
+  static
+  {
+    TYPE_MAP.put("OTHER", TYPE_OTHER);
+    TYPE_MAP.put("SCRIPT", 2);
+    TYPE_MAP.put("IMAGE", 4);
+    TYPE_MAP.put("STYLESHEET", 8);
+    TYPE_MAP.put("OBJECT", 16);
+    TYPE_MAP.put("SUBDOCUMENT", 32);
+    TYPE_MAP.put("DOCUMENT", TYPE_DOCUMENT);
+    TYPE_MAP.put("XBL", 1);
+    TYPE_MAP.put("PING", 1024);
+    TYPE_MAP.put("XMLHTTPREQUEST", 2048);
+    TYPE_MAP.put("OBJECT_SUBREQUEST", 4096);
+    TYPE_MAP.put("DTD", 1);
+    TYPE_MAP.put("MEDIA", 16384);
+    TYPE_MAP.put("FONT", 32768);
+    TYPE_MAP.put("BACKGROUND", 4);
+    TYPE_MAP.put("POPUP", TYPE_POPUP);
+    TYPE_MAP.put("GENERICBLOCK", TYPE_GENERICBLOCK);
+    TYPE_MAP.put("ELEMHIDE", TYPE_ELEMHIDE);
+    TYPE_MAP.put("GENERICHIDE", TYPE_GENERICHIDE);
+  }
+
+  // by FilterEngine.ContentType ordinal
+  private final static int[] CONTENT_TYPE_MASKS =
+  {
+    TYPE_OTHER, 2, 4, 8, 16, 32, TYPE_DOCUMENT, 2048, 4096, 32768, 16384
+  };
+
+  final String text;
+  final MatchResult result;
+  final int contentType;
+  private final Boolean thirdParty;
+  private final boolean matchCase;
+  private final HashMap<String, Boolean> domains;
+  // either a plain substring or a regular expression
+  private final String literal;
+  private final Pattern regexp;
+  private final boolean anchored;
+  // substring any location matching regexp contains, checked first
+  private final String requiredLiteral;
+
+  private RequestFilter(final String text, final boolean exception, final int contentType, final Boolean thirdParty,
+      final boolean matchCase, final HashMap<String, Boolean> domains, final String literal, final Pattern regexp,
+      final boolean anchored, final String requiredLiteral)
+  {
+    this.text = text;
+    this.result = new MatchResult(exception ? Filter.Type.EXCEPTION : Filter.Type.BLOCKING, text);
+    this.contentType = contentType;
+    this.thirdParty = thirdParty;
+    this.matchCase = matchCase;
+    this.domains = domains;
+    this.literal = literal;
+    this.regexp = regexp;
+    this.anchored = anchored;
+    this.requiredLiteral = requiredLiteral;
+  }
+
+  boolean isException()
+  {
+    return this.result.getType() == Filter.Type.EXCEPTION;
+  }
+
+  static int toTypeMask(final FilterEngine.ContentType contentType)
+  {
+    return CONTENT_TYPE_MASKS[contentType.ordinal()];
+  }
+
+  static boolean isKeywordChar(final char c)
+  {
+    return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '%';
+  }
+
+  /**
+   * @return compiled filter, or null for comments, element hiding filters,
+   *         invalid filters and filters that can't match without a sitekey
+   */
+  static RequestFilter fromText(final String text)
+  {
+    if (text.length() == 0 || text.charAt(0) == '!' || ELEMHIDE_FILTER.matcher(text).matches())
+    {
+      return null;
+    }
+
+    String source = text;
+    boolean exception = false;
+    if (source.startsWith("@@"))
+    {
+      exception = true;
+      source = source.substring(2);
+    }
+
+    int contentType = DEFAULT_CONTENT_TYPE;
+    boolean hasContentType = false;
+    Boolean thirdParty = null;
+    boolean matchCase = false;
+    String domainSource = null;
+
+    final Matcher options = source.indexOf('$') >= 0 ? OPTIONS.matcher(source) : null;
+    if (options != null && options.find())
+    {
+      source = source.substring(0, options.start());
+      for (String option : options.group(1).toUpperCase(Locale.ENGLISH).split(","))
+      {
+        String value = null;
+        final int separator = option.indexOf('=');
+        if (separator >= 0)
+        {
+          value = option.substring(separator + 1);
+          option = option.substring(0, separator);
+        }
+        option = option.replaceFirst("-", "_");
+
+        if (TYPE_MAP.containsKey(option))
+        {
+          if (!hasContentType)
+          {
+            contentType = 0;
+            hasContentType = true;
+          }
+          contentType |= TYPE_MAP.get(option);
+        }
+        else if (option.startsWith("~") && TYPE_MAP.containsKey(option.substring(1)))
+        {
+          hasContentType = true;
+          contentType &= ~TYPE_MAP.get(option.substring(1));
+        }
+        else if (option.equals("MATCH_CASE") || option.equals("~MATCH_CASE"))
+        {
+          matchCase = option.equals("MATCH_CASE");
+        }
+        else if (option.equals("DOMAIN"))
+        {
+          domainSource = value;
+        }
+        else if (option.equals("THIRD_PARTY") || option.equals("~THIRD_PARTY"))
+        {
+          thirdParty = option.equals("THIRD_PARTY");
+        }
+        else if (option.equals("COLLAPSE") || option.equals("~COLLAPSE"))
+        {
+          // element collapsing is up to the caller
+        }
+        else if (option.equals("SITEKEY"))
+        {
+          // there is no sitekey when matching through FilterEngine
+          return null;
+        }
+        else
+        {
+          // unknown option, the filter is invalid
+          return null;
+        }
+      }
+    }
+
+    String literal = null;
+    Pattern regexp = null;
+    boolean anchored = false;
+    String requiredLiteral = null;
+    if (source.length() >= 2 && source.startsWith("/") && source.endsWith("/"))
+    {
+      try
+      {
+        regexp = Pattern.compile(source.substring(1, source.length() - 1),
+            matchCase ? 0 : Pattern.CASE_INSENSITIVE);
+      }
+      catch (final PatternSyntaxException e)
+      {
+        return null;
+      }
+    }
+    else if (source.indexOf('*') < 0 && source.indexOf('^') < 0 && source.indexOf('|') < 0)
+    {
+      literal = matchCase ? source : source.toLowerCase(Locale.ENGLISH);
+    }
+    else
+    {
+      regexp = Pattern.compile(toRegExp(source), matchCase ? 0 : Pattern.CASE_INSENSITIVE);
+      // find() would retry an anchored expression at every position. Only
+      // converted | and || anchors qualify, a /regex/ filter can start with ^
+      // and still have a top-level alternative matching anywhere.
+      anchored = source.startsWith("|");      for (final String part : source.split("[*^|]"))
+      {
+        if (requiredLiteral == null || part.length() > requiredLiteral.length())
+        {
+          requiredLiteral = part;
+        }
+      }
+      if (!matchCase && requiredLiteral != null)
+      {
+        requiredLiteral = requiredLiteral.toLowerCase(Locale.ENGLISH);
+      }
+    }
+
+    return new RequestFilter(text, exception, contentType, thirdParty, matchCase, parseDomains(domainSource, "\\|"),
+        literal, regexp, anchored, requiredLiteral);
+  }
+
+  private static String toRegExp(final String pattern)
+  {
+    String source = pattern.replaceAll("\\*+", "*");
+    if (source.endsWith("^|"))
+    {
+      source = source.substring(0, source.length() - 1);
+    }
+
+    final StringBuilder sb = new StringBuilder(source.length() * 2);
+    int start = 0;
+    int end = source.length();
+    if (source.startsWith("||"))
+    {
+      sb.append(EXTENDED_ANCHOR);
+      start = 2;
+    }
+    else if (source.startsWith("|"))
+    {
+      sb.append('^');
+      start = 1;
+    }
+    final boolean anchoredEnd = end > start && source.charAt(end - 1) == '|';
+    if (anchoredEnd)
+    {
+      end--;
+    }
+
+    for (int i = start; i < end; i++)
+    {
+      final char c = source.charAt(i);
+      if (c == '*')
+      {
+        sb.append(".*");
+      }
+      else if (c == '^')
+      {
+        sb.append(SEPARATOR);
+      }
+      else if (c < 0x80 && !Character.isLetterOrDigit(c) && c != '_')
+      {
+        sb.append('\\').append(c);
+      }
+      else
+      {
+        sb.append(c);
+      }
+    }
+
+    if (anchoredEnd)
+    {
+      sb.append('$');
+    }
+
+    String result = sb.toString();
+    if (result.startsWith(".*"))
+    {
+      result = result.substring(2);
+    }
+    if (result.endsWith(".*"))
+    {
+      result = result.substring(0, result.length() - 2);
+    }
+    return result;
+  }
+
+  /**
+   * @return whether each domain is included, "" whether the filter applies to
+   *         domains not listed; null for filters without domains
+   */
+  static HashMap<String, Boolean> parseDomains(final String source, final String separator)
+  {
+    if (source == null)
+    {
+      return null;
+    }
+
+    final HashMap<String, Boolean> domains = new HashMap<String, Boolean>();
+    boolean hasIncludes = false;
+    for (String domain : source.toLowerCase(Locale.ENGLISH).split(separator))
+    {
+      boolean include = true;
+      if (domain.startsWith("~"))
+      {
+        include = false;
+        domain = domain.substring(1);
+      }
+      domain = stripTrailingDots(domain);
+      if (domain.length() == 0)
+      {
+        continue;
+      }
+      hasIncludes |= include;
+      domains.put(domain, include);
+    }
+    domains.put("", !hasIncludes);
+    return domains;
+  }
+
+  static String stripTrailingDots(final String host)
+  {
+    int end = host.length();
+    while (end > 0 && host.charAt(end - 1) == '.')
+    {
+      end--;
+    }
+    return host.substring(0, end);
+  }
+
+  /**
+   * Picks the keyword with the fewest filters already using it, like
+   * Matcher.findKeyword in adblockpluscore.
+   */
+  static String findKeyword(final String text, final KeywordIndex index)
+  {
+    if (REGEXP_FILTER.matcher(text).matches())
+    {
+      return "";
+    }
+
+    String source = text;
+    final Matcher options = OPTIONS.matcher(source);
+    if (options.find())
+    {
+      source = source.substring(0, options.start());
+    }
+    if (source.startsWith("@@"))
+    {
+      source = source.substring(2);
+    }
+
+    String result = "";
+    int resultCount = Integer.MAX_VALUE;
+    final Matcher candidates = KEYWORD_CANDIDATE.matcher(source.toLowerCase(Locale.ENGLISH));
+    while (candidates.find())
+    {
+      final String candidate = candidates.group(1);
+      final int count = index.getFilterCount(candidate);
+      if (count < resultCount || (count == resultCount && candidate.length() > result.length()))
+      {
+        result = candidate;
+        resultCount = count;
+      }
+    }
+    return result;
+  }
+
+  boolean matches(final String location, final String lowerCaseLocation, final int typeMask,
+      final String docDomain, final boolean thirdParty)
+  {
+    if ((this.contentType & typeMask) == 0
+        || (this.thirdParty != null && this.thirdParty.booleanValue() != thirdParty)
+        || !isActiveOnDomain(this.domains, docDomain))
+    {
+      return false;
+    }
+    if (this.literal != null)
+    {
+      return (this.matchCase ? location : lowerCaseLocation).indexOf(this.literal) >= 0;
+    }
+    if (this.requiredLiteral != null
+        && (this.matchCase ? location : lowerCaseLocation).indexOf(this.requiredLiteral) < 0)
+    {
+      return false;
+    }
+    final Matcher matcher = this.regexp.matcher(location);
+    return this.anchored ? matcher.lookingAt() : matcher.find();
+  }
+
+  static boolean isActiveOnDomain(final HashMap<String, Boolean> domains, final String docDomain)
+  {
+    if (domains == null)
+    {
+      return true;
+    }
+    if (docDomain.length() == 0)
+    {
+      return domains.get("");
+    }
+
+    String domain = docDomain;
+    while (true)
+    {
+      final Boolean include = domains.get(domain);
+      if (include != null)
+      {
+        return include;
+      }
+      final int nextDot = domain.indexOf('.');
+      if (nextDot < 0)
+      {
+        return domains.get("");
+      }
+      domain = domain.substring(nextDot + 1);
+    }
+  }
+}
@@ -17,6 +17,8 @@
 
 package org.adblockplus.libadblockplus;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -61,9 +63,9 @@ public final class ServerResponse
   private long status = NsStatus.OK.getStatusCode();
   private int responseStatus = 400;
   private String[] headers = null;
-  // TODO: This (and the whole downloading) is a waste of memory, change String
-  // to something more suitable
   private String response = null;
+  // read directly by JNI, see setResponseBytes
+  private ByteBuffer responseBytes = null;
 
   public NsStatus getStatus()
   {
@@ -87,12 +89,41 @@ public final class ServerResponse
 
   public String getResponse()
   {
+    if (this.response == null && this.responseBytes != null)
+    {
+      return Charset.forName("UTF-8").decode(this.responseBytes.duplicate()).toString();
+    }
     return this.response;
   }
 
   public void setResponse(final String response)
   {
     this.response = response;
+    this.responseBytes = null;
+  }
+
+  public ByteBuffer getResponseBytes()
+  {
+    return this.responseBytes;
+  }
+
+  /**
+   * Sets the response to the UTF-8 bytes between position and limit of the
+   * buffer, which must be direct or array-backed. Native code copies them
+   * once, without going through a String, so large downloads should prefer
+   * this over {@link #setResponse(String)}.
+   *
+   * @throws IllegalArgumentException if the buffer is neither direct nor
+   *           backed by an accessible array
+   */
+  public void setResponseBytes(final ByteBuffer responseBytes)
+  {
+    if (responseBytes != null && !responseBytes.isDirect() && !responseBytes.hasArray())
+    {
+      throw new IllegalArgumentException("responseBytes must be direct or array-backed");
+    }
+    this.responseBytes = responseBytes;
+    this.response = null;
   }
 
   public List<HeaderEntry> getResponseHeaders()
@@ -0,0 +1,133 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Binary request trace written by {@link TraceRecorder} and read by
+ * {@link TraceReader}.
+ * <p>
+ * A trace starts with the magic bytes "ABPT" and a version byte, followed by
+ * entries: operation, start offset from the previous entry in microseconds,
+ * latency in nanoseconds, the arguments and a compact result. Numbers are
+ * unsigned varints, strings are written once and referenced by index later.
+ */
+public final class Trace
+{
+  final static byte[] MAGIC = { 'A', 'B', 'P', 'T' };
+  final static int VERSION = 1;
+
+  // string references, new strings follow inline and get the next index
+  final static int STRING_NULL = 0;
+  final static int STRING_NEW = 1;
+  final static int STRING_INDEX_OFFSET = 2;
+
+  public static enum Operation
+  {
+    MATCHES, MATCHES_DOCUMENT_CHAIN, IS_DOCUMENT_WHITELISTED, IS_ELEMHIDE_WHITELISTED,
+    GET_ELEMENT_HIDING_SELECTORS
+  }
+
+  final static Operation[] OPERATIONS = Operation.values();
+  final static FilterEngine.ContentType[] CONTENT_TYPES = FilterEngine.ContentType.values();
+  final static FilterEngine.MatchDecision[] MATCH_DECISIONS = FilterEngine.MatchDecision.values();
+
+  private Trace()
+  {
+    //
+  }
+
+  /**
+   * Recorded call. Fields not used by the operation are null, <code>result</code>
+   * is the {@link FilterEngine.MatchDecision} ordinal for matches, 0 or 1 for
+   * whitelisting checks and the selector count for element hiding.
+   */
+  public static final class Entry
+  {
+    public final Operation operation;
+    public final long startOffsetMicros;
+    public final long latencyNanos;
+    public final String url;
+    public final FilterEngine.ContentType contentType;
+    public final String[] documentUrls;
+    public final String domain;
+    public final long result;
+
+    Entry(final Operation operation, final long startOffsetMicros, final long latencyNanos, final String url,
+        final FilterEngine.ContentType contentType, final String[] documentUrls, final String domain,
+        final long result)
+    {
+      this.operation = operation;
+      this.startOffsetMicros = startOffsetMicros;
+      this.latencyNanos = latencyNanos;
+      this.url = url;
+      this.contentType = contentType;
+      this.documentUrls = documentUrls;
+      this.domain = domain;
+      this.result = result;
+    }
+
+    public FilterEngine.MatchDecision getMatchDecision()
+    {
+      return MATCH_DECISIONS[(int) this.result];
+    }
+
+    @Override
+    public String toString()
+    {
+      return this.operation + " " + (this.domain != null ? this.domain : this.url) + " "
+          + (this.contentType != null ? this.contentType + " " : "")
+          + (this.documentUrls != null ? Arrays.toString(this.documentUrls) + " " : "")
+          + "-> " + this.result + " (" + this.latencyNanos + " ns)";
+    }
+  }
+
+  static void writeVarLong(final OutputStream out, long value) throws IOException
+  {
+    while ((value & ~0x7FL) != 0)
+    {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  static long readVarLong(final InputStream in) throws IOException
+  {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7)
+    {
+      final int b = in.read();
+      if (b == -1)
+      {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+      {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Reads the entries of a {@link Trace} written by {@link TraceRecorder}.
+ */
+public final class TraceReader implements Closeable
+{
+  private final InputStream in;
+  private final ArrayList<String> strings = new ArrayList<String>();
+
+  public TraceReader(final InputStream in) throws IOException
+  {
+    this.in = new BufferedInputStream(in);
+    final byte[] magic = new byte[Trace.MAGIC.length];
+    readFully(magic);
+    for (int i = 0; i < magic.length; i++)
+    {
+      if (magic[i] != Trace.MAGIC[i])
+      {
+        throw new IOException("Not a trace");
+      }
+    }
+    final int version = this.in.read();
+    if (version != Trace.VERSION)
+    {
+      throw new IOException("Unsupported trace version " + version);
+    }
+  }
+
+  /**
+   * @return next entry or null at the end of the trace
+   */
+  public Trace.Entry next() throws IOException
+  {
+    final int op = this.in.read();
+    if (op == -1)
+    {
+      return null;
+    }
+    if (op >= Trace.OPERATIONS.length)
+    {
+      throw new IOException("Unknown operation " + op);
+    }
+
+    final Trace.Operation operation = Trace.OPERATIONS[op];
+    final long startOffsetMicros = Trace.readVarLong(this.in);
+    final long latencyNanos = Trace.readVarLong(this.in);
+    String url = null;
+    FilterEngine.ContentType contentType = null;
+    String[] documentUrls = null;
+    String domain = null;
+
+    if (operation == Trace.Operation.GET_ELEMENT_HIDING_SELECTORS)
+    {
+      domain = readString();
+    }
+    else
+    {
+      url = readString();
+      if (operation == Trace.Operation.MATCHES || operation == Trace.Operation.MATCHES_DOCUMENT_CHAIN)
+      {
+        contentType = Trace.CONTENT_TYPES[(int) Trace.readVarLong(this.in)];
+      }
+      documentUrls = new String[(int) Trace.readVarLong(this.in)];
+      for (int i = 0; i < documentUrls.length; i++)
+      {
+        documentUrls[i] = readString();
+      }
+    }
+
+    return new Trace.Entry(operation, startOffsetMicros, latencyNanos, url, contentType, documentUrls, domain,
+        Trace.readVarLong(this.in));
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    this.in.close();
+  }
+
+  private String readString() throws IOException
+  {
+    final int ref = (int) Trace.readVarLong(this.in);
+    if (ref == Trace.STRING_NULL)
+    {
+      return null;
+    }
+    if (ref != Trace.STRING_NEW)
+    {
+      return this.strings.get(ref - Trace.STRING_INDEX_OFFSET);
+    }
+
+    final byte[] bytes = new byte[(int) Trace.readVarLong(this.in)];
+    readFully(bytes);
+    final String value = new String(bytes, "UTF-8");
+    this.strings.add(value);
+    return value;
+  }
+
+  private void readFully(final byte[] buffer) throws IOException
+  {
+    int offset = 0;
+    while (offset < buffer.length)
+    {
+      final int read = this.in.read(buffer, offset, buffer.length - offset);
+      if (read == -1)
+      {
+        throw new EOFException();
+      }
+      offset += read;
+    }
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * This file is part of Adblock Plus <https://adblockplus.org/>,
+ * Copyright (C) 2006-2016 Eyeo GmbH
+ *
+ * Adblock Plus is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * Adblock Plus is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Adblock Plus.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.adblockplus.libadblockplus;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Wraps a {@link FilterEngine} and writes every matching, whitelisting and
+ * element hiding call with its arguments, result and latency to a
+ * {@link Trace}.
+ * <p>
+ * Recording stops with a warning on the first write error, calls keep going
+ * to the engine. Strings are interned for the lifetime of the recorder.
+ */
+public final class TraceRecorder implements Closeable
+{
+  private final static String TAG = Logging.getTag(TraceRecorder.class);
+
+  private final FilterEngine filterEngine;
+  private final OutputStream out;
+  private final HashMap<String, Integer> strings = new HashMap<String, Integer>();
+  private long lastStartNanos;
+  private long entryCount = 0;
+  private boolean recording = true;
+
+  public TraceRecorder(final FilterEngine filterEngine, final OutputStream out) throws IOException
+  {
+    this.filterEngine = filterEngine;
+    this.out = new BufferedOutputStream(out);
+    this.out.write(Trace.MAGIC);
+    this.out.write(Trace.VERSION);
+    this.lastStartNanos = System.nanoTime();
+  }
+
+  public Filter matches(final String url, final FilterEngine.ContentType contentType, final String documentUrl)
+  {
+    final long start = System.nanoTime();
+    final Filter filter = this.filterEngine.matches(url, contentType, documentUrl);
+    record(Trace.Operation.MATCHES, start, System.nanoTime() - start, url, contentType,
+        new String[] { documentUrl }, null, toDecision(filter).ordinal());
+    return filter;
+  }
+
+  public Filter matches(final String url, final FilterEngine.ContentType contentType, final String[] documentUrls)
+  {
+    final long start = System.nanoTime();
+    final Filter filter = this.filterEngine.matches(url, contentType, documentUrls);
+    record(Trace.Operation.MATCHES_DOCUMENT_CHAIN, start, System.nanoTime() - start, url, contentType,
+        documentUrls, null, toDecision(filter).ordinal());
+    return filter;
+  }
+
+  public boolean isDocumentWhitelisted(final String url, final String[] documentUrls)
+  {
+    final long start = System.nanoTime();
+    final boolean whitelisted = this.filterEngine.isDocumentWhitelisted(url, documentUrls);
+    record(Trace.Operation.IS_DOCUMENT_WHITELISTED, start, System.nanoTime() - start, url, null,
+        documentUrls, null, whitelisted ? 1 : 0);
+    return whitelisted;
+  }
+
+  public boolean isElemhideWhitelisted(final String url, final String[] documentUrls)
+  {
+    final long start = System.nanoTime();
+    final boolean whitelisted = this.filterEngine.isElemhideWhitelisted(url, documentUrls);
+    record(Trace.Operation.IS_ELEMHIDE_WHITELISTED, start, System.nanoTime() - start, url, null,
+        documentUrls, null, whitelisted ? 1 : 0);
+    return whitelisted;
+  }
+
+  public List<String> getElementHidingSelectors(final String domain)
+  {
+    final long start = System.nanoTime();
+    final List<String> selectors = this.filterEngine.getElementHidingSelectors(domain);
+    record(Trace.Operation.GET_ELEMENT_HIDING_SELECTORS, start, System.nanoTime() - start, null, null,
+        null, domain, selectors.size());
+    return selectors;
+  }
+
+  public synchronized long getEntryCount()
+  {
+    return this.entryCount;
+  }
+
+  public synchronized void flush() throws IOException
+  {
+    this.out.flush();
+  }
+
+  @Override
+  public synchronized void close() throws IOException
+  {
+    this.recording = false;
+    this.out.close();
+  }
+
+  private static FilterEngine.MatchDecision toDecision(final Filter filter)
+  {
+    if (filter == null)
+    {
+      return FilterEngine.MatchDecision.NO_MATCH;
+    }
+    switch (filter.getType())
+    {
+      case BLOCKING:
+        return FilterEngine.MatchDecision.BLOCK;
+      case EXCEPTION:
+        return FilterEngine.MatchDecision.ALLOW;
+      default:
+        return FilterEngine.MatchDecision.NO_MATCH;
+    }
+  }
+
+  private synchronized void record(final Trace.Operation operation, final long startNanos,
+      final long latencyNanos, final String url, final FilterEngine.ContentType contentType,
+      final String[] documentUrls, final String domain, final long result)
+  {
+    if (!this.recording)
+    {
+      return;
+    }
+
+    try
+    {
+      this.out.write(operation.ordinal());
+      // concurrent calls may be recorded out of order
+      Trace.writeVarLong(this.out, Math.max(0, startNanos - this.lastStartNanos) / 1000);
+      Trace.writeVarLong(this.out, latencyNanos);
+      this.lastStartNanos = Math.max(this.lastStartNanos, startNanos);
+
+      if (domain != null)
+      {
+        writeString(domain);
+      }
+      else
+      {
+        writeString(url);
+        if (operation == Trace.Operation.MATCHES || operation == Trace.Operation.MATCHES_DOCUMENT_CHAIN)
+        {
+          Trace.writeVarLong(this.out, contentType.ordinal());
+        }
+        Trace.writeVarLong(this.out, documentUrls != null ? documentUrls.length : 0);
+        if (documentUrls != null)
+        {
+          for (final String documentUrl : documentUrls)
+          {
+            writeString(documentUrl);
+          }
+        }
+      }
+      Trace.writeVarLong(this.out, result);
+      this.entryCount++;
+    }
+    catch (final IOException e)
+    {
+      Logging.w(TAG, "Failed to write trace, recording stopped", e);
+      this.recording = false;
+    }
+  }
+
+  private void writeString(final String value) throws IOException
+  {
+    if (value == null)
+    {
+      Trace.writeVarLong(this.out, Trace.STRING_NULL);
+      return;
+    }
+
+    final Integer index = this.strings.get(value);
+    if (index != null)
+    {
+      Trace.writeVarLong(this.out, index + Trace.STRING_INDEX_OFFSET);
+      return;
+    }
+
+    final byte[] bytes = value.getBytes("UTF-8");
+    Trace.writeVarLong(this.out, Trace.STRING_NEW);
+    Trace.writeVarLong(this.out, bytes.length);
+    this.out.write(bytes);
+    this.strings.put(value, this.strings.size());
+  }
+}